@@ -0,0 +1,90 @@
+package tim;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import tim.parallel.Literal;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class benchmarks sorting the literals of input clauses by variable (a batch of clauses of the same width,
+ * copied before each sort so that every sort sees unsorted data): QuickSort against LiteralSort, and the sort with
+ * the duplicates dropped as the parser does it
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortBenchmark {
+
+    /* Declare Variables */
+    public static final int BATCH = 1024;
+
+    @Param({"3", "8", "32", "100", "256"})
+    public int width;
+
+    private int[][] clauses;
+    private int[][] encodedClauses;
+    private int[] buffer;
+
+
+    /* Class Operators */
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        Random random = new Random(42);
+        clauses = new int[BATCH][width];
+        encodedClauses = new int[BATCH][];
+        buffer = new int[width];
+        for (int j = 0; j < BATCH; j++) {
+            for (int i = 0; i < width; i++) {
+                clauses[j][i] = (1 + random.nextInt(1 << 20)) * (random.nextBoolean() ? 1 : -1);
+            }
+            encodedClauses[j] = Literal.fromDimacs(clauses[j]);
+        }
+    }
+
+
+    @Benchmark
+    public int[] quickSort() {
+        for (int[] clause : clauses) {
+            System.arraycopy(clause, 0, buffer, 0, width);
+            QuickSort.sort(buffer);
+        }
+        return buffer;
+    }
+
+
+    @Benchmark
+    public int[] literalSort() {
+        for (int[] clause : encodedClauses) {
+            System.arraycopy(clause, 0, buffer, 0, width);
+            LiteralSort.sort(buffer, 0, width);
+        }
+        return buffer;
+    }
+
+
+    @Benchmark
+    public int normalize() {
+        int result = 0;
+        for (int[] clause : encodedClauses) {
+            System.arraycopy(clause, 0, buffer, 0, width);
+            result += LiteralSort.normalize(buffer, 0, width);
+        }
+        return result;
+    }
+}
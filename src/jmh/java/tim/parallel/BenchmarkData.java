@@ -0,0 +1,106 @@
+package tim.parallel;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * This class makes the random clauses and formulas used by the benchmarks (always from a fixed seed, so that two
+ * runs measure the same data)
+ */
+public class BenchmarkData {
+
+    /* Declare Variables */
+    public static final long SEED = 42;
+
+
+    /* Public Methods */
+    /**
+     * This method will make a clause of the bucket of the given key: the key first, then width - 1 other variables
+     * above it with random signs, sorted by variable (in DIMACS)
+     * @param random given the random generator
+     * @param key given the variable of the bucket
+     * @param isNegative whether the key is negative
+     * @param width given the number of literals
+     * @param variables given the number of variables
+     * @return the clause
+     */
+    public static int[] makeClause(Random random, int key, boolean isNegative, int width, int variables) {
+        int[] result = new int[width];
+        int[] picked = new int[width - 1];
+        int i, j, variable;
+        boolean isPicked;
+
+        // pick distinct variables above the key
+        for (i = 0; i < picked.length; i++) {
+            do {
+                variable = key + 1 + random.nextInt(variables - key);
+                isPicked = false;
+                for (j = 0; j < i; j++) {
+                    isPicked |= picked[j] == variable;
+                }
+            } while (isPicked);
+            picked[i] = variable;
+        }
+        Arrays.sort(picked);
+
+        result[0] = isNegative ? -key : key;
+        for (i = 0; i < picked.length; i++) {
+            result[i + 1] = random.nextBoolean() ? picked[i] : -picked[i];
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will make the clauses of one bucket (encoded, see Literal)
+     * @param key given the variable of the bucket
+     * @param isNegative whether the key is negative
+     * @param width given the number of literals of each clause
+     * @param size given the number of clauses
+     * @param seed given the seed
+     * @return the clauses
+     */
+    public static int[][] makeClauses(int key, boolean isNegative, int width, int size, long seed) {
+        Random random = new Random(seed);
+        int variables = key + Math.max(4 * width, size);
+        int[][] result = new int[size][];
+        for (int i = 0; i < size; i++) {
+            result[i] = Literal.fromDimacs(makeClause(random, key, isNegative, width, variables));
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will write a random k-SAT formula in DIMACS to a temporary file (deleted on exit)
+     * @param variables given the number of variables
+     * @param clauses given the number of clauses
+     * @param width given the number of literals of each clause
+     * @return the file
+     */
+    public static File writeFormula(int variables, int clauses, int width) throws IOException {
+        File result = File.createTempFile("benchmark", ".cnf");
+        result.deleteOnExit();
+        Random random = new Random(SEED);
+        int[] clause;
+        int i, j;
+        try (Writer writer = new FileWriter(result)) {
+            writer.write(String.format("p cnf %d %d\n", variables, clauses));
+            for (i = 0; i < clauses; i++) {
+                // the first variable is in the lower half so that every variable above it can be picked
+                clause = makeClause(random, 1 + random.nextInt(variables / 2), random.nextBoolean(), width,
+                        variables);
+                for (j = 0; j < clause.length; j++) {
+                    writer.write(clause[j] + " ");
+                }
+                writer.write("0\n");
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,108 @@
+package tim.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class benchmarks the bucket operations of the main loop: adding clauses (with the duplicate and subsumption
+ * checks), looking clauses up, the union of the resolutions of a worker, and the iterator scan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucketBenchmark {
+
+    /* Declare Variables */
+    @Param({"3", "8", "32"})
+    public int width;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private int[][] posClauses;
+    private int[][] negClauses;
+    private int[][] missingClauses;
+    private Bucket bucket;
+    private Bucket source;
+    private Bucket target;
+
+
+    /* Class Operators */
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        posClauses = BenchmarkData.makeClauses(1, false, width, size, BenchmarkData.SEED);
+        negClauses = BenchmarkData.makeClauses(1, true, width, size, BenchmarkData.SEED + 1);
+        missingClauses = BenchmarkData.makeClauses(1, false, width, size, BenchmarkData.SEED + 2);
+
+        // the full bucket (for the lookups and the scan), and what a worker would union into it
+        bucket = new Bucket(Bucket.getStripeCount(Runtime.getRuntime().availableProcessors()));
+        source = new Bucket(bucket.getStripeCount());
+        for (int i = 0; i < size; i++) {
+            bucket.add(posClauses[i], Clauses.ClauseType.POSITIVE);
+            bucket.add(negClauses[i], Clauses.ClauseType.NEGATIVE);
+            source.add(missingClauses[i], Clauses.ClauseType.POSITIVE);
+        }
+    }
+
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        target = new Bucket(bucket.getStripeCount());
+    }
+
+
+    @Benchmark
+    public Bucket add() {
+        for (int i = 0; i < size; i++) {
+            target.add(posClauses[i], Clauses.ClauseType.POSITIVE);
+            target.add(negClauses[i], Clauses.ClauseType.NEGATIVE);
+        }
+        return target;
+    }
+
+
+    @Benchmark
+    public int isClauseExisted() {
+        // half of the lookups hit
+        int result = 0;
+        for (int i = 0; i < size; i++) {
+            result += bucket.isClauseExisted(posClauses[i]) ? 1 : 0;
+            result += bucket.isClauseExisted(missingClauses[i]) ? 1 : 0;
+        }
+        return result;
+    }
+
+
+    @Benchmark
+    public Bucket union() {
+        target.union(source);
+        return target;
+    }
+
+
+    @Benchmark
+    public void iterator(Blackhole blackhole) {
+        Iterator<int[]> iterator = bucket.getIterator(bucket.getPosSize(), Clauses.ClauseType.POSITIVE);
+        while (iterator.hasNext()) {
+            blackhole.consume(iterator.next());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package tim.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class benchmarks reading a formula into buckets: parsing, preprocessing, ordering and bucketing.
+ * The orderings are left out by default, since on random formulas the elimination game grows with the square of
+ * the induced width (time them with -p order=min-degree,min-fill,mcs on the small sizes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InitBucketsBenchmark {
+
+    /* Declare Variables */
+    @Param({"3", "8"})
+    public int width;
+
+    @Param({"10000", "1000000"})
+    public int size;
+
+    @Param({"input"})
+    public String order;
+
+    private File file;
+    private ForkJoinPool threadPool;
+    private int threads;
+
+
+    /* Class Operators */
+    @Setup(Level.Trial)
+    public void setupTrial() throws IOException {
+        // clauses over variables at the usual hard ratio of 3-SAT
+        file = BenchmarkData.writeFormula(Math.max(2 * width, (int) (size / 4.26)), size, width);
+        threads = Runtime.getRuntime().availableProcessors();
+        threadPool = new ForkJoinPool(threads);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        threadPool.shutdownNow();
+        file.delete();
+    }
+
+
+    @Benchmark
+    public Solver initBuckets() throws IOException {
+        Solver solver = new Solver(file.getPath(), org.apache.logging.log4j.Level.ERROR);
+        solver.setOrder(EliminationOrder.parseStrategy(order));
+        solver.initBuckets(threadPool, threads);
+        return solver;
+    }
+}
@@ -0,0 +1,87 @@
+package tim.parallel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * This class benchmarks the resolution kernel: every positive clause of a bucket against every negative one, with
+ * the resolutions redistributed into fresh buckets
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkerTaskBenchmark {
+
+    /* Declare Variables */
+    @Param({"2", "3", "8", "32"})
+    public int width;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    private ForkJoinPool threadPool;
+    private Clauses posClauses;
+    private Clauses negClauses;
+    private int maxResolutionSize;
+    private int variables;
+    private Bucket[] buckets;
+
+
+    /* Class Operators */
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        threadPool = new ForkJoinPool(threads);
+        posClauses = new Clauses();
+        negClauses = new Clauses();
+        for (int[] clause : BenchmarkData.makeClauses(1, false, width, size, BenchmarkData.SEED)) {
+            posClauses.add(clause);
+        }
+        for (int[] clause : BenchmarkData.makeClauses(1, true, width, size, BenchmarkData.SEED + 1)) {
+            negClauses.add(clause);
+        }
+        maxResolutionSize = 2 * width;
+        variables = 1 + Math.max(4 * width, size);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        buckets = new Bucket[variables];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(Bucket.getStripeCount(threads));
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        threadPool.shutdownNow();
+    }
+
+
+    @Benchmark
+    public boolean resolve() {
+        return threadPool.invoke(new WorkerTask(maxResolutionSize, posClauses, negClauses, buckets));
+    }
+}
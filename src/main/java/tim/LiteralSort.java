@@ -0,0 +1,266 @@
+package tim;
+
+
+/**
+ * This class sorts the literals of a clause by variable, the negative literal first, without recursion or
+ * allocation. The literals are in the encoding of the solver (tim.parallel.Literal: 2v when negative, 2v + 1 when
+ * positive), so the order is the plain order of the ints, and a literal and its negation (literal ^ 1) end up next
+ * to each other. That is how normalize drops the duplicates and finds the tautologies while sorting.
+ * The method depends on the length of the clause: up to NETWORK_SIZE literals go through a sorting network, up to
+ * INSERTION_SIZE through an insertion sort, and the longer ones through a radix sort (one byte per pass, with
+ * buffers kept per thread).
+ */
+public class LiteralSort {
+
+    /* Declare Variables */
+    public static final int NETWORK_SIZE = 4;
+    public static final int INSERTION_SIZE = 48;
+    private static final int RADIX = 256;
+
+    private static final ThreadLocal<RadixBuffers> radixBuffers = new ThreadLocal<RadixBuffers>() {
+        @Override
+        protected RadixBuffers initialValue() {
+            return new RadixBuffers();
+        }
+    };
+
+
+    /* Public Methods */
+    /**
+     * This method will sort the data in-place
+     * @param data given the array of literals
+     */
+    public static void sort(int[] data) {
+        if (data != null) {
+            sort(data, 0, data.length);
+        }
+    }
+
+
+    /**
+     * This method will sort a slice of the data in-place
+     * @param data given the array of literals
+     * @param from index of the first literal
+     * @param length number of literals to sort
+     */
+    public static void sort(int[] data, int from, int length) {
+        if (length <= 1) {
+            return;
+        }
+
+        if (length <= NETWORK_SIZE) {
+            sortNetwork(data, from, length);
+        }
+        else if (length <= INSERTION_SIZE) {
+            insert(data, from, length, false);
+        }
+        else {
+            sortRadix(data, from, length);
+        }
+    }
+
+
+    /**
+     * This method will sort a slice of the data in-place and drop the duplicate literals
+     * @param data given the array of literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return the new length, or -1 when the clause holds a literal and its negation (always true)
+     */
+    public static int normalize(int[] data, int from, int length) {
+        if (length <= 1) {
+            return length;
+        }
+
+        // the insertion sort skips the duplicates as it goes, the others need one more pass on the sorted literals
+        if (length <= NETWORK_SIZE) {
+            sortNetwork(data, from, length);
+        }
+        else if (length <= INSERTION_SIZE) {
+            return insert(data, from, length, true);
+        }
+        else {
+            sortRadix(data, from, length);
+        }
+        return unique(data, from, length);
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will sort up to 4 literals with the optimal network of 5 compare-exchanges
+     * (a shorter clause is padded with the biggest int, which stays at the end)
+     * @param data given the array of literals
+     * @param from index of the first literal
+     * @param length number of literals (2 to 4)
+     */
+    private static void sortNetwork(int[] data, int from, int length) {
+        int literal0 = data[from];
+        int literal1 = data[from + 1];
+        int literal2 = (length > 2) ? data[from + 2] : Integer.MAX_VALUE;
+        int literal3 = (length > 3) ? data[from + 3] : Integer.MAX_VALUE;
+        int smaller;
+
+        // min & max compile to conditional moves, so there is no branch to mispredict
+        smaller = Math.min(literal0, literal1);
+        literal1 = Math.max(literal0, literal1);
+        literal0 = smaller;
+        smaller = Math.min(literal2, literal3);
+        literal3 = Math.max(literal2, literal3);
+        literal2 = smaller;
+        smaller = Math.min(literal0, literal2);
+        literal2 = Math.max(literal0, literal2);
+        literal0 = smaller;
+        smaller = Math.min(literal1, literal3);
+        literal3 = Math.max(literal1, literal3);
+        literal1 = smaller;
+        smaller = Math.min(literal1, literal2);
+        literal2 = Math.max(literal1, literal2);
+        literal1 = smaller;
+
+        data[from] = literal0;
+        data[from + 1] = literal1;
+        if (length > 2) {
+            data[from + 2] = literal2;
+        }
+        if (length > 3) {
+            data[from + 3] = literal3;
+        }
+    }
+
+
+    /**
+     * This method will sort with an insertion sort, and can skip the duplicates while inserting
+     * @param data given the array of literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param isUnique whether to drop the duplicates and look for tautologies
+     * @return the new length, or -1 when the clause is always true
+     */
+    private static int insert(int[] data, int from, int length, boolean isUnique) {
+        int size = 1;
+        int i, j, literal, position;
+        for (i = 1; i < length; i++) {
+            literal = data[from + i];
+
+            // find where it goes in the sorted part
+            position = from + size;
+            while ((position > from) && (data[position - 1] > literal)) {
+                position--;
+            }
+
+            // the same literal is right before, and the negation right before or right after
+            if (isUnique) {
+                if ((position > from) && (data[position - 1] == literal)) {
+                    continue;
+                }
+                if (((position > from) && (data[position - 1] == (literal ^ 1))) ||
+                        ((position < from + size) && (data[position] == (literal ^ 1)))) {
+                    return -1;
+                }
+            }
+
+            for (j = from + size; j > position; j--) {
+                data[j] = data[j - 1];
+            }
+            data[position] = literal;
+            size++;
+        }
+        return size;
+    }
+
+
+    /**
+     * This method will sort with a least significant digit radix sort, one byte per pass
+     * (the passes above the biggest literal are skipped)
+     * @param data given the array of literals
+     * @param from index of the first literal
+     * @param length number of literals
+     */
+    private static void sortRadix(int[] data, int from, int length) {
+        RadixBuffers buffers = radixBuffers.get();
+        buffers.ensureCapacity(length);
+        int[] source = buffers.keys;
+        int[] target = buffers.scratch;
+        int[] counts = buffers.counts;
+        int[] swap;
+        int i, shift, digit, total, count;
+
+        int maxLiteral = 0;
+        for (i = 0; i < length; i++) {
+            source[i] = data[from + i];
+            maxLiteral |= source[i];
+        }
+
+        for (shift = 0; (shift < 32) && ((maxLiteral >>> shift) != 0); shift += 8) {
+            // count each digit, then turn the counts into the first position of each digit
+            for (i = 0; i < RADIX; i++) {
+                counts[i] = 0;
+            }
+            for (i = 0; i < length; i++) {
+                counts[(source[i] >>> shift) & (RADIX - 1)]++;
+            }
+            total = 0;
+            for (digit = 0; digit < RADIX; digit++) {
+                count = counts[digit];
+                counts[digit] = total;
+                total += count;
+            }
+
+            for (i = 0; i < length; i++) {
+                target[counts[(source[i] >>> shift) & (RADIX - 1)]++] = source[i];
+            }
+            swap = source;
+            source = target;
+            target = swap;
+        }
+
+        for (i = 0; i < length; i++) {
+            data[from + i] = source[i];
+        }
+    }
+
+
+    /**
+     * This method will drop the duplicates of sorted literals in-place
+     * @param data given the array of literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return the new length, or -1 when the clause is always true
+     */
+    private static int unique(int[] data, int from, int length) {
+        int size = 1;
+        for (int i = from + 1; i < from + length; i++) {
+            if (data[i] == data[from + size - 1]) {
+                continue;
+            }
+            if (data[i] == (data[from + size - 1] ^ 1)) {
+                return -1;
+            }
+            data[from + size++] = data[i];
+        }
+        return size;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class holds the buffers of the radix sort of one thread (they only grow)
+     */
+    private static class RadixBuffers {
+
+        /* Declare Variables */
+        private int[] keys = new int[INSERTION_SIZE * 4];
+        private int[] scratch = new int[INSERTION_SIZE * 4];
+        private int[] counts = new int[RADIX];
+
+
+        /* Private Methods */
+        private void ensureCapacity(int length) {
+            if (keys.length < length) {
+                keys = new int[Math.max(length, keys.length * 2)];
+                scratch = new int[keys.length];
+            }
+        }
+    }
+}
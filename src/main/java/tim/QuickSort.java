@@ -20,7 +20,23 @@ public class QuickSort {
         }
 
         // sort the whole array
-        sort(data, 0, data.length - 1);
+        sortRange(data, 0, data.length - 1);
+    }
+
+
+    /**
+     * This method will sort a slice of the data in-place
+     * @param data given the array of integers
+     * @param from index of the first item
+     * @param length number of items to sort
+     */
+    public static void sort(int[] data, int from, int length) {
+        // base case
+        if ((data == null) || (length == 0)) {
+            return;
+        }
+
+        sortRange(data, from, from + length - 1);
     }
 
 
@@ -31,7 +47,7 @@ public class QuickSort {
      * @param low low index
      * @param high high index
      */
-    private static void sort(int[] data, int low, int high) {
+    private static void sortRange(int[] data, int low, int high) {
         // base case
         if ((low == high) || (low > high)) {
             return;
@@ -128,8 +144,8 @@ public class QuickSort {
         }
 
         // sort on both sides
-        sort(data, low, midIndex - 1);
-        sort(data, midIndex + 1, high);
+        sortRange(data, low, midIndex - 1);
+        sortRange(data, midIndex + 1, high);
     }
 
 
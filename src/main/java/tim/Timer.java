@@ -17,6 +17,16 @@ public class Timer {
     }
 
 
+    /* Class Operators */
+    /**
+     * @return the time elapsed so far (so that a timer can be given to a log message as it is)
+     */
+    @Override
+    public String toString() {
+        return result();
+    }
+
+
     /* Public Methods */
     /**
      * This method will print out the time elapsed
@@ -24,9 +34,9 @@ public class Timer {
      */
     public String result() {
         double result = System.currentTimeMillis() - startTime;
-        double seconds = result / 60;
+        double seconds = result / 1000;
         double minutes = seconds / 60;
-        double hours = minutes / 24;
+        double hours = minutes / 60;
         return String.format("Time for '%s' = %.0f milliseconds = %.3f seconds = %.3f minutes = %.3f hours",
                 title, result, seconds, minutes, hours);
     }
@@ -1,82 +1,89 @@
 package tim.parallel;
 
-import org.apache.logging.log4j.Level;
-
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
  * This class represents a bucket in Rina's algorithm.
+ * The clauses are split into stripes by their hash. Each stripe has its own arenas, duplicate set and lock,
+ * so many workers can union into the same bucket at the same time as long as they hit different stripes.
+ * A clause always hashes to the same stripe, so duplicates are still caught.
+ * A clause that is subsumed by a clause already in its stripe is not added (forward subsumption), and the
+ * clauses subsumed across the whole bucket are dropped when it is compacted, right before it is processed.
+ * Each stripe counts the clauses it turns down (duplicates and subsumed) and the time spent waiting for its lock,
+ * for the metrics of the run. The counts follow the clauses when stripes or buckets are merged.
+ * The stripes are created on first use and published through an atomic array, so the getters that read them without
+ * a lock (sizes, memory) never see one half built.
  */
 public class Bucket {
 
     /* Declare Variables */
-    private Map<Integer,List<int[]>> clauseCodes;
-    private List<Clauses> posClauses;
-    private List<Clauses> negClauses;
-    private Clauses posCurrent;
-    private Clauses negCurrent;
-    private int posSize;
-    private int negSize;
-    private int posClauseMaxSize;
-    private int negClauseMaxSize;
-    private int key;
+    public static final int MAX_STRIPES = 64;
+
+    private volatile AtomicReferenceArray<Stripe> stripes;
+    private volatile int key;
+    private volatile boolean isCompacted;
 
 
     /* Class Constructors */
     public Bucket() {
-        clauseCodes = new HashMap<>();
-        posClauses = new LinkedList<>();
-        negClauses = new LinkedList<>();
-        posCurrent = new Clauses();
-        negCurrent = new Clauses();
-        posSize = 0;
-        negSize = 0;
-        posClauseMaxSize = 0;
-        negClauseMaxSize = 0;
-        key = 0;
+        this(1);
+    }
 
-        // add current to the list clauses
-        posClauses.add(posCurrent);
-        negClauses.add(negCurrent);
+
+    /**
+     * @param stripeCount number of stripes (power of 2), use 1 for a bucket owned by a single thread
+     */
+    public Bucket(int stripeCount) {
+        assert (Integer.bitCount(stripeCount) == 1) : String.format("stripeCount must be a power of 2, but = %d",
+                stripeCount);
+        stripes = new AtomicReferenceArray<>(stripeCount);
+        key = 0;
+        isCompacted = false;
     }
 
 
     /* Class Operators */
     @Override
     public String toString() {
+        return toString(false);
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will print the sizes of the bucket, and its clauses when asked (for debug purposes)
+     * @param hasClauses whether to add the clauses
+     * @return the string
+     */
+    public String toString(boolean hasClauses) {
         StringBuilder result = new StringBuilder();
 
         // add the size variables
         result.append("posSize = ");
-        result.append(posSize);
+        result.append(getPosSize());
         result.append(", negSize = ");
-        result.append(negSize);
+        result.append(getNegSize());
         result.append(", posClauseMaxSize = ");
-        result.append(posClauseMaxSize);
+        result.append(getPosClauseMaxSize());
         result.append(", negClauseMaxSize = ");
-        result.append(negClauseMaxSize);
+        result.append(getNegClauseMaxSize());
 
-        if (Solver.debugLevel == Level.INFO) {
+        if (hasClauses) {
             // add new line
             result.append("\n");
 
-            // loop and add posClauses
-            for (int i = 0; i < posClauses.size(); i++) {
-                result.append("posClauses ");
-                result.append(i + 1);
-                result.append("\n");
-                result.append(posClauses.get(i));
-                result.append("\n");
-            }
-
-            // loop and add negClauses
-            for (int i = 0; i < negClauses.size(); i++) {
-                result.append("negClauses ");
-                result.append(i + 1);
-                result.append("\n");
-                result.append(negClauses.get(i));
-                result.append("\n");
+            // add posClauses and negClauses of each stripe
+            for (Stripe stripe : getStripes()) {
+                if (stripe != null) {
+                    result.append("posClauses\n");
+                    result.append(stripe.posClauses);
+                    result.append("negClauses\n");
+                    result.append(stripe.negClauses);
+                }
             }
         }
 
@@ -84,7 +91,20 @@ public class Bucket {
     }
 
 
-    /* Public Methods */
+    /**
+     * This method will pick the number of stripes for buckets shared by the given number of threads
+     * @param threads given the number of threads
+     * @return a power of 2 (at least 1)
+     */
+    public static int getStripeCount(int threads) {
+        int result = 1;
+        while ((result < threads) && (result < MAX_STRIPES)) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+
     /**
      * This method will add a clause into the bucket
      * @param clause given an array of literals for this clause
@@ -93,128 +113,270 @@ public class Bucket {
         // don't add null clause
         assert (clause != null) : "Adding null clause";
 
-        // don't handle if clause existed in the bucket
-        if (isClauseExisted(clause, true)) {
-            return;
-        }
+        add(clause, 0, clause.length, type);
+    }
 
-        // add the clause into the bucket
-        switch (type) {
-            case POSITIVE:
-                // handle when add the clause to current clauses unsuccessfully
-                if (!posCurrent.add(clause)) {
-                    posCurrent = new Clauses();
-                    posCurrent.add(clause);
-                    posClauses.add(posCurrent);
-                }
 
-                // increase the size
-                posSize++;
+    /**
+     * This method will add a clause stored in a slice of the given array into the bucket (thread-safe)
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param type given the type of the clause
+     */
+    public void add(int[] source, int from, int length, Clauses.ClauseType type) {
+        long hash = ClauseSet.hash(source, from, length);
+        Stripe stripe = getStripe(getStripeIndex(hash));
+        lock(stripe);
+        try {
+            stripe.add(source, from, length, hash, type, true);
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+        isCompacted = false;
 
-                // get the max size
-                posClauseMaxSize = (posClauseMaxSize < clause.length) ? clause.length : posClauseMaxSize;
+        // get key (assume clause is sorted)
+        key = source[from] >>> 1;
+    }
 
-                // get key (assume clause is sorted)
-                key = clause[0];
-                break;
 
-            case NEGATIVE:
-                // handle when add the clause to current clauses unsuccessfully
-                if (!negCurrent.add(clause)) {
-                    negCurrent = new Clauses();
-                    negCurrent.add(clause);
-                    negClauses.add(negCurrent);
+    /**
+     * This method will union the given bucket with this bucket (thread-safe)
+     * When both buckets have the same number of stripes, each stripe is merged under its own lock,
+     * starting from a random stripe so that concurrent callers spread over the locks.
+     * @param bucket given the bucket
+     */
+    public void union(Bucket bucket) {
+        // fall back to one clause at a time when the stripes don't line up
+        if (bucket.stripes.length() != stripes.length()) {
+            for (Stripe other : bucket.getStripes()) {
+                if (other != null) {
+                    addAll(other.posClauses, Clauses.ClauseType.POSITIVE);
+                    addAll(other.negClauses, Clauses.ClauseType.NEGATIVE);
                 }
+            }
+            addCounters(bucket);
+            return;
+        }
 
-                // increase the size
-                negSize++;
+        // merge stripe by stripe
+        int first = ThreadLocalRandom.current().nextInt(stripes.length());
+        int index;
+        Stripe stripe, other;
+        for (int i = 0; i < stripes.length(); i++) {
+            index = (first + i) & (stripes.length() - 1);
+            other = bucket.stripes.get(index);
+            if (other == null) {
+                continue;
+            }
 
-                // get the max size
-                negClauseMaxSize = (negClauseMaxSize < clause.length) ? clause.length : negClauseMaxSize;
+            stripe = getStripe(index);
+            lock(stripe);
+            try {
+                stripe.addAll(other.posClauses, Clauses.ClauseType.POSITIVE, null);
+                stripe.addAll(other.negClauses, Clauses.ClauseType.NEGATIVE, null);
+                stripe.addCounters(other);
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+        }
+        isCompacted = false;
 
-                // get key (assume clause is sorted)
-                key = -clause[0];
-                break;
+        // get the key
+        if (bucket.key != 0) {
+            key = bucket.key;
         }
     }
 
 
     /**
-     * This method will union the given bucket with this bucket
-      * @param bucket given the bucket
+     * This method will add clauses that were in a bucket before, e.g. when they are read back from disk (thread-safe).
+     * They already went through the subsumption checks of that bucket, so they are only checked for duplicates (a
+     * clause that is subsumed after all is dropped when the bucket is compacted).
+     * @param clauses given the arena (sorted clauses)
+     * @param type given the type of the clauses
      */
-    public synchronized void union(Bucket bucket) {
-        // get clause max sizes
-        posClauseMaxSize = (posClauseMaxSize < bucket.getPosClauseMaxSize()) ?
-                bucket.getPosClauseMaxSize() : posClauseMaxSize;
-        negClauseMaxSize = (negClauseMaxSize < bucket.getNegClauseMaxSize()) ?
-                bucket.getNegClauseMaxSize() : negClauseMaxSize;
-
-        // loop through the other bucket and add
-        Iterator<int[]> posIterator = bucket.getIterator(bucket.getPosSize(), Clauses.ClauseType.POSITIVE);
-        Iterator<int[]> negIterator = bucket.getIterator(bucket.getNegSize(), Clauses.ClauseType.NEGATIVE);
-
-        while (posIterator.hasNext()) {
-            this.add(posIterator.next(), Clauses.ClauseType.POSITIVE);
+    public void restore(Clauses clauses, Clauses.ClauseType type) {
+        int[] literals = clauses.getLiterals();
+        int from, length;
+        long hash;
+        Stripe stripe;
+        for (int i = 0; i < clauses.size(); i++) {
+            from = clauses.getOffset(i);
+            length = clauses.getLength(i);
+            hash = ClauseSet.hash(literals, from, length);
+            stripe = getStripe(getStripeIndex(hash));
+            lock(stripe);
+            try {
+                stripe.add(literals, from, length, hash, type, false);
+            }
+            finally {
+                stripe.lock.unlock();
+            }
         }
+        isCompacted = false;
 
-        while (negIterator.hasNext()) {
-            this.add(negIterator.next(), Clauses.ClauseType.NEGATIVE);
+        // get key (assume clauses are sorted)
+        if (clauses.size() > 0) {
+            key = literals[clauses.getOffset(0)] >>> 1;
         }
     }
 
 
     /**
-     * This method will pop the last item of the bucket clause type
-     * @return the last item
+     * This method will add the counts of the given bucket (turned down clauses and lock wait) to this one, e.g. when
+     * the clauses of a bucket move to another one (thread-safe)
+     * @param bucket given the bucket
      */
-    public int[] pop(Clauses.ClauseType type) {
-        int[] result = null;
-        switch (type) {
-            case POSITIVE:
-                // don't handle when there is nothing
-                if (posSize == 0) {
-                    return null;
+    public void addCounters(Bucket bucket) {
+        Stripe stripe = getStripe(0);
+        lock(stripe);
+        try {
+            for (Stripe other : bucket.getStripes()) {
+                if (other != null) {
+                    stripe.addCounters(other);
                 }
+            }
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+    }
 
-                // try to get the last item of the current clause
-                try {
-                    result = posCurrent.pop();
+
+    /**
+     * This method will add some clauses of an arena into this bucket (thread-safe).
+     * The indexes are put in stripe order first, so each stripe lock is taken once for all its clauses.
+     * @param clauses given the arena
+     * @param hashes given the hash of each clause of the arena (see ClauseSet.hash)
+     * @param indexes given the indexes of the clauses to add (they are reordered)
+     * @param count number of indexes
+     */
+    public void addAll(Clauses clauses, long[] hashes, int[] indexes, int count) {
+        // base case
+        if (count == 0) {
+            return;
+        }
+
+        int[] literals = clauses.getLiterals();
+        int from, to, index, stripeIndex, offset;
+        Stripe stripe;
+        sortByStripe(hashes, indexes, 0, count, stripes.length() >> 1);
+        for (from = 0; from < count; from = to) {
+            stripeIndex = getStripeIndex(hashes[indexes[from]]);
+            stripe = getStripe(stripeIndex);
+            lock(stripe);
+            try {
+                for (to = from; (to < count) && (getStripeIndex(hashes[indexes[to]]) == stripeIndex); to++) {
+                    index = indexes[to];
+                    offset = clauses.getOffset(index);
+                    stripe.add(literals, offset, clauses.getLength(index), hashes[index],
+                            Literal.isPositive(literals[offset]) ? Clauses.ClauseType.POSITIVE :
+                                    Clauses.ClauseType.NEGATIVE, true);
                 }
-                catch (IndexOutOfBoundsException e) {
-                    // remove the last clause in the list
-                    posClauses.remove(posClauses.size() - 1);
-                    posCurrent = posClauses.get(posClauses.size() - 1);
-                    result = posCurrent.pop();
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+        }
+        isCompacted = false;
+
+        // get key (assume clauses are sorted)
+        key = literals[clauses.getOffset(indexes[0])] >>> 1;
+    }
+
+
+    /**
+     * This method will collapse the stripes into a single one so that all the clauses of each type sit in one arena,
+     * and drop every clause that is subsumed by another clause of the bucket (backward subsumption).
+     * It must only be called when no other thread is writing to this bucket.
+     */
+    public synchronized void compact() {
+        // base case
+        if (isCompacted) {
+            return;
+        }
+
+        // move all the clauses into one stripe
+        Stripe result = getStripe(0);
+        if (stripes.length() > 1) {
+            result = new Stripe(getPosSize(), getNegSize());
+            for (Stripe stripe : getStripes()) {
+                if (stripe != null) {
+                    result.addAll(stripe.posClauses, Clauses.ClauseType.POSITIVE, null);
+                    result.addAll(stripe.negClauses, Clauses.ClauseType.NEGATIVE, null);
+                    result.addCounters(stripe);
                 }
+            }
+        }
 
-                // reduce the size
-                posSize--;
-                break;
+        // keep only the clauses that are not subsumed
+        boolean[] isPosRemoved = SubsumptionIndex.getSubsumed(result.posClauses);
+        boolean[] isNegRemoved = SubsumptionIndex.getSubsumed(result.negClauses);
+        if ((isPosRemoved != null) || (isNegRemoved != null)) {
+            Stripe stripe = result;
+            result = new Stripe(stripe.posClauses.size(), stripe.negClauses.size());
+            result.addAll(stripe.posClauses, Clauses.ClauseType.POSITIVE, isPosRemoved);
+            result.addAll(stripe.negClauses, Clauses.ClauseType.NEGATIVE, isNegRemoved);
+            result.addCounters(stripe);
+            result.subsumed += getCount(isPosRemoved) + getCount(isNegRemoved);
+        }
 
-            case NEGATIVE:
-                // don't handle when there is nothing
-                if (negSize == 0) {
-                    return null;
+        stripes = new AtomicReferenceArray<>(new Stripe[] {result});
+        isCompacted = true;
+    }
+
+
+    /**
+     * This method will return views on the clauses of the bucket (one per stripe, see Clauses.getView), e.g. to write
+     * them out while the workers keep adding to it (thread-safe: each stripe is read under its lock, and not while
+     * the bucket is compacted)
+     * @param type given the type of the clauses
+     * @return the views
+     */
+    public synchronized List<Clauses> getViews(Clauses.ClauseType type) {
+        List<Clauses> result = new ArrayList<>();
+        for (Stripe stripe : getStripes()) {
+            if (stripe == null) {
+                continue;
+            }
+            lock(stripe);
+            try {
+                if (stripe.getClauses(type).size() > 0) {
+                    result.add(stripe.getClauses(type).getView());
                 }
+            }
+            finally {
+                stripe.lock.unlock();
+            }
+        }
+        return result;
+    }
 
-                // try to get the last item of the current clause
+
+    /**
+     * This method will pop the last item of the bucket clause type
+     * @return the last item
+     */
+    public int[] pop(Clauses.ClauseType type) {
+        // take it from the last stripe that has one
+        Stripe stripe;
+        for (int i = stripes.length() - 1; i >= 0; i--) {
+            stripe = stripes.get(i);
+            if ((stripe != null) && (stripe.getClauses(type).size() > 0)) {
+                lock(stripe);
                 try {
-                    result = negCurrent.pop();
+                    return stripe.pop(type);
                 }
-                catch (IndexOutOfBoundsException e) {
-                    // remove the last clause in the list
-                    negClauses.remove(negClauses.size() - 1);
-                    negCurrent = negClauses.get(negClauses.size() - 1);
-                    result = negCurrent.pop();
+                finally {
+                    stripe.lock.unlock();
                 }
-
-                // reduce the size
-                negSize--;
-                break;
+            }
         }
 
-        return result;
+        return null;
     }
 
 
@@ -226,19 +388,18 @@ public class Bucket {
      */
     public Iterator<int[]> getIterator(final int size, final Clauses.ClauseType type) {
         // don't handle when size is greater than current negSize or posSize
-        if (((type == Clauses.ClauseType.POSITIVE) && (size > posSize)) ||
-                ((type == Clauses.ClauseType.NEGATIVE) && (size > negSize))) {
+        if (((type == Clauses.ClauseType.POSITIVE) && (size > getPosSize())) ||
+                ((type == Clauses.ClauseType.NEGATIVE) && (size > getNegSize()))) {
             return null;
         }
 
-        // return a custom iterator
+        // return a custom iterator (sequential scan over the arenas of each stripe)
         return new Iterator<int[]>() {
 
             /* Declaring Variables */
             private int index = 0;
-            private int currentClauseIndex = 0;
-            private int clausesIndex = -1;
-            private Clauses current;
+            private int stripeIndex = 0;
+            private int clauseIndex = 0;
 
 
             /* Class Operators */
@@ -251,35 +412,18 @@ public class Bucket {
 
             @Override
             public int[] next() {
-                // calculate the new clauses index
-                int newIndex = index / Clauses.SIZE_THRESHOLD;
-
-                // get the next clause in clauses
-                switch (type) {
-                    case POSITIVE:
-                        // handle the new index
-                        if (newIndex != clausesIndex) {
-                            current = posClauses.get(newIndex);
-                        }
-                        break;
-
-                    case NEGATIVE:
-                        // handle the new index
-                        if (newIndex != clausesIndex) {
-                            current = negClauses.get(newIndex);
-                        }
-                        break;
+                // move to the next stripe that still has clauses
+                Stripe stripe = stripes.get(stripeIndex);
+                Clauses clauses = (stripe == null) ? null : stripe.getClauses(type);
+                while ((clauses == null) || (clauseIndex == clauses.size())) {
+                    stripeIndex++;
+                    clauseIndex = 0;
+                    stripe = stripes.get(stripeIndex);
+                    clauses = (stripe == null) ? null : stripe.getClauses(type);
                 }
-                int[] result = current.get(currentClauseIndex);
-                clausesIndex = newIndex;
 
-                // increase the index and return
                 index++;
-                currentClauseIndex++;
-                if (currentClauseIndex == Clauses.SIZE_THRESHOLD) {
-                    currentClauseIndex = 0;
-                }
-                return result;
+                return clauses.get(clauseIndex++);
             }
 
 
@@ -300,22 +444,27 @@ public class Bucket {
     public static int getAmountOfDuplicates(Bucket bucket1, Bucket bucket2) {
         // init variables
         int result = 0;
-        int[] clause;
-        Iterator<int[]> posIterator = bucket2.getIterator(bucket2.getPosSize(), Clauses.ClauseType.POSITIVE);
-        Iterator<int[]> negIterator = bucket2.getIterator(bucket2.getNegSize(), Clauses.ClauseType.NEGATIVE);
+        int i;
+        Clauses clauses;
 
         // calculate the number of duplicates
-        while (posIterator.hasNext()) {
-            clause = posIterator.next();
-            if (bucket1.isClauseExisted(clause)) {
-                result++;
+        for (Stripe stripe : bucket2.getStripes()) {
+            if (stripe == null) {
+                continue;
             }
-        }
 
-        while (negIterator.hasNext()) {
-            clause = negIterator.next();
-            if (bucket1.isClauseExisted(clause)) {
-                result++;
+            clauses = stripe.posClauses;
+            for (i = 0; i < clauses.size(); i++) {
+                if (bucket1.contains(clauses.getLiterals(), clauses.getOffset(i), clauses.getLength(i))) {
+                    result++;
+                }
+            }
+
+            clauses = stripe.negClauses;
+            for (i = 0; i < clauses.size(); i++) {
+                if (bucket1.contains(clauses.getLiterals(), clauses.getOffset(i), clauses.getLength(i))) {
+                    result++;
+                }
             }
         }
 
@@ -329,127 +478,231 @@ public class Bucket {
      * @return check whether it is existed
      */
     public boolean isClauseExisted(int[] clause) {
-        return isClauseExisted(clause, false);
+        return contains(clause, 0, clause.length);
     }
 
 
     /* Private Methods */
     /**
-     * This method will find whether the given clause is already existed in the bucket or not
-     * @param clause given the clause
-     * @param isAddingCode whether code should be added to the system or not
-     * @return is duplicate exists
+     * This method will check whether the clause in the given slice is existed or not
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return check whether it is existed
      */
-    private boolean isClauseExisted(int[] clause, boolean isAddingCode) {
-        // create a hash code for this clause
-        int code = 0;
-        for (int literal : clause) {
-            code += literal * 3 + (literal - 1) * 5 + 1;
-        }
-
-        // put the code to clauseCodes and check for duplicates
-        List<int[]> codes = clauseCodes.get(code);
-        if (codes == null) {
-            // add the code to the system
-            if (isAddingCode) {
-                codes = new ArrayList<>();
-                codes.add(clause);
-                clauseCodes.put(code,codes);
-            }
-        }
-        else {
-            // check for duplicates
-            int i;
-            boolean isBreak = false;
-            for (int[] item : codes) {
-                // compare item and clause assuming in sorted order
-                if (item.length == clause.length) {
-                    isBreak = false;
-                    for (i = 0; i < clause.length; i++) {
-                        if (clause[i] != item[i]) {
-                            isBreak = true;
-                            break;
-                        }
-                    }
+    private boolean contains(int[] source, int from, int length) {
+        long hash = ClauseSet.hash(source, from, length);
+        Stripe stripe = stripes.get(getStripeIndex(hash));
+        if (stripe == null) {
+            return false;
+        }
 
-                    // break out of the loop if found duplicates
-                    if (!isBreak) {
-                        break;
-                    }
-                }
-                else {
-                    isBreak = true;
-                }
-            }
+        lock(stripe);
+        try {
+            return stripe.clauseSet.contains(source, from, length, hash);
+        }
+        finally {
+            stripe.lock.unlock();
+        }
+    }
 
-            // handle duplicates found
-            if (!isBreak) {
-                return true;
-            }
-            else {
-                // add the code to the system
-                if (isAddingCode) {
-                    codes.add(clause);
-                }
+
+    /**
+     * This method will take the lock of the stripe, and count the time spent waiting when another thread holds it
+     * (the clock is only read when the lock is taken)
+     * @param stripe given the stripe
+     */
+    private static void lock(Stripe stripe) {
+        if (!stripe.lock.tryLock()) {
+            long start = System.nanoTime();
+            stripe.lock.lock();
+            stripe.lockWait += System.nanoTime() - start;
+        }
+    }
+
+
+    /**
+     * @param isRemoved given the flags (null when none)
+     * @return the number of flags that are set
+     */
+    private static int getCount(boolean[] isRemoved) {
+        int result = 0;
+        if (isRemoved != null) {
+            for (boolean item : isRemoved) {
+                result += item ? 1 : 0;
             }
         }
+        return result;
+    }
+
 
-        return false;
+    /**
+     * This method will add every clause of the given arena into this bucket
+     * @param clauses given the arena
+     * @param type given the type of the clauses
+     */
+    private void addAll(Clauses clauses, Clauses.ClauseType type) {
+        int[] literals = clauses.getLiterals();
+        for (int i = 0; i < clauses.size(); i++) {
+            add(literals, clauses.getOffset(i), clauses.getLength(i), type);
+        }
     }
 
 
     /**
-     * This method is used for debugging/printing the clauseCodes object
+     * This method will put the indexes in order of stripe in-place, one bit of the stripe index at a time from the
+     * highest (the number of stripes is a power of 2, so no buffer is needed)
+     * @param hashes given the hash of each clause
+     * @param indexes given the indexes of the clauses
+     * @param from first index to sort
+     * @param to end of the indexes to sort (exclusive)
+     * @param bit the bit of the stripe index to split on (0 when done)
      */
-    private void printClauseCodes() {
-        System.out.println("Printing clauseCodes");
-        for (Map.Entry<Integer,List<int[]>> entry : clauseCodes.entrySet()) {
-            System.out.format("Code = %d\n", entry.getKey());
-            for (int[] clause : entry.getValue()) {
-                System.out.println(Arrays.toString(clause));
+    private void sortByStripe(long[] hashes, int[] indexes, int from, int to, int bit) {
+        // base case
+        if ((bit == 0) || (to - from < 2)) {
+            return;
+        }
+
+        int low = from;
+        int high = to - 1;
+        int swap;
+        while (low <= high) {
+            if ((getStripeIndex(hashes[indexes[low]]) & bit) == 0) {
+                low++;
+            }
+            else {
+                swap = indexes[low];
+                indexes[low] = indexes[high];
+                indexes[high--] = swap;
             }
         }
+        sortByStripe(hashes, indexes, from, low, bit >> 1);
+        sortByStripe(hashes, indexes, low, to, bit >> 1);
     }
 
 
-    /* Getters & Setters */
-    public List<Clauses> getPosClauses() {
-        return posClauses;
+    /**
+     * This method will pick the stripe of a clause (high bits, the low bits are used by the ClauseSet slots)
+     * @param hash the hash of the clause
+     * @return the stripe index
+     */
+    private int getStripeIndex(long hash) {
+        return (int) (hash >>> 40) & (stripes.length() - 1);
     }
 
 
-    public List<Clauses> getNegClauses() {
-        return negClauses;
+    /**
+     * This method will return the stripe at the given index, creating it on first use (when two threads race, the
+     * first one to publish its stripe wins)
+     * @param index given the index
+     * @return the stripe
+     */
+    private Stripe getStripe(int index) {
+        AtomicReferenceArray<Stripe> stripes = this.stripes;
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new Stripe(Clauses.INITIAL_CLAUSES, Clauses.INITIAL_CLAUSES));
+            stripe = stripes.get(index);
+        }
+        return stripe;
     }
 
 
-    public Clauses getPosCurrent() {
-        return posCurrent;
+    /**
+     * This method will read the stripes (null where a stripe is not created yet), e.g. to sum their sizes without
+     * taking their locks
+     * @return the stripes
+     */
+    private Stripe[] getStripes() {
+        AtomicReferenceArray<Stripe> stripes = this.stripes;
+        Stripe[] result = new Stripe[stripes.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = stripes.get(i);
+        }
+        return result;
     }
 
 
-    public Clauses getNegCurrent() {
-        return negCurrent;
+    /* Getters & Setters */
+    /**
+     * @return the positive clauses in one arena (compacts the bucket first)
+     */
+    public Clauses getPosClauses() {
+        compact();
+        return getStripe(0).posClauses;
+    }
+
+
+    /**
+     * @return the negative clauses in one arena (compacts the bucket first)
+     */
+    public Clauses getNegClauses() {
+        compact();
+        return getStripe(0).negClauses;
     }
 
 
     public int getPosSize() {
-        return posSize;
+        int result = 0;
+        for (Stripe stripe : getStripes()) {
+            result += (stripe == null) ? 0 : stripe.posClauses.size();
+        }
+        return result;
     }
 
 
     public int getNegSize() {
-        return negSize;
+        int result = 0;
+        for (Stripe stripe : getStripes()) {
+            result += (stripe == null) ? 0 : stripe.negClauses.size();
+        }
+        return result;
     }
 
 
     public int getPosClauseMaxSize() {
-        return posClauseMaxSize;
+        int result = 0;
+        for (Stripe stripe : getStripes()) {
+            result = ((stripe == null) || (result >= stripe.posClauseMaxSize)) ? result : stripe.posClauseMaxSize;
+        }
+        return result;
     }
 
 
     public int getNegClauseMaxSize() {
-        return negClauseMaxSize;
+        int result = 0;
+        for (Stripe stripe : getStripes()) {
+            result = ((stripe == null) || (result >= stripe.negClauseMaxSize)) ? result : stripe.negClauseMaxSize;
+        }
+        return result;
+    }
+
+
+    public int getStripeCount() {
+        return stripes.length();
+    }
+
+
+    /**
+     * @return an estimate of the bytes held by the clauses of the bucket (arenas, duplicate sets and indexes)
+     */
+    public long getMemorySize() {
+        long result = 0;
+        SubsumptionIndex index;
+        for (Stripe stripe : getStripes()) {
+            if (stripe != null) {
+                result += stripe.posClauses.getMemorySize() + stripe.negClauses.getMemorySize() +
+                        stripe.clauseSet.getMemorySize();
+
+                // a pop drops the index while this runs, so read it once
+                index = stripe.posIndex;
+                result += (index == null) ? 0 : index.getMemorySize();
+                index = stripe.negIndex;
+                result += (index == null) ? 0 : index.getMemorySize();
+            }
+        }
+        return result;
     }
 
 
@@ -457,4 +710,205 @@ public class Bucket {
     	assert (key >= 0) : String.format("key must be positive, but key = %d", key);
         return key;
     }
+
+
+    /**
+     * @return the number of clauses turned down because they were in the bucket already
+     */
+    public long getDuplicateCount() {
+        long result = 0;
+        for (Stripe stripe : getStripes()) {
+            result += (stripe == null) ? 0 : stripe.duplicates;
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the number of clauses turned down or dropped because a clause of the bucket subsumes them
+     */
+    public long getSubsumedCount() {
+        long result = 0;
+        for (Stripe stripe : getStripes()) {
+            result += (stripe == null) ? 0 : stripe.subsumed;
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the time the threads waited for the locks of the bucket, in nanoseconds
+     */
+    public long getLockWaitTime() {
+        long result = 0;
+        for (Stripe stripe : getStripes()) {
+            result += (stripe == null) ? 0 : stripe.lockWait;
+        }
+        return result;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class is one stripe of a bucket (only touched while holding its lock)
+     */
+    private static class Stripe {
+
+        /* Declare Variables */
+        private final ReentrantLock lock;
+        private final Clauses posClauses;
+        private final Clauses negClauses;
+        private final ClauseSet clauseSet;
+        private volatile SubsumptionIndex posIndex;
+        private volatile SubsumptionIndex negIndex;
+        private int posClauseMaxSize;
+        private int negClauseMaxSize;
+        private long duplicates;
+        private long subsumed;
+        private long lockWait;
+
+
+        /* Class Constructors */
+        private Stripe(int posCapacity, int negCapacity) {
+            lock = new ReentrantLock();
+            posClauses = new Clauses(posCapacity, posCapacity * 4);
+            negClauses = new Clauses(negCapacity, negCapacity * 4);
+            clauseSet = new ClauseSet(posClauses, negClauses);
+            posIndex = new SubsumptionIndex(posClauses);
+            negIndex = new SubsumptionIndex(negClauses);
+            posClauseMaxSize = 0;
+            negClauseMaxSize = 0;
+        }
+
+
+        /* Private Methods */
+        /**
+         * This method will add the clause unless it is a duplicate or subsumed by a clause of the stripe
+         * @param source given the array holding the literals (sorted)
+         * @param from index of the first literal
+         * @param length number of literals
+         * @param hash the hash of the clause
+         * @param type given the type of the clause
+         * @param isCheckingSubsumption whether to look for a clause that subsumes it (only the duplicates are turned
+         * down otherwise)
+         */
+        private void add(int[] source, int from, int length, long hash, Clauses.ClauseType type,
+                         boolean isCheckingSubsumption) {
+            // don't handle if clause existed or is subsumed in the stripe
+            if (clauseSet.contains(source, from, length, hash)) {
+                duplicates++;
+                return;
+            }
+            if (isCheckingSubsumption && getIndex(type).isSubsumed(source, from, length)) {
+                subsumed++;
+                return;
+            }
+
+            switch (type) {
+                case POSITIVE:
+                    if (!clauseSet.add(source, from, length, hash, posClauses.size(), type)) {
+                        duplicates++;
+                        return;
+                    }
+
+                    // append the clause to the arena & get the max size (the index is rebuilt first after a pop)
+                    getIndex(type).add(posClauses.add(source, from, length));
+                    posClauseMaxSize = (posClauseMaxSize < length) ? length : posClauseMaxSize;
+                    break;
+
+                case NEGATIVE:
+                    if (!clauseSet.add(source, from, length, hash, negClauses.size(), type)) {
+                        duplicates++;
+                        return;
+                    }
+
+                    // append the clause to the arena & get the max size (the index is rebuilt first after a pop)
+                    getIndex(type).add(negClauses.add(source, from, length));
+                    negClauseMaxSize = (negClauseMaxSize < length) ? length : negClauseMaxSize;
+                    break;
+            }
+        }
+
+
+        /**
+         * This method will add every clause of the given arena into this stripe
+         * @param clauses given the arena
+         * @param type given the type of the clauses
+         * @param isRemoved tells which clauses to skip (null to add them all)
+         */
+        private void addAll(Clauses clauses, Clauses.ClauseType type, boolean[] isRemoved) {
+            int[] literals = clauses.getLiterals();
+            int from, length;
+            for (int i = 0; i < clauses.size(); i++) {
+                if ((isRemoved != null) && isRemoved[i]) {
+                    continue;
+                }
+                from = clauses.getOffset(i);
+                length = clauses.getLength(i);
+                add(literals, from, length, ClauseSet.hash(literals, from, length), type, true);
+            }
+        }
+
+
+        /**
+         * This method will add the counts of the given stripe to this one
+         * @param stripe given the stripe
+         */
+        private void addCounters(Stripe stripe) {
+            duplicates += stripe.duplicates;
+            subsumed += stripe.subsumed;
+            lockWait += stripe.lockWait;
+        }
+
+
+        /**
+         * This method will pop the last clause of the given type
+         * @param type given the type of the clause
+         * @return the last clause
+         */
+        private int[] pop(Clauses.ClauseType type) {
+            Clauses clauses = getClauses(type);
+            int[] result = clauses.pop();
+            clauseSet.remove(result, 0, result.length, clauses.size(), type);
+
+            // the index may still watch the popped clause, so it is rebuilt on the next add
+            if (type == Clauses.ClauseType.POSITIVE) {
+                posIndex = null;
+            }
+            else {
+                negIndex = null;
+            }
+            return result;
+        }
+
+
+        /**
+         * This method will return the subsumption index of the given type, rebuilding it when needed
+         * @param type given the type of the clause
+         * @return the index
+         */
+        private SubsumptionIndex getIndex(Clauses.ClauseType type) {
+            Clauses clauses = getClauses(type);
+            SubsumptionIndex index = (type == Clauses.ClauseType.POSITIVE) ? posIndex : negIndex;
+            if (index == null) {
+                index = new SubsumptionIndex(clauses);
+                for (int i = 0; i < clauses.size(); i++) {
+                    index.add(i);
+                }
+                if (type == Clauses.ClauseType.POSITIVE) {
+                    posIndex = index;
+                }
+                else {
+                    negIndex = index;
+                }
+            }
+            return index;
+        }
+
+
+        /* Getters & Setters */
+        private Clauses getClauses(Clauses.ClauseType type) {
+            return (type == Clauses.ClauseType.POSITIVE) ? posClauses : negClauses;
+        }
+    }
 }
@@ -0,0 +1,176 @@
+package tim.parallel;
+
+import java.util.Arrays;
+
+
+/**
+ * This class keeps the clauses of every processed bucket in a compressed form, to rebuild a model at the end.
+ * Each clause is stored as its length and then one varint per literal: the distance from the variable of the
+ * previous literal, shifted left by one, with the sign in the low bit. The literals are sorted by variable, so
+ * most of them fit in one byte.
+ */
+public class BucketArchive {
+
+    /* Declare Variables */
+    private byte[][] data;
+    private int[] sizes;
+
+
+    /* Class Constructors */
+    /**
+     * @param buckets number of buckets
+     */
+    public BucketArchive(int buckets) {
+        data = new byte[buckets][];
+        sizes = new int[buckets];
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will store all the clauses of the arena with the given bucket
+     * @param bucket given the index of the bucket
+     * @param clauses given the clauses (sorted, all with the key of the bucket)
+     */
+    public void add(int bucket, Clauses clauses) {
+        int[] literals = clauses.getLiterals();
+        int i, j, from, end, previous, variable;
+        for (i = 0; i < clauses.size(); i++) {
+            from = clauses.getOffset(i);
+            end = from + clauses.getLength(i);
+            write(bucket, end - from);
+
+            previous = 0;
+            for (j = from; j < end; j++) {
+                variable = literals[j] >>> 1;
+                write(bucket, ((variable - previous) << 1) | (~literals[j] & 1));
+                previous = variable;
+            }
+        }
+    }
+
+
+    /**
+     * This method will rebuild a model by going through the buckets backward: when bucket i comes up, every other
+     * variable of its clauses is already set, so its own variable is set to satisfy the clauses that are left
+     * (directional resolution makes sure both signs are never needed).
+     * @param values given values[v] = 1, -1, or 0 for the variables to rebuild (it is filled in)
+     */
+    public void reconstruct(byte[] values) {
+        int bucket, position, length, variable, code, i;
+        boolean isSatisfied, isKeyNegative;
+        byte needed;
+        for (bucket = data.length - 1; bucket >= 0; bucket--) {
+            // a variable without clauses can take any value
+            if ((data[bucket] == null) || (values[bucket + 1] != 0)) {
+                values[bucket + 1] = (values[bucket + 1] == 0) ? -1 : values[bucket + 1];
+                continue;
+            }
+
+            // go through the clauses of the bucket
+            needed = 0;
+            position = 0;
+            while (position < sizes[bucket]) {
+                length = readVarint(data[bucket], position);
+                position = nextPosition(data[bucket], position);
+
+                variable = 0;
+                isSatisfied = false;
+                isKeyNegative = false;
+                for (i = 0; i < length; i++) {
+                    code = readVarint(data[bucket], position);
+                    position = nextPosition(data[bucket], position);
+                    variable += code >>> 1;
+
+                    // the first literal is the variable of the bucket, the others are set already
+                    if (i == 0) {
+                        isKeyNegative = (code & 1) == 1;
+                    }
+                    else if (values[variable] == (((code & 1) == 1) ? -1 : 1)) {
+                        isSatisfied = true;
+                    }
+                }
+
+                if (!isSatisfied) {
+                    assert ((needed == 0) || (needed == (isKeyNegative ? -1 : 1))) :
+                            String.format("Bucket %d needs both signs", bucket + 1);
+                    needed = (byte) (isKeyNegative ? -1 : 1);
+                }
+            }
+
+            values[bucket + 1] = (needed == 0) ? -1 : needed;
+            data[bucket] = null;
+        }
+    }
+
+
+    /**
+     * @param bucket given the index of the bucket
+     * @return the bytes of the clauses of the bucket (only the first getSize(bucket) are used, null when it has none)
+     */
+    public byte[] getData(int bucket) {
+        return data[bucket];
+    }
+
+
+    /**
+     * @param bucket given the index of the bucket
+     * @return the number of bytes of the clauses of the bucket
+     */
+    public int getSize(int bucket) {
+        return sizes[bucket];
+    }
+
+
+    /**
+     * This method will set the clauses of a bucket as they were archived (see getData)
+     * @param bucket given the index of the bucket
+     * @param data given the bytes (null when it has no clauses)
+     * @param size given the number of bytes that are used
+     */
+    public void set(int bucket, byte[] data, int size) {
+        this.data[bucket] = data;
+        sizes[bucket] = size;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will append an unsigned varint to the bytes of the bucket
+     * @param bucket given the index of the bucket
+     * @param value given the value
+     */
+    private void write(int bucket, int value) {
+        if (data[bucket] == null) {
+            data[bucket] = new byte[16];
+        }
+        else if (sizes[bucket] + 5 > data[bucket].length) {
+            data[bucket] = Arrays.copyOf(data[bucket], data[bucket].length * 2);
+        }
+
+        while ((value & ~0x7F) != 0) {
+            data[bucket][sizes[bucket]++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[bucket][sizes[bucket]++] = (byte) value;
+    }
+
+
+    private static int readVarint(byte[] bytes, int position) {
+        int result = 0;
+        int shift = 0;
+        while ((bytes[position] & 0x80) != 0) {
+            result |= (bytes[position++] & 0x7F) << shift;
+            shift += 7;
+        }
+        return result | (bytes[position] << shift);
+    }
+
+
+    private static int nextPosition(byte[] bytes, int position) {
+        while ((bytes[position] & 0x80) != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+}
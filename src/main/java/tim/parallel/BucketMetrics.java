@@ -0,0 +1,191 @@
+package tim.parallel;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class holds the metrics of one bucket: its sizes and turned down clauses when it is processed, and what the
+ * tiles of its elimination did (pairs, tautologies, resolvents sent to each bucket, busy time and allocated bytes).
+ * The tiles add their counts once they are done, so the counters are only touched once per tile.
+ */
+public class BucketMetrics {
+
+    /* Declare Variables */
+    private Metrics metrics;
+    private int index;
+    private int posSize;
+    private int negSize;
+    private long duplicates;
+    private long subsumed;
+    private long lockWait;
+    private long time;
+    private AtomicLong pairs;
+    private AtomicLong tautologies;
+    private AtomicLong busyTime;
+    private AtomicLong allocatedBytes;
+    private AtomicLong tiles;
+    private ConcurrentHashMap<Integer,AtomicLong> resolvents;
+
+
+    /* Class Constructors */
+    /**
+     * @param metrics given the metrics of the run
+     * @param index given the index of the bucket
+     */
+    BucketMetrics(Metrics metrics, int index) {
+        this.metrics = metrics;
+        this.index = index;
+        pairs = new AtomicLong();
+        tautologies = new AtomicLong();
+        busyTime = new AtomicLong();
+        allocatedBytes = new AtomicLong();
+        tiles = new AtomicLong();
+        resolvents = new ConcurrentHashMap<>();
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will take the sizes and the counts of the bucket (once it is compacted, before it is processed)
+     * @param bucket given the bucket
+     */
+    public void setBucket(Bucket bucket) {
+        posSize = bucket.getPosSize();
+        negSize = bucket.getNegSize();
+        duplicates = bucket.getDuplicateCount();
+        subsumed = bucket.getSubsumedCount();
+        lockWait = bucket.getLockWaitTime();
+    }
+
+
+    /**
+     * This method will add the counts of a tile done by the current thread
+     * @param pairs given the number of pairs tried
+     * @param tautologies given the number of resolutions that were always true
+     * @param busyTime given the time the tile took in nanoseconds
+     * @param allocatedBytes given the bytes the thread allocated for the tile
+     */
+    public void addTile(long pairs, long tautologies, long busyTime, long allocatedBytes) {
+        this.pairs.addAndGet(pairs);
+        this.tautologies.addAndGet(tautologies);
+        this.busyTime.addAndGet(busyTime);
+        this.allocatedBytes.addAndGet(allocatedBytes);
+        tiles.incrementAndGet();
+        metrics.addTile(busyTime, allocatedBytes);
+    }
+
+
+    /**
+     * This method will count the resolvents sent to a bucket
+     * @param target given the index of the bucket
+     * @param count given the number of resolvents
+     */
+    public void addResolvents(int target, long count) {
+        AtomicLong counter = resolvents.get(target);
+        if (counter == null) {
+            counter = new AtomicLong();
+            AtomicLong other = resolvents.putIfAbsent(target, counter);
+            counter = (other != null) ? other : counter;
+        }
+        counter.addAndGet(count);
+    }
+
+
+    /* Getters & Setters */
+    public int getIndex() {
+        return index;
+    }
+
+
+    public int getPosSize() {
+        return posSize;
+    }
+
+
+    public int getNegSize() {
+        return negSize;
+    }
+
+
+    /**
+     * @return the number of clauses the bucket turned down because it had them already
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+
+    /**
+     * @return the number of clauses the bucket turned down or dropped because they were subsumed
+     */
+    public long getSubsumed() {
+        return subsumed;
+    }
+
+
+    /**
+     * @return the time the threads waited for the locks of the bucket in nanoseconds
+     */
+    public long getLockWait() {
+        return lockWait;
+    }
+
+
+    /**
+     * @return the wall time of the elimination of the bucket in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+
+    public long getPairs() {
+        return pairs.get();
+    }
+
+
+    public long getTautologies() {
+        return tautologies.get();
+    }
+
+
+    /**
+     * @return the time of all the tiles of the bucket in nanoseconds (over all the threads)
+     */
+    public long getBusyTime() {
+        return busyTime.get();
+    }
+
+
+    /**
+     * @return the bytes allocated by the tiles of the bucket (0 when the JVM doesn't tell)
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+
+    public long getTiles() {
+        return tiles.get();
+    }
+
+
+    /**
+     * @return the number of resolvents sent to each bucket (by index, sorted)
+     */
+    public Map<Integer,Long> getResolvents() {
+        Map<Integer,Long> result = new TreeMap<>();
+        for (Map.Entry<Integer,AtomicLong> entry : resolvents.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+}
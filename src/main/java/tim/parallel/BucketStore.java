@@ -0,0 +1,416 @@
+package tim.parallel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * This class keeps the buckets that are not processed yet under a heap budget.
+ * When the heap that is still used after a garbage collection is over the budget, the buckets furthest from the
+ * current one are written to a segment file and replaced by an empty overflow bucket that takes the resolutions
+ * that keep coming. The file is mapped in windows of SEGMENT_SIZE bytes, and the clauses of a bucket are written as
+ * regions that never cross a window, so most buckets are one region.
+ * A spilled bucket is read back and merged with its overflow when the main loop gets to it, and an IO thread loads
+ * the next PREFETCH_DISTANCE buckets ahead of time.
+ * A bucket is only spilled when no worker can write to it: the caller tells which buckets are hot (the ones being
+ * processed and the ones they send resolutions to).
+ */
+public class BucketStore {
+
+    /* Declare Variables */
+    public static final int PREFETCH_DISTANCE = 4;
+    public static final int SEGMENT_SIZE = 1 << 26;
+
+    private Bucket[] buckets;
+    private long budget;
+    private File directory;
+    private File file;
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long fileSize;
+    private List<MappedByteBuffer> windows;
+    private Map<Integer,List<long[]>> segments;
+    private Map<Integer,Future<Bucket>> loads;
+    private ExecutorService ioThread;
+    private long lastCollectionCount;
+    private long usedHeap;
+    private int spillCount;
+
+
+    /* Class Constructors */
+    /**
+     * @param buckets given the buckets (bucket i is replaced by an overflow bucket while it is spilled)
+     * @param budget given the heap budget in bytes
+     * @param directory given the directory of the segment file (created on the first spill)
+     */
+    public BucketStore(Bucket[] buckets, long budget, File directory) {
+        this.buckets = buckets;
+        this.budget = budget;
+        this.directory = directory;
+        fileSize = 0;
+        windows = new ArrayList<>();
+        segments = new ConcurrentHashMap<>();
+        loads = new ConcurrentHashMap<>();
+        lastCollectionCount = -1;
+        spillCount = 0;
+        ioThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bucket-store-io");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will return the whole bucket, reading it back first if it was spilled
+     * @param index given the index of the bucket
+     * @return the bucket
+     */
+    public Bucket take(int index) throws IOException {
+        List<long[]> regions = segments.remove(index);
+        if (regions == null) {
+            return buckets[index];
+        }
+
+        // wait for the prefetch, or read it now
+        Future<Bucket> load = loads.remove(index);
+        Bucket result;
+        try {
+            result = (load == null) ? load(regions, buckets[index].getStripeCount()) : load.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading a bucket", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        // add what came in while it was on disk
+        result.union(buckets[index]);
+        buckets[index] = result;
+        return result;
+    }
+
+
+    /**
+     * This method will start loading the spilled buckets right after the current one
+     * @param current given the index of the bucket being processed
+     */
+    public void prefetch(int current) {
+        int index;
+        for (int i = 1; (i <= PREFETCH_DISTANCE) && (current + i < buckets.length); i++) {
+            index = current + i;
+            if (!segments.containsKey(index) || loads.containsKey(index)) {
+                continue;
+            }
+
+            final List<long[]> bucketRegions = segments.get(index);
+            final int stripeCount = buckets[index].getStripeCount();
+            loads.put(index, ioThread.submit(new Callable<Bucket>() {
+                @Override
+                public Bucket call() throws IOException {
+                    return load(bucketRegions, stripeCount);
+                }
+            }));
+        }
+    }
+
+
+    /**
+     * This method will spill buckets, from the last one down, when the heap is over the budget after a collection
+     * @param current given the index of the bucket being processed (it and the prefetched ones are not spilled)
+     * @return the number of buckets spilled
+     */
+    public int spillIfNeeded(int current) throws IOException {
+        return isOverBudget() ? spillDown(current, null) : 0;
+    }
+
+
+    /**
+     * This method will check the heap still used after the last collection against the budget
+     * (only once per collection, so it is cheap to call after every bucket)
+     * @return true when there was a new collection and the heap is over the budget
+     */
+    public boolean isOverBudget() {
+        long collectionCount = getCollectionCount();
+        if (collectionCount == lastCollectionCount) {
+            return false;
+        }
+        usedHeap = getUsedHeap();
+        if (usedHeap <= budget) {
+            return false;
+        }
+        lastCollectionCount = collectionCount;
+        return true;
+    }
+
+
+    /**
+     * This method will spill buckets, from the last one down, until the heap seen by isOverBudget is back to 3/4 of
+     * the budget
+     * @param current given the index of the next bucket to process (it and the prefetched ones are not spilled)
+     * @param isHot tells which buckets a worker can write to (null when none)
+     * @return the number of buckets spilled
+     */
+    public int spillDown(int current, boolean[] isHot) throws IOException {
+        long target = usedHeap - budget / 4 * 3;
+        long freed = 0;
+        int result = 0;
+        for (int i = buckets.length - 1; (i > current + PREFETCH_DISTANCE) && (freed < target); i--) {
+            if ((buckets[i] != null) && ((isHot == null) || !isHot[i]) &&
+                    (buckets[i].getPosSize() + buckets[i].getNegSize() > 0)) {
+                freed += spill(i);
+                result++;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will write the clauses of the bucket to the segment file and replace it by an empty bucket
+     * @param index given the index of the bucket
+     * @return the bytes it held on the heap
+     */
+    public long spill(int index) throws IOException {
+        Bucket bucket = buckets[index];
+        long result = bucket.getMemorySize();
+        bucket.compact();
+
+        List<long[]> regions = segments.get(index);
+        if (regions == null) {
+            regions = new ArrayList<>();
+        }
+        write(bucket.getPosClauses(), Clauses.ClauseType.POSITIVE, regions);
+        write(bucket.getNegClauses(), Clauses.ClauseType.NEGATIVE, regions);
+        segments.put(index, regions);
+
+        buckets[index] = new Bucket(bucket.getStripeCount());
+        buckets[index].addCounters(bucket);
+        spillCount++;
+        return result;
+    }
+
+
+    /**
+     * This method will return the regions of a spilled bucket (see write), e.g. to copy them out with read
+     * @param index given the index of the bucket
+     * @return the (position, size) of the regions, or null when the bucket is not spilled
+     */
+    public List<long[]> getRegions(int index) {
+        List<long[]> regions = segments.get(index);
+        return (regions == null) ? null : new ArrayList<>(regions);
+    }
+
+
+    /**
+     * This method will read a region of the file (from any thread, as long as the store is open).
+     * A region is never written again once it is written, even after its bucket is taken back.
+     * @param region given the (position, size) of the region
+     * @return the ints of the region: the type, the number of clauses, and then the length and the literals of each
+     */
+    public IntBuffer read(long[] region) throws IOException {
+        return getRegion(region[0], (int) region[1]).asIntBuffer();
+    }
+
+
+    /**
+     * This method will stop the IO thread and delete the segment file
+     */
+    public void close() throws IOException {
+        ioThread.shutdownNow();
+        segments.clear();
+        loads.clear();
+        if (channel != null) {
+            synchronized (windows) {
+                windows.clear();
+            }
+            channel.close();
+            randomAccessFile.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+            channel = null;
+        }
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will append the clauses to the segment file as regions that fit in a window.
+     * A region is the type, the number of clauses, and then the length and the literals of each clause.
+     * @param clauses given the clauses
+     * @param type given their type
+     * @param regions given the list of (position, size) of the regions of the bucket
+     */
+    private void write(Clauses clauses, Clauses.ClauseType type, List<long[]> regions) throws IOException {
+        if (channel == null) {
+            file = File.createTempFile("buckets", ".segment", directory);
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+        }
+
+        int[] literals = clauses.getLiterals();
+        int from = 0;
+        int end, size, i;
+        long left;
+        IntBuffer buffer;
+        while (from < clauses.size()) {
+            // take as many clauses as fit in one window
+            size = 8;
+            end = from;
+            while ((end < clauses.size()) && (size + 4L * (1 + clauses.getLength(end)) <= SEGMENT_SIZE)) {
+                size += 4 * (1 + clauses.getLength(end));
+                end++;
+            }
+            assert (end > from) : String.format("a clause of %d literals doesn't fit in a window",
+                    clauses.getLength(from));
+
+            // start the next window when this one is too full
+            left = SEGMENT_SIZE - fileSize % SEGMENT_SIZE;
+            if (left < size) {
+                fileSize += left;
+            }
+
+            buffer = getRegion(fileSize, size).asIntBuffer();
+            buffer.put(type.ordinal());
+            buffer.put(end - from);
+            for (i = from; i < end; i++) {
+                buffer.put(clauses.getLength(i));
+                buffer.put(literals, clauses.getOffset(i), clauses.getLength(i));
+            }
+            regions.add(new long[] {fileSize, size});
+            fileSize += size;
+            from = end;
+        }
+    }
+
+
+    /**
+     * This method will read the regions of a bucket back into a new bucket
+     * @param regions given the (position, size) of the regions
+     * @param stripeCount given the number of stripes of the bucket
+     * @return the bucket
+     */
+    private Bucket load(List<long[]> regions, int stripeCount) throws IOException {
+        Bucket result = new Bucket(stripeCount);
+        int[] clause = new int[16];
+        IntBuffer buffer;
+        Clauses.ClauseType type;
+        int count, length, i;
+        for (long[] region : regions) {
+            buffer = getRegion(region[0], (int) region[1]).asIntBuffer();
+            type = Clauses.ClauseType.values()[buffer.get()];
+            count = buffer.get();
+            for (i = 0; i < count; i++) {
+                length = buffer.get();
+                if (clause.length < length) {
+                    clause = new int[Math.max(length, clause.length * 2)];
+                }
+                buffer.get(clause, 0, length);
+                result.add(clause, 0, length, type);
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will return a view on a region of the file, mapping its window first if needed
+     * (the main thread writes and the IO thread reads, so the windows are shared)
+     * @param position given the position of the region
+     * @param size given its size (it doesn't cross a window)
+     * @return the bytes of the region
+     */
+    private ByteBuffer getRegion(long position, int size) throws IOException {
+        int window = (int) (position / SEGMENT_SIZE);
+        ByteBuffer result;
+        synchronized (windows) {
+            while (windows.size() <= window) {
+                windows.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) windows.size() * SEGMENT_SIZE,
+                        SEGMENT_SIZE));
+            }
+            result = windows.get(window).duplicate();
+        }
+        result.position((int) (position % SEGMENT_SIZE));
+        result.limit(result.position() + size);
+        return result.slice();
+    }
+
+
+    /**
+     * @return the number of garbage collections so far
+     */
+    static long getCollectionCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(collector.getCollectionCount(), 0);
+        }
+        return result;
+    }
+
+
+    /**
+     * @return the heap still used after the last collection (the live data, without the garbage)
+     */
+    static long getUsedHeap() {
+        long result = 0;
+        MemoryUsage usage;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            usage = (pool.getType() == MemoryType.HEAP) ? pool.getCollectionUsage() : null;
+            result += (usage == null) ? 0 : usage.getUsed();
+        }
+
+        // fall back to the current usage when the pools don't tell
+        if (result == 0) {
+            result = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        }
+        return result;
+    }
+
+
+    /* Getters & Setters */
+    public Bucket[] getBuckets() {
+        return buckets;
+    }
+
+
+    public long getBudget() {
+        return budget;
+    }
+
+
+    public int getSpillCount() {
+        return spillCount;
+    }
+
+
+    public long getFileSize() {
+        return fileSize;
+    }
+}
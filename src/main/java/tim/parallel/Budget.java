@@ -0,0 +1,230 @@
+package tim.parallel;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * This class holds the limits of a run (wall time, resolutions, heap, clause width) and the flag that stops it.
+ * Nothing is interrupted: the workers check the flag (and the limits) in their loops and give up on their own,
+ * so the first one that finds the empty clause or goes over a limit stops all the others within a clause.
+ * A limit of 0 means no limit. The first reason to stop is kept.
+ * A cancel is kept apart from the other reasons, so one that comes before the run starts is not lost.
+ */
+public class Budget {
+
+    /* Declare Variables */
+    public enum Reason {
+        TIME,
+        RESOLUTIONS,
+        MEMORY,
+        WIDTH,
+        CANCELLED,
+        EMPTY_CLAUSE
+    }
+
+    private long timeLimit;
+    private long resolutionLimit;
+    private long memoryLimit;
+    private int widthLimit;
+    private volatile long deadline;
+    private volatile long lastCollectionCount;
+    private volatile boolean isCancelled;
+    private AtomicLong resolutions;
+    private AtomicReference<Reason> reason;
+
+
+    /* Class Constructors */
+    public Budget() {
+        timeLimit = 0;
+        resolutionLimit = 0;
+        memoryLimit = 0;
+        widthLimit = 0;
+        deadline = Long.MAX_VALUE;
+        lastCollectionCount = -1;
+        isCancelled = false;
+        resolutions = new AtomicLong();
+        reason = new AtomicReference<>();
+    }
+
+
+    /**
+     * @param limits given the budget to take the limits from (the counters start from 0)
+     */
+    public Budget(Budget limits) {
+        this();
+        timeLimit = limits.timeLimit;
+        resolutionLimit = limits.resolutionLimit;
+        memoryLimit = limits.memoryLimit;
+        widthLimit = limits.widthLimit;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will start the clock and clear the counters and the reason (at the start of a run), but not a cancel
+     */
+    public void start() {
+        deadline = (timeLimit > 0) ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeLimit) : Long.MAX_VALUE;
+        lastCollectionCount = -1;
+        resolutions.set(0);
+        reason.set(null);
+        // the flag is read after the reason is cleared, so a cancel that comes meanwhile stops the run either way
+        if (isCancelled) {
+            stop(Reason.CANCELLED);
+        }
+    }
+
+
+    /**
+     * This method will clear a cancel (at the end of a run)
+     */
+    public void finish() {
+        isCancelled = false;
+    }
+
+
+    /**
+     * This method will cancel the run from any thread, or the next one when it is not started yet
+     */
+    public void cancel() {
+        isCancelled = true;
+        stop(Reason.CANCELLED);
+    }
+
+
+    /**
+     * This method will stop the run (thread-safe, only the first reason is kept)
+     * @param reason given the reason
+     */
+    public void stop(Reason reason) {
+        this.reason.compareAndSet(null, reason);
+    }
+
+
+    /**
+     * @return whether the run is stopped (a volatile read, cheap enough for the inner loops)
+     */
+    public boolean isStopped() {
+        return reason.get() != null;
+    }
+
+
+    /**
+     * This method will count the resolutions (for the stats too) and check the time and resolution limits
+     * @param count given the number of resolutions since the last call
+     * @return whether the run is stopped
+     */
+    public boolean check(long count) {
+        if ((count > 0) && (resolutions.addAndGet(count) > resolutionLimit) && (resolutionLimit > 0)) {
+            stop(Reason.RESOLUTIONS);
+        }
+        if ((deadline != Long.MAX_VALUE) && (System.nanoTime() - deadline > 0)) {
+            stop(Reason.TIME);
+        }
+        return isStopped();
+    }
+
+
+    /**
+     * This method will check the heap still used after the last collection against the limit
+     * (it only looks again after a new collection)
+     * @return whether the run is stopped
+     */
+    public boolean checkMemory() {
+        if (memoryLimit > 0) {
+            long collectionCount = BucketStore.getCollectionCount();
+            if ((collectionCount != lastCollectionCount) && (BucketStore.getUsedHeap() > memoryLimit)) {
+                stop(Reason.MEMORY);
+            }
+            lastCollectionCount = collectionCount;
+        }
+        return isStopped();
+    }
+
+
+    /**
+     * This method will stop the run when the clause is over the width limit
+     * @param length given the number of literals of a new clause
+     * @return whether the clause is too wide
+     */
+    public boolean checkWidth(int length) {
+        if ((widthLimit > 0) && (length > widthLimit)) {
+            stop(Reason.WIDTH);
+            return true;
+        }
+        return false;
+    }
+
+
+    /* Getters & Setters */
+    /**
+     * @return the reason the run stopped, or null while it goes on
+     */
+    public Reason getReason() {
+        return reason.get();
+    }
+
+
+    public boolean isCancelled() {
+        return isCancelled;
+    }
+
+
+    public long getResolutions() {
+        return resolutions.get();
+    }
+
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+
+    /**
+     * @param timeLimit given the wall time of the run in milliseconds
+     */
+    public void setTimeLimit(long timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+
+    public long getResolutionLimit() {
+        return resolutionLimit;
+    }
+
+
+    /**
+     * @param resolutionLimit given the number of resolutions of the whole run
+     */
+    public void setResolutionLimit(long resolutionLimit) {
+        this.resolutionLimit = resolutionLimit;
+    }
+
+
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+
+    /**
+     * @param memoryLimit given the heap in bytes still used after a collection
+     */
+    public void setMemoryLimit(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+
+    public int getWidthLimit() {
+        return widthLimit;
+    }
+
+
+    /**
+     * @param widthLimit given the number of literals of the longest resolution
+     */
+    public void setWidthLimit(int widthLimit) {
+        this.widthLimit = widthLimit;
+    }
+}
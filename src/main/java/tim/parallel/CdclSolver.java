@@ -0,0 +1,760 @@
+package tim.parallel;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+
+/**
+ * This class is a conflict-driven clause learning (CDCL) search engine.
+ * It takes over the clauses that are left when the resolution stops early (see the bounded mode of the Solver).
+ * The original clauses and the learnt clauses are kept in two arenas. A clause is referred to by its index in
+ * the original arena, or by ~index in the learnt arena. The first two literals of a clause are the watched ones.
+ * It uses 1UIP learning, VSIDS decisions with phase saving, Luby restarts, and drops half of the learnt clauses
+ * (highest LBD first) when there are too many of them.
+ * With a Budget, the search checks it every BUDGET_CONFLICTS conflicts and gives up when the run is stopped.
+ */
+public class CdclSolver {
+
+    /* Declare Variables */
+    public static final int RESTART_BASE = 100;
+    public static final double VARIABLE_DECAY = 0.95;
+    public static final double CLAUSE_DECAY = 0.999;
+    public static final int MIN_LEARNTS = 10000;
+    public static final int BUDGET_CONFLICTS = 256;
+    private static final int NO_REASON = Integer.MIN_VALUE;
+
+    private int variables;
+    private Clauses originals;
+    private Clauses learnts;
+    private double[] clauseActivities;
+    private int[] lbds;
+    private double clauseIncrement;
+    private int maxLearnts;
+
+    private int[][] watches;
+    private int[] watchSizes;
+
+    private byte[] values;
+    private int[] levels;
+    private int[] reasons;
+    private boolean[] phases;
+    private int[] trail;
+    private int trailSize;
+    private int head;
+    private int[] trailLimits;
+    private int decisionLevel;
+
+    private double[] activities;
+    private double variableIncrement;
+    private VariableHeap heap;
+
+    private boolean[] isSeen;
+    private int[] learnt;
+    private int[] minimized;
+    private int[] levelStamps;
+    private int stamp;
+    private boolean isUnsatisfiable;
+    private Budget budget;
+
+    private long conflicts;
+    private long decisions;
+    private long propagations;
+    private int restarts;
+
+
+    /* Class Constructors */
+    /**
+     * @param variables number of variables (the literals are in [-variables, variables])
+     */
+    public CdclSolver(int variables) {
+        this.variables = variables;
+        originals = new Clauses();
+        learnts = new Clauses();
+        clauseActivities = new double[Clauses.INITIAL_CLAUSES];
+        lbds = new int[Clauses.INITIAL_CLAUSES];
+        clauseIncrement = 1;
+
+        watches = new int[2 * variables + 2][];
+        watchSizes = new int[2 * variables + 2];
+
+        values = new byte[variables + 1];
+        levels = new int[variables + 1];
+        reasons = new int[variables + 1];
+        phases = new boolean[variables + 1];
+        trail = new int[variables];
+        trailLimits = new int[variables + 1];
+        Arrays.fill(reasons, NO_REASON);
+        trailSize = 0;
+        head = 0;
+        decisionLevel = 0;
+
+        activities = new double[variables + 1];
+        variableIncrement = 1;
+        heap = new VariableHeap(variables);
+        for (int i = 1; i <= variables; i++) {
+            heap.push(i);
+        }
+
+        isSeen = new boolean[variables + 1];
+        learnt = new int[variables + 1];
+        minimized = new int[variables + 1];
+        levelStamps = new int[variables + 1];
+        stamp = 0;
+        isUnsatisfiable = false;
+        budget = new Budget();
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will add a clause (only before solving). The literals must not repeat.
+     * @param source given the array holding the literals
+     * @param from index of the first literal
+     * @param length number of literals
+     */
+    public void addClause(int[] source, int from, int length) {
+        // drop the literals that are false (and the clauses that are true) at level 0
+        int size = 0;
+        int value;
+        for (int i = from; i < from + length; i++) {
+            value = getValue(source[i]);
+            if (value > 0) {
+                return;
+            }
+            if (value == 0) {
+                learnt[size++] = source[i];
+            }
+        }
+
+        if (size == 0) {
+            isUnsatisfiable = true;
+        }
+        else if (size == 1) {
+            enqueue(learnt[0], NO_REASON);
+        }
+        else {
+            int index = originals.add(learnt, 0, size);
+            watch(learnt[0], index);
+            watch(learnt[1], index);
+        }
+    }
+
+
+    /**
+     * This method will search for a satisfying assignment
+     * @return true when the clauses are satisfiable (see getValues), false when they are not or when the budget
+     * stopped the search (see isUnsatisfiable)
+     */
+    public boolean solve() {
+        if (isUnsatisfiable || (propagate() != NO_REASON)) {
+            isUnsatisfiable = true;
+            return false;
+        }
+
+        maxLearnts = Math.max(originals.size() / 3, MIN_LEARNTS);
+        int status;
+        while (true) {
+            status = search(RESTART_BASE * getLuby(restarts++));
+            if (status != 0) {
+                isUnsatisfiable = status < 0;
+                return status > 0;
+            }
+            if (budget.isStopped()) {
+                return false;
+            }
+
+            // restart from level 0 (that's where the learnt clauses can be dropped)
+            if (learnts.size() > maxLearnts + trailSize) {
+                reduceLearnts();
+                maxLearnts += maxLearnts / 10;
+            }
+        }
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will search until a conflict limit is reached
+     * @param conflictLimit given the number of conflicts before a restart
+     * @return 1 when satisfiable, -1 when unsatisfiable and 0 for a restart
+     */
+    private int search(long conflictLimit) {
+        long conflictCount = 0;
+        int conflict;
+        while (true) {
+            conflict = propagate();
+            if (conflict != NO_REASON) {
+                conflicts++;
+                conflictCount++;
+                if (decisionLevel == 0) {
+                    return -1;
+                }
+
+                learn(conflict);
+                variableIncrement /= VARIABLE_DECAY;
+                clauseIncrement /= CLAUSE_DECAY;
+
+                // give up like a restart when the run is stopped
+                if ((conflicts % BUDGET_CONFLICTS == 0) && budget.check(0)) {
+                    backtrack(0);
+                    return 0;
+                }
+            }
+            else if (conflictCount >= conflictLimit) {
+                backtrack(0);
+                return 0;
+            }
+            else if (!decide()) {
+                return 1;
+            }
+        }
+    }
+
+
+    /**
+     * This method will propagate the assigned literals with the watches
+     * @return the reference of a falsified clause, or NO_REASON
+     */
+    private int propagate() {
+        int literal, falseCode, size, i, j, clause, from, length, k, first;
+        int[] list, literals;
+        Clauses arena;
+        while (head < trailSize) {
+            literal = trail[head++];
+            propagations++;
+
+            // visit the clauses watching the literal that just became false
+            falseCode = getCode(-literal);
+            list = watches[falseCode];
+            size = watchSizes[falseCode];
+            i = 0;
+            j = 0;
+            while (i < size) {
+                clause = list[i++];
+                arena = (clause >= 0) ? originals : learnts;
+                literals = arena.getLiterals();
+                from = arena.getOffset((clause >= 0) ? clause : ~clause);
+                length = arena.getLength((clause >= 0) ? clause : ~clause);
+
+                // make sure the false literal is the 2nd one
+                if (literals[from] == -literal) {
+                    literals[from] = literals[from + 1];
+                    literals[from + 1] = -literal;
+                }
+                first = literals[from];
+                if (getValue(first) > 0) {
+                    list[j++] = clause;
+                    continue;
+                }
+
+                // look for a new literal to watch
+                for (k = from + 2; k < from + length; k++) {
+                    if (getValue(literals[k]) >= 0) {
+                        literals[from + 1] = literals[k];
+                        literals[k] = -literal;
+                        watch(literals[from + 1], clause);
+                        break;
+                    }
+                }
+                if (k < from + length) {
+                    continue;
+                }
+
+                // the clause is unit or false
+                list[j++] = clause;
+                if (getValue(first) < 0) {
+                    while (i < size) {
+                        list[j++] = list[i++];
+                    }
+                    watchSizes[falseCode] = j;
+                    head = trailSize;
+                    return clause;
+                }
+                enqueue(first, clause);
+            }
+            watchSizes[falseCode] = j;
+        }
+
+        return NO_REASON;
+    }
+
+
+    /**
+     * This method will learn the first UIP clause of the conflict and jump back to where it is unit
+     * @param conflict given the falsified clause
+     */
+    private void learn(int conflict) {
+        int size = 1;
+        int pathCount = 0;
+        int literal = 0;
+        int index = trailSize - 1;
+        int clause = conflict;
+        int i, from, length, variable;
+        int[] literals;
+        Clauses arena;
+
+        // walk back the trail until one literal of the current level is left
+        do {
+            if (clause < 0) {
+                bumpClause(~clause);
+            }
+            arena = (clause >= 0) ? originals : learnts;
+            literals = arena.getLiterals();
+            from = arena.getOffset((clause >= 0) ? clause : ~clause);
+            length = arena.getLength((clause >= 0) ? clause : ~clause);
+            for (i = from; i < from + length; i++) {
+                variable = Math.abs(literals[i]);
+                if ((literals[i] == literal) || isSeen[variable] || (levels[variable] == 0)) {
+                    continue;
+                }
+                isSeen[variable] = true;
+                bumpVariable(variable);
+                if (levels[variable] >= decisionLevel) {
+                    pathCount++;
+                }
+                else {
+                    learnt[size++] = literals[i];
+                }
+            }
+
+            // the next literal of the current level on the trail
+            while (!isSeen[Math.abs(trail[index])]) {
+                index--;
+            }
+            literal = trail[index--];
+            clause = reasons[Math.abs(literal)];
+            isSeen[Math.abs(literal)] = false;
+            pathCount--;
+        } while (pathCount > 0);
+        learnt[0] = -literal;
+
+        // drop the literals implied by the others (the marks are cleared before the clause shrinks)
+        int newSize = 1;
+        for (i = 1; i < size; i++) {
+            if (!isImplied(learnt[i])) {
+                minimized[newSize++] = learnt[i];
+            }
+        }
+        for (i = 1; i < size; i++) {
+            isSeen[Math.abs(learnt[i])] = false;
+        }
+        System.arraycopy(minimized, 1, learnt, 1, newSize - 1);
+        size = newSize;
+
+        // the 2nd watch is the literal of the highest level (the level to jump back to)
+        int backtrackLevel = 0;
+        int swap;
+        for (i = 1; i < size; i++) {
+            if (levels[Math.abs(learnt[i])] > backtrackLevel) {
+                backtrackLevel = levels[Math.abs(learnt[i])];
+                swap = learnt[1];
+                learnt[1] = learnt[i];
+                learnt[i] = swap;
+            }
+        }
+
+        backtrack(backtrackLevel);
+        if (size == 1) {
+            enqueue(learnt[0], NO_REASON);
+            return;
+        }
+
+        int learntIndex = learnts.add(learnt, 0, size);
+        if (learntIndex >= lbds.length) {
+            lbds = Arrays.copyOf(lbds, lbds.length * 2);
+            clauseActivities = Arrays.copyOf(clauseActivities, lbds.length);
+        }
+        lbds[learntIndex] = getLbd(learnt, size);
+        clauseActivities[learntIndex] = clauseIncrement;
+        watch(learnt[0], ~learntIndex);
+        watch(learnt[1], ~learntIndex);
+        enqueue(learnt[0], ~learntIndex);
+    }
+
+
+    /**
+     * This method will check whether the literal of the learnt clause can be dropped: every other literal of the
+     * clause that implied it is already in the learnt clause (or fixed at level 0)
+     * @param literal given the literal
+     * @return whether it is implied
+     */
+    private boolean isImplied(int literal) {
+        int reason = reasons[Math.abs(literal)];
+        if (reason == NO_REASON) {
+            return false;
+        }
+
+        Clauses arena = (reason >= 0) ? originals : learnts;
+        int[] literals = arena.getLiterals();
+        int from = arena.getOffset((reason >= 0) ? reason : ~reason);
+        int length = arena.getLength((reason >= 0) ? reason : ~reason);
+        int variable;
+        for (int i = from; i < from + length; i++) {
+            variable = Math.abs(literals[i]);
+            if ((variable != Math.abs(literal)) && !isSeen[variable] && (levels[variable] > 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * This method will count the decision levels of the clause (literal block distance)
+     * @param clause given the literals
+     * @param size number of literals
+     * @return the number of distinct levels
+     */
+    private int getLbd(int[] clause, int size) {
+        int result = 0;
+        int level;
+        stamp++;
+        for (int i = 0; i < size; i++) {
+            level = levels[Math.abs(clause[i])];
+            if (levelStamps[level] != stamp) {
+                levelStamps[level] = stamp;
+                result++;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will pick the free variable with the highest activity and assign its saved phase
+     * @return false when every variable is assigned
+     */
+    private boolean decide() {
+        int variable;
+        while (!heap.isEmpty()) {
+            variable = heap.pop();
+            if (values[variable] == 0) {
+                decisions++;
+                trailLimits[decisionLevel++] = trailSize;
+                enqueue(phases[variable] ? variable : -variable, NO_REASON);
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * This method will make the literal true at the current level
+     * @param literal given the literal
+     * @param reason given the clause that implied it (or NO_REASON)
+     */
+    private void enqueue(int literal, int reason) {
+        int variable = Math.abs(literal);
+        if (values[variable] != 0) {
+            // a unit clause of the input against another one
+            if (getValue(literal) < 0) {
+                isUnsatisfiable = true;
+            }
+            return;
+        }
+
+        values[variable] = (byte) ((literal > 0) ? 1 : -1);
+        levels[variable] = decisionLevel;
+        reasons[variable] = reason;
+        trail[trailSize++] = literal;
+    }
+
+
+    /**
+     * This method will undo the assignments above the given level
+     * @param level given the level to go back to
+     */
+    private void backtrack(int level) {
+        if (decisionLevel <= level) {
+            return;
+        }
+
+        int variable;
+        for (int i = trailSize - 1; i >= trailLimits[level]; i--) {
+            variable = Math.abs(trail[i]);
+            phases[variable] = values[variable] > 0;
+            values[variable] = 0;
+            reasons[variable] = NO_REASON;
+            if (!heap.contains(variable)) {
+                heap.push(variable);
+            }
+        }
+        trailSize = trailLimits[level];
+        head = trailSize;
+        decisionLevel = level;
+    }
+
+
+    /**
+     * This method will keep the learnt clauses with LBD <= 2 and the better half of the others.
+     * It is called at level 0, where no learnt clause is needed as a reason.
+     */
+    private void reduceLearnts() {
+        int size = learnts.size();
+        Integer[] order = new Integer[size];
+        int i;
+        for (i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer clause1, Integer clause2) {
+                if (lbds[clause1] != lbds[clause2]) {
+                    return (lbds[clause1] < lbds[clause2]) ? -1 : 1;
+                }
+                return Double.compare(clauseActivities[clause2], clauseActivities[clause1]);
+            }
+        });
+
+        // copy the kept clauses into a new arena
+        Clauses kept = new Clauses(size / 2 + 1, learnts.getOffset(size) / 2 + 1);
+        int[] newLbds = new int[lbds.length];
+        double[] newActivities = new double[lbds.length];
+        int clause, index;
+        for (i = 0; i < size; i++) {
+            clause = order[i];
+            if ((i >= size / 2) && (lbds[clause] > 2)) {
+                continue;
+            }
+            index = kept.add(learnts.getLiterals(), learnts.getOffset(clause), learnts.getLength(clause));
+            newLbds[index] = lbds[clause];
+            newActivities[index] = clauseActivities[clause];
+        }
+        learnts = kept;
+        lbds = newLbds;
+        clauseActivities = newActivities;
+
+        // drop the old learnt clauses from the watches and watch the kept ones
+        int j, k;
+        for (i = 0; i < watches.length; i++) {
+            k = 0;
+            for (j = 0; j < watchSizes[i]; j++) {
+                if (watches[i][j] >= 0) {
+                    watches[i][k++] = watches[i][j];
+                }
+            }
+            watchSizes[i] = k;
+        }
+        int[] literals = learnts.getLiterals();
+        for (i = 0; i < learnts.size(); i++) {
+            watch(literals[learnts.getOffset(i)], ~i);
+            watch(literals[learnts.getOffset(i) + 1], ~i);
+        }
+        for (i = 0; i < trailSize; i++) {
+            reasons[Math.abs(trail[i])] = NO_REASON;
+        }
+    }
+
+
+    /**
+     * This method will add the clause to the watch list of the literal
+     * @param literal given the watched literal
+     * @param clause given the clause reference
+     */
+    private void watch(int literal, int clause) {
+        int code = getCode(literal);
+        if (watches[code] == null) {
+            watches[code] = new int[4];
+        }
+        else if (watchSizes[code] == watches[code].length) {
+            watches[code] = Arrays.copyOf(watches[code], watches[code].length * 2);
+        }
+        watches[code][watchSizes[code]++] = clause;
+    }
+
+
+    private void bumpVariable(int variable) {
+        activities[variable] += variableIncrement;
+        if (activities[variable] > 1e100) {
+            for (int i = 1; i <= variables; i++) {
+                activities[i] *= 1e-100;
+            }
+            variableIncrement *= 1e-100;
+        }
+        if (heap.contains(variable)) {
+            heap.up(variable);
+        }
+    }
+
+
+    private void bumpClause(int index) {
+        clauseActivities[index] += clauseIncrement;
+        if (clauseActivities[index] > 1e20) {
+            for (int i = 0; i < learnts.size(); i++) {
+                clauseActivities[i] *= 1e-20;
+            }
+            clauseIncrement *= 1e-20;
+        }
+    }
+
+
+    /**
+     * @param literal given the literal
+     * @return 1 when it is true, -1 when it is false and 0 when its variable is free
+     */
+    private int getValue(int literal) {
+        int value = values[Math.abs(literal)];
+        return (literal < 0) ? -value : value;
+    }
+
+
+    /**
+     * @param literal given the literal
+     * @return its index in the watch lists
+     */
+    private static int getCode(int literal) {
+        return (literal > 0) ? 2 * literal : -2 * literal + 1;
+    }
+
+
+    /**
+     * This method will compute the x-th item of the Luby sequence (1, 1, 2, 1, 1, 2, 4, 1, ...)
+     * @param x given the index (from 0)
+     * @return the item
+     */
+    private static int getLuby(int x) {
+        int size = 1;
+        int sequence = 0;
+        while (size < x + 1) {
+            sequence++;
+            size = 2 * size + 1;
+        }
+        while (size - 1 != x) {
+            size = (size - 1) >> 1;
+            sequence--;
+            x = x % size;
+        }
+        return 1 << Math.min(sequence, 20);
+    }
+
+
+    /* Getters & Setters */
+    /**
+     * @return values[v] is 1 when variable v is true and -1 when it is false (after a satisfiable solve)
+     */
+    public byte[] getValues() {
+        return values;
+    }
+
+
+    public boolean isUnsatisfiable() {
+        return isUnsatisfiable;
+    }
+
+
+    /**
+     * @param budget given the budget of the run (the search stops when it is stopped)
+     */
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+
+    public int getClauseCount() {
+        return originals.size();
+    }
+
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+
+    public long getPropagations() {
+        return propagations;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class is a binary max heap of the variables by activity
+     */
+    private class VariableHeap {
+
+        /* Declare Variables */
+        private int[] heap;
+        private int[] positions;
+        private int size;
+
+
+        /* Class Constructors */
+        private VariableHeap(int variables) {
+            heap = new int[variables];
+            positions = new int[variables + 1];
+            Arrays.fill(positions, -1);
+            size = 0;
+        }
+
+
+        /* Private Methods */
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+
+        private boolean contains(int variable) {
+            return positions[variable] >= 0;
+        }
+
+
+        private void push(int variable) {
+            heap[size] = variable;
+            positions[variable] = size++;
+            up(variable);
+        }
+
+
+        private int pop() {
+            int result = heap[0];
+            positions[result] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                down(0);
+            }
+            return result;
+        }
+
+
+        private void up(int variable) {
+            int index = positions[variable];
+            int parent;
+            while (index > 0) {
+                parent = (index - 1) / 2;
+                if (activities[heap[parent]] >= activities[variable]) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                positions[heap[index]] = index;
+                index = parent;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+
+
+        private void down(int index) {
+            int variable = heap[index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if ((child + 1 < size) && (activities[heap[child + 1]] > activities[heap[child]])) {
+                    child++;
+                }
+                if (activities[heap[child]] <= activities[variable]) {
+                    break;
+                }
+                heap[index] = heap[child];
+                positions[heap[index]] = index;
+                index = child;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+    }
+}
@@ -0,0 +1,609 @@
+package tim.parallel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * This class writes snapshots of the elimination, so that a run that dies can go on from its last one (see
+ * Solver.setResumeFile). A snapshot is what the rest of the run needs: the renaming of the variables, the elimination
+ * tree, the values fixed by the preprocessing, the archived clauses of the processed buckets (for the model) and the
+ * clauses of the other buckets.
+ * It is taken on the main thread without stopping the workers. The arenas only append, so a snapshot is a list of
+ * views on them (see Clauses.getView). The buckets being processed are kept whole: the resolutions they already sent
+ * are implied by them, so finding them again on resume changes nothing.
+ * An IO thread writes the snapshot to a temporary file that replaces the checkpoint once it is complete, and a
+ * snapshot is skipped while the last one is still being written.
+ * The file is big-endian ints (the bytes are padded to 4), read back memory-mapped in windows of WINDOW_SIZE:
+ *   MAGIC, VERSION, variables, clauses, buckets (n), originalIndex (n + 1), parents (n), fixed values (length, bytes)
+ *   then for each bucket: DONE and its archived clauses (length, bytes), or LEFT and its blocks (count, then each block
+ *   as a region of BucketStore: the type, the number of clauses, and the length and the literals of each clause)
+ *   and MAGIC again.
+ */
+public class Checkpoint {
+
+    /* Declare Variables */
+    public static final int MAGIC = 0x42454350;
+    public static final int VERSION = 1;
+    public static final int WINDOW_SIZE = BucketStore.SEGMENT_SIZE;
+    private static final int DONE = 0;
+    private static final int LEFT = 1;
+
+    private File file;
+    private int bucketInterval;
+    private long timeInterval;
+    private int bucketCount;
+    private long lastTime;
+    private ExecutorService ioThread;
+    private Future<Void> pending;
+    private volatile int writeCount;
+
+
+    /* Class Constructors */
+    /**
+     * @param file given the path of the checkpoint
+     * @param bucketInterval given the number of processed buckets between two snapshots (0 to not count them)
+     * @param timeInterval given the time between two snapshots in milliseconds (0 to not time them)
+     */
+    public Checkpoint(File file, int bucketInterval, long timeInterval) {
+        this.file = file;
+        this.bucketInterval = bucketInterval;
+        this.timeInterval = timeInterval;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will start counting the buckets and the time to the next snapshot
+     */
+    public void start() {
+        bucketCount = 0;
+        lastTime = System.currentTimeMillis();
+        writeCount = 0;
+    }
+
+
+    /**
+     * This method will count a processed bucket
+     * @return true when a snapshot is due (never while the last one is being written)
+     */
+    public boolean addBucket() {
+        bucketCount++;
+        if (((bucketInterval <= 0) || (bucketCount < bucketInterval)) &&
+                ((timeInterval <= 0) || (System.currentTimeMillis() - lastTime < timeInterval))) {
+            return false;
+        }
+        return (pending == null) || pending.isDone();
+    }
+
+
+    /**
+     * This method will write the snapshot on the IO thread. It waits for the last one first, and throws why that one
+     * failed once this one is on its way.
+     * @param snapshot given the snapshot
+     */
+    public void write(final Snapshot snapshot) throws IOException {
+        IOException error = null;
+        bucketCount = 0;
+        lastTime = System.currentTimeMillis();
+        try {
+            finish();
+        }
+        catch (IOException e) {
+            error = e;
+        }
+
+        if (ioThread == null) {
+            ioThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "checkpoint-io");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        pending = ioThread.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeFile(snapshot);
+                return null;
+            }
+        });
+        if (error != null) {
+            throw error;
+        }
+    }
+
+
+    /**
+     * This method will wait for the snapshot being written and stop the IO thread
+     */
+    public void close() throws IOException {
+        try {
+            finish();
+        }
+        finally {
+            if (ioThread != null) {
+                ioThread.shutdown();
+                ioThread = null;
+            }
+        }
+    }
+
+
+    /**
+     * This method will read a checkpoint back, mapping the file window by window
+     * @param file given the path of the checkpoint
+     * @param stripeCount given the number of stripes of the buckets
+     * @return the snapshot, with the buckets that are left (null for the processed ones) and the archive
+     */
+    public static Snapshot read(File file, int stripeCount) throws IOException {
+        Reader reader = new Reader(file);
+        Snapshot result;
+        Bucket bucket;
+        Clauses block = new Clauses();
+        int[] clause = new int[16];
+        byte[] data;
+        int version, bucketCount, size, blockCount, count, length, i, j, k;
+        Clauses.ClauseType type;
+        try {
+            if (reader.getInt() != MAGIC) {
+                throw new IOException(String.format("'%s' is not a checkpoint", file));
+            }
+            version = reader.getInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("Unsupported checkpoint version %d in '%s'", version, file));
+            }
+            result = new Snapshot(reader.getInt(), reader.getInt(), null, null, null);
+            bucketCount = reader.getInt();
+            result.originalIndex = reader.getInts(bucketCount + 1);
+            result.parents = reader.getInts(bucketCount);
+            result.fixedValues = reader.getBytes(reader.getInt());
+            result.buckets = new Bucket[bucketCount];
+            result.archive = new BucketArchive(bucketCount);
+
+            for (i = 0; i < bucketCount; i++) {
+                if (reader.getInt() == DONE) {
+                    size = reader.getInt();
+                    data = (size == 0) ? null : reader.getBytes(size);
+                    result.archive.set(i, data, size);
+                    continue;
+                }
+
+                // put the clauses of each block back in a new bucket (they were checked when they came in)
+                bucket = new Bucket(stripeCount);
+                blockCount = reader.getInt();
+                for (j = 0; j < blockCount; j++) {
+                    type = Clauses.ClauseType.values()[reader.getInt()];
+                    count = reader.getInt();
+                    block.clear();
+                    for (k = 0; k < count; k++) {
+                        length = reader.getInt();
+                        if (clause.length < length) {
+                            clause = new int[Math.max(length, clause.length * 2)];
+                        }
+                        reader.getInts(clause, length);
+                        block.add(clause, 0, length);
+                    }
+                    bucket.restore(block, type);
+                }
+                result.buckets[i] = bucket;
+            }
+            if (reader.getInt() != MAGIC) {
+                throw new IOException(String.format("'%s' is corrupted", file));
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return result;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will write the snapshot to a temporary file, flush it to the disk, and put it in place of the
+     * checkpoint (so the checkpoint is always a whole snapshot)
+     * @param snapshot given the snapshot
+     */
+    private void writeFile(Snapshot snapshot) throws IOException {
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            snapshot.write(output);
+            output.flush();
+            stream.getFD().sync();
+        }
+
+        try {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        writeCount++;
+    }
+
+
+    /**
+     * This method will wait for the snapshot being written, and throw why it failed
+     */
+    private void finish() throws IOException {
+        if (pending == null) {
+            return;
+        }
+        Future<Void> future = pending;
+        pending = null;
+        try {
+            future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing a checkpoint", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+
+    /* Getters & Setters */
+    public File getFile() {
+        return file;
+    }
+
+
+    public int getBucketInterval() {
+        return bucketInterval;
+    }
+
+
+    /**
+     * @return the time between two snapshots in milliseconds
+     */
+    public long getTimeInterval() {
+        return timeInterval;
+    }
+
+
+    /**
+     * @return the number of snapshots written since the start
+     */
+    public int getWriteCount() {
+        return writeCount;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class is one snapshot of the elimination: the processed buckets are in the archive, and the others are
+     * views on their clauses (or, once it is read back, whole buckets)
+     */
+    public static class Snapshot {
+
+        /* Declare Variables */
+        private int variables;
+        private int clauses;
+        private int[] originalIndex;
+        private int[] parents;
+        private byte[] fixedValues;
+        private BucketArchive archive;
+        private Left[] left;
+        private Bucket[] buckets;
+
+
+        /* Class Constructors */
+        /**
+         * @param variables given the number of variables of the input
+         * @param clauses given the number of clauses of the input
+         * @param originalIndex given the variable of the input of each bucket variable
+         * @param parents given the parent of each bucket in the elimination tree (-1 for a root)
+         * @param fixedValues given the values fixed by the preprocessing (by variable of the input)
+         */
+        Snapshot(int variables, int clauses, int[] originalIndex, int[] parents, byte[] fixedValues) {
+            this.variables = variables;
+            this.clauses = clauses;
+            this.originalIndex = originalIndex;
+            this.parents = parents;
+            this.fixedValues = fixedValues;
+            if (parents != null) {
+                archive = new BucketArchive(parents.length);
+                left = new Left[parents.length];
+            }
+        }
+
+
+        /* Public Methods */
+        /**
+         * This method will take the archived clauses of a processed bucket (they don't change anymore)
+         * @param index given the index of the bucket
+         * @param archive given the archive of the run
+         */
+        public void setDone(int index, BucketArchive archive) {
+            this.archive.set(index, archive.getData(index), archive.getSize(index));
+        }
+
+
+        /**
+         * This method will take views on the clauses of a bucket that is not processed yet, and on the regions it has
+         * on disk when it is spilled
+         * @param index given the index of the bucket
+         * @param bucket given the bucket (the overflow bucket when it is spilled)
+         * @param store given the store of the run
+         */
+        public void setLeft(int index, Bucket bucket, BucketStore store) {
+            left[index] = new Left(bucket.getViews(Clauses.ClauseType.POSITIVE),
+                    bucket.getViews(Clauses.ClauseType.NEGATIVE), store.getRegions(index), store);
+        }
+
+
+        /* Private Methods */
+        /**
+         * This method will write the snapshot in the format of the checkpoint
+         * @param output given the output
+         */
+        private void write(DataOutputStream output) throws IOException {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(variables);
+            output.writeInt(clauses);
+            output.writeInt(parents.length);
+            writeInts(output, originalIndex);
+            writeInts(output, parents);
+            output.writeInt(fixedValues.length);
+            writeBytes(output, fixedValues, fixedValues.length);
+
+            for (int i = 0; i < parents.length; i++) {
+                if (left[i] == null) {
+                    output.writeInt(DONE);
+                    output.writeInt(archive.getSize(i));
+                    writeBytes(output, archive.getData(i), archive.getSize(i));
+                }
+                else {
+                    output.writeInt(LEFT);
+                    left[i].write(output);
+                }
+            }
+            output.writeInt(MAGIC);
+        }
+
+
+        private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+            for (int value : values) {
+                output.writeInt(value);
+            }
+        }
+
+
+        /**
+         * This method will write the bytes and pad them to 4 bytes
+         * @param output given the output
+         * @param bytes given the bytes (null when there are none)
+         * @param length given the number of bytes
+         */
+        private static void writeBytes(DataOutputStream output, byte[] bytes, int length) throws IOException {
+            if (length > 0) {
+                output.write(bytes, 0, length);
+            }
+            for (int i = length; (i & 3) != 0; i++) {
+                output.write(0);
+            }
+        }
+
+
+        /* Getters & Setters */
+        public int getVariables() {
+            return variables;
+        }
+
+
+        public int getClauses() {
+            return clauses;
+        }
+
+
+        public int[] getOriginalIndex() {
+            return originalIndex;
+        }
+
+
+        public int[] getParents() {
+            return parents;
+        }
+
+
+        public byte[] getFixedValues() {
+            return fixedValues;
+        }
+
+
+        /**
+         * @return the archived clauses of the processed buckets
+         */
+        public BucketArchive getArchive() {
+            return archive;
+        }
+
+
+        /**
+         * @return the buckets that are left, null for the processed ones (null unless the snapshot was read back)
+         */
+        public Bucket[] getBuckets() {
+            return buckets;
+        }
+    }
+
+
+    /**
+     * This class holds the clauses of a bucket that is left: views on the arenas of its stripes, and its regions on
+     * disk when it is spilled
+     */
+    private static class Left {
+
+        /* Declare Variables */
+        private List<Clauses> posViews;
+        private List<Clauses> negViews;
+        private List<long[]> regions;
+        private BucketStore store;
+
+
+        /* Class Constructors */
+        private Left(List<Clauses> posViews, List<Clauses> negViews, List<long[]> regions, BucketStore store) {
+            this.posViews = posViews;
+            this.negViews = negViews;
+            this.regions = (regions == null) ? new ArrayList<long[]>() : regions;
+            this.store = store;
+        }
+
+
+        /* Private Methods */
+        /**
+         * This method will write the clauses as blocks: the regions are copied as they are, and each view is a block
+         * @param output given the output
+         */
+        private void write(DataOutputStream output) throws IOException {
+            IntBuffer buffer;
+            output.writeInt(posViews.size() + negViews.size() + regions.size());
+            for (long[] region : regions) {
+                buffer = store.read(region);
+                while (buffer.hasRemaining()) {
+                    output.writeInt(buffer.get());
+                }
+            }
+            for (Clauses view : posViews) {
+                write(output, view, Clauses.ClauseType.POSITIVE);
+            }
+            for (Clauses view : negViews) {
+                write(output, view, Clauses.ClauseType.NEGATIVE);
+            }
+        }
+
+
+        private static void write(DataOutputStream output, Clauses clauses, Clauses.ClauseType type)
+                throws IOException {
+            int[] literals = clauses.getLiterals();
+            int i, j, end;
+            output.writeInt(type.ordinal());
+            output.writeInt(clauses.size());
+            for (i = 0; i < clauses.size(); i++) {
+                output.writeInt(clauses.getLength(i));
+                end = clauses.getOffset(i) + clauses.getLength(i);
+                for (j = clauses.getOffset(i); j < end; j++) {
+                    output.writeInt(literals[j]);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * This class reads the ints and the bytes of a checkpoint through read-only windows of the file
+     */
+    private static class Reader {
+
+        /* Declare Variables */
+        private RandomAccessFile randomAccessFile;
+        private FileChannel channel;
+        private long size;
+        private long position;
+        private ByteBuffer window;
+
+
+        /* Class Constructors */
+        private Reader(File file) throws IOException {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            size = channel.size();
+            position = 0;
+        }
+
+
+        /* Private Methods */
+        private int getInt() throws IOException {
+            if ((window == null) || !window.hasRemaining()) {
+                next();
+            }
+            return window.getInt();
+        }
+
+
+        private int[] getInts(int length) throws IOException {
+            int[] result = new int[length];
+            getInts(result, length);
+            return result;
+        }
+
+
+        private void getInts(int[] values, int length) throws IOException {
+            for (int i = 0; i < length; i++) {
+                values[i] = getInt();
+            }
+        }
+
+
+        /**
+         * This method will read the bytes and skip their padding
+         * @param length given the number of bytes
+         * @return the bytes
+         */
+        private byte[] getBytes(int length) throws IOException {
+            byte[] result = new byte[length];
+            int from = 0;
+            int count;
+            while (from < length) {
+                if ((window == null) || !window.hasRemaining()) {
+                    next();
+                }
+                count = Math.min(length - from, window.remaining());
+                window.get(result, from, count);
+                from += count;
+            }
+            if ((length & 3) != 0) {
+                window.position(window.position() + 4 - (length & 3));
+            }
+            return result;
+        }
+
+
+        /**
+         * This method will map the next window of the file (the windows are a multiple of 4, so an int never crosses)
+         */
+        private void next() throws IOException {
+            if (position >= size) {
+                throw new IOException("The checkpoint is truncated");
+            }
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(WINDOW_SIZE, size - position));
+            position += window.capacity();
+        }
+
+
+        private void close() throws IOException {
+            window = null;
+            channel.close();
+            randomAccessFile.close();
+        }
+    }
+}
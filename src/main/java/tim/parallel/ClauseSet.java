@@ -0,0 +1,260 @@
+package tim.parallel;
+
+
+/**
+ * This class is an open-addressing hash set of the clauses stored in a bucket's arenas.
+ * Each slot keeps the 64-bit hash of the sorted literals and a handle (arena index and type) of the clause,
+ * so a lookup is a linear probe over primitive arrays and never allocates.
+ */
+public class ClauseSet {
+
+    /* Declare Variables */
+    public static final int INITIAL_CAPACITY = 16;
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+    private static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    private Clauses posClauses;
+    private Clauses negClauses;
+    private long[] hashes;
+    private int[] handles;
+    private int size;
+    private int mask;
+
+
+    /* Class Constructors */
+    public ClauseSet(Clauses posClauses, Clauses negClauses) {
+        this.posClauses = posClauses;
+        this.negClauses = negClauses;
+        hashes = new long[INITIAL_CAPACITY];
+        handles = new int[INITIAL_CAPACITY];
+        size = 0;
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will add the clause to the set unless an equal clause is already in it
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param index the index the clause will have in its arena
+     * @param type the arena of the clause
+     * @return false if the clause is a duplicate, true if it has been added
+     */
+    public boolean add(int[] source, int from, int length, int index, Clauses.ClauseType type) {
+        return add(source, from, length, hash(source, from, length), index, type);
+    }
+
+
+    /**
+     * This method is the same as add but with the hash already computed by hash()
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param hash the hash of the clause
+     * @param index the index the clause will have in its arena
+     * @param type the arena of the clause
+     * @return false if the clause is a duplicate, true if it has been added
+     */
+    public boolean add(int[] source, int from, int length, long hash, int index, Clauses.ClauseType type) {
+        // grow before probing so the slot found stays valid
+        if ((size + 1) * 3 > hashes.length * 2) {
+            resize(hashes.length * 2);
+        }
+
+        // probe until an empty slot or the same clause is found
+        int slot = (int) hash & mask;
+        while (handles[slot] != 0) {
+            if ((hashes[slot] == hash) && isEqual(handles[slot], source, from, length)) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // take the empty slot (handles are shifted by one so that 0 means empty)
+        hashes[slot] = hash;
+        handles[slot] = toHandle(index, type);
+        size++;
+        return true;
+    }
+
+
+    /**
+     * This method will check whether an equal clause is in the set (without adding)
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return whether it is existed
+     */
+    public boolean contains(int[] source, int from, int length) {
+        return contains(source, from, length, hash(source, from, length));
+    }
+
+
+    /**
+     * This method is the same as contains but with the hash already computed by hash()
+     * @param source given the array holding the literals (sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param hash the hash of the clause
+     * @return whether it is existed
+     */
+    public boolean contains(int[] source, int from, int length, long hash) {
+        int slot = (int) hash & mask;
+        while (handles[slot] != 0) {
+            if ((hashes[slot] == hash) && isEqual(handles[slot], source, from, length)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+
+    /**
+     * This method will remove the clause with the given arena index (backward shift deletion)
+     * @param source given the array holding the literals of that clause
+     * @param from index of the first literal
+     * @param length number of literals
+     * @param index the arena index of the clause
+     * @param type the arena of the clause
+     */
+    public void remove(int[] source, int from, int length, int index, Clauses.ClauseType type) {
+        // find the slot of the clause
+        long hash = hash(source, from, length);
+        int handle = toHandle(index, type);
+        int slot = (int) hash & mask;
+        while (handles[slot] != handle) {
+            if (handles[slot] == 0) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        // shift the following items of the probe run back into the hole
+        int hole = slot;
+        int home;
+        slot = (slot + 1) & mask;
+        while (handles[slot] != 0) {
+            home = (int) hashes[slot] & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                hashes[hole] = hashes[slot];
+                handles[hole] = handles[slot];
+                hole = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        handles[hole] = 0;
+        size--;
+    }
+
+
+    /**
+     * This method will hash a sorted clause into 64 bits (order dependent, so the clause must be sorted)
+     * @param source given the array holding the literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return the hash code
+     */
+    public static long hash(int[] source, int from, int length) {
+        long hash = SEED ^ length;
+        for (int i = from; i < from + length; i++) {
+            hash = (hash ^ mix(source[i])) * MULTIPLIER;
+            hash = Long.rotateLeft(hash, 29);
+        }
+        return mix(hash);
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method is the finalizer of MurmurHash3 (spreads every input bit over the whole word)
+     * @param value given the value
+     * @return the mixed value
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+
+    /**
+     * This method will compare the stored clause with the given literals
+     * @param handle the handle of the stored clause
+     * @param source given the array holding the literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return whether they are the same clause
+     */
+    private boolean isEqual(int handle, int[] source, int from, int length) {
+        Clauses clauses = ((handle & 1) == 0) ? posClauses : negClauses;
+        int index = (handle >>> 1) - 1;
+        if (clauses.getLength(index) != length) {
+            return false;
+        }
+
+        int[] literals = clauses.getLiterals();
+        int offset = clauses.getOffset(index);
+        for (int i = 0; i < length; i++) {
+            if (literals[offset + i] != source[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * This method will rehash all the items into bigger arrays
+     * @param capacity the new capacity (power of 2)
+     */
+    private void resize(int capacity) {
+        long[] oldHashes = hashes;
+        int[] oldHandles = handles;
+        hashes = new long[capacity];
+        handles = new int[capacity];
+        mask = capacity - 1;
+
+        int slot;
+        for (int i = 0; i < oldHandles.length; i++) {
+            if (oldHandles[i] != 0) {
+                slot = (int) oldHashes[i] & mask;
+                while (handles[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                hashes[slot] = oldHashes[i];
+                handles[slot] = oldHandles[i];
+            }
+        }
+    }
+
+
+    /**
+     * This method will pack the arena index and the type into a non-zero handle
+     * @param index the arena index
+     * @param type the arena type
+     * @return the handle
+     */
+    private static int toHandle(int index, Clauses.ClauseType type) {
+        return ((index + 1) << 1) | ((type == Clauses.ClauseType.NEGATIVE) ? 1 : 0);
+    }
+
+
+    /* Getters & Setters */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return the bytes held by the slots of the set
+     */
+    public long getMemorySize() {
+        return 12L * hashes.length;
+    }
+}
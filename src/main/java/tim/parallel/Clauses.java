@@ -4,28 +4,50 @@ package tim.parallel;
 import java.util.Arrays;
 
 /**
- * This class represents an array of clauses (clause is represented as int[])
+ * This class represents an array of clauses.
+ * All the literals are stored back to back in one flat int[] arena, and clause i lives in
+ * literals[offsets[i] .. offsets[i+1]). This keeps scans sequential and avoids one int[] object per clause.
+ * The literals are in the encoding of the solver (see Literal), and toString prints them back in DIMACS.
+ * The clauses of 2 or 3 literals can also be read packed in one long each (see getPacked), which is what the
+ * short clause kernel of WorkerTask works on.
  */
 public class Clauses {
 
     /* Declare Variables */
-    public static final int SIZE_THRESHOLD = 100;
+    public static final int INITIAL_CLAUSES = 16;
+    public static final int INITIAL_LITERALS = 64;
+    public static final long NOT_PACKED = -1L;
     public enum ClauseType {
         POSITIVE,
         NEGATIVE
     }
 
-    private int[][] clauses;
+    private int[] literals;
+    private int[] offsets;
     private int size;
+    private long[] packed;
 
 
     /* Class Constructors */
     public Clauses() {
-        clauses = new int[SIZE_THRESHOLD][];
+        this(INITIAL_CLAUSES, INITIAL_LITERALS);
+    }
+
+
+    public Clauses(int clauseCapacity, int literalCapacity) {
+        literals = new int[Math.max(literalCapacity, 1)];
+        offsets = new int[Math.max(clauseCapacity, 1) + 1];
         size = 0;
     }
 
 
+    private Clauses(int[] literals, int[] offsets, int size) {
+        this.literals = literals;
+        this.offsets = offsets;
+        this.size = size;
+    }
+
+
     /* Class Operators */
     @Override
     public String toString() {
@@ -37,9 +59,16 @@ public class Clauses {
         result.append("\n");
 
         // loop and add the clauses
-        for (int i = 0; i < size; i++) {
-            result.append(Arrays.toString(clauses[i]));
-            result.append("\n");
+        int i, j;
+        for (i = 0; i < size; i++) {
+            result.append("[");
+            for (j = offsets[i]; j < offsets[i+1]; j++) {
+                if (j > offsets[i]) {
+                    result.append(", ");
+                }
+                result.append(Literal.toDimacs(literals[j]));
+            }
+            result.append("]\n");
         }
 
         return result.toString();
@@ -48,29 +77,53 @@ public class Clauses {
 
     /* Public Methods */
     /**
-     * This method will add a clause to the class.
+     * This method will add a clause to the arena.
      * @param clause array of literals for that clause
-     * @return false if reaches the threshold. true if successfully added
+     * @return the index of the new clause
      */
-    public boolean add(int[] clause) {
-        // don't add when reaches threshold
-        if (size == SIZE_THRESHOLD) {
-            return false;
-        }
+    public int add(int[] clause) {
+        return add(clause, 0, clause.length);
+    }
+
 
-        // add the clause & increase the size
-        clauses[size++] = clause;
-        return true;
+    /**
+     * This method will copy a clause from a slice of the given array into the arena
+     * @param source given the array holding the literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return the index of the new clause
+     */
+    public int add(int[] source, int from, int length) {
+        // grow the arrays when needed
+        int end = offsets[size];
+        ensureCapacity(size + 1, end + length);
+
+        // copy the literals & close the clause
+        System.arraycopy(source, from, literals, end, length);
+        offsets[++size] = end + length;
+        packed = null;
+        return size - 1;
     }
 
 
     /**
-     * This method will return the clause based on the given index
+     * This method will return a view on the clauses added so far, without copying them. The arena only appends (the
+     * arrays are copied when they grow), so the view doesn't change when more clauses come in. It is read-only:
+     * nothing must be added to it, and the arena must not be cleared or popped while the view is used.
+     * @return the view
+     */
+    public Clauses getView() {
+        return new Clauses(literals, offsets, size);
+    }
+
+
+    /**
+     * This method will return a copy of the clause based on the given index
      * @param clauseIndex given the index
      * @return an array of literals of this clause
      */
     public int[] get(int clauseIndex) {
-        return clauses[clauseIndex];
+        return Arrays.copyOfRange(literals, offsets[clauseIndex], offsets[clauseIndex + 1]);
     }
 
 
@@ -84,7 +137,53 @@ public class Clauses {
             throw new IndexOutOfBoundsException();
         }
 
-        return clauses[--size];
+        int[] result = get(size - 1);
+        size--;
+        packed = null;
+        return result;
+    }
+
+
+    /**
+     * This method will remove all the clauses but keep the allocated arrays
+     */
+    public void clear() {
+        size = 0;
+        packed = null;
+    }
+
+
+    /**
+     * This method will pack every clause of 2 or 3 literals into a long: the literals after the first one (which is
+     * the key of the bucket), the 2nd in the high half and the 3rd in the low half (0 when there is none).
+     * The other clauses are NOT_PACKED (a packed clause is never negative). It is computed once and kept until the
+     * arena changes.
+     * @return the packed clauses, by index
+     */
+    public synchronized long[] getPacked() {
+        if (packed != null) {
+            return packed;
+        }
+
+        long[] result = new long[size];
+        int from;
+        for (int i = 0; i < size; i++) {
+            from = offsets[i];
+            switch (offsets[i + 1] - from) {
+                case 2:
+                    result[i] = (long) literals[from + 1] << 32;
+                    break;
+
+                case 3:
+                    result[i] = ((long) literals[from + 1] << 32) | literals[from + 2];
+                    break;
+
+                default:
+                    result[i] = NOT_PACKED;
+            }
+        }
+        packed = result;
+        return result;
     }
 
 
@@ -95,9 +194,57 @@ public class Clauses {
      */
     public static boolean inOrder(int[] clause) {
     	for (int i = 0; i < clause.length - 2; ++i) {
-    		if (Math.abs(clause[i]) > Math.abs(clause[i+1]))
+    		if (clause[i] > clause[i+1])
     			return false;
     	}
     	return true;
     }
+
+
+    /* Private Methods */
+    /**
+     * This method will grow the arena so that it can hold the given number of clauses and literals
+     * @param clauseCount required number of clauses
+     * @param literalCount required number of literals
+     */
+    private void ensureCapacity(int clauseCount, int literalCount) {
+        if (clauseCount + 1 > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(clauseCount + 1, offsets.length * 2));
+        }
+        if (literalCount > literals.length) {
+            literals = Arrays.copyOf(literals, Math.max(literalCount, literals.length * 2));
+        }
+    }
+
+
+    /* Getters & Setters */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * @return the backing literal arena (only the first getOffset(size()) items are valid)
+     */
+    public int[] getLiterals() {
+        return literals;
+    }
+
+
+    public int getOffset(int clauseIndex) {
+        return offsets[clauseIndex];
+    }
+
+
+    public int getLength(int clauseIndex) {
+        return offsets[clauseIndex + 1] - offsets[clauseIndex];
+    }
+
+
+    /**
+     * @return the bytes held by the arrays of the arena (including the unused capacity)
+     */
+    public long getMemorySize() {
+        return 4L * (literals.length + offsets.length) + ((packed == null) ? 0 : 8L * packed.length);
+    }
 }
@@ -0,0 +1,627 @@
+package tim.parallel;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * This class parses DIMACS CNF input straight from bytes.
+ * The file is memory-mapped and the literals are scanned into one reusable buffer, so nothing is allocated per clause.
+ * A clause ends at its 0, so clauses may span several lines or share one line.
+ * Big files can be split at clause boundaries and parsed by several threads at once.
+ * Gzip files (.cnf.gz) are detected by their magic bytes and decompressed on the fly.
+ */
+public class DimacsParser {
+
+    /* Declare Variables */
+    public static final int REGION_SIZE = 1 << 30;
+    public static final int MIN_CHUNK_SIZE = 1 << 20;
+    public static final int GZIP_BUFFER_SIZE = 1 << 22;
+    public static final int GZIP_BUFFERS = 4;
+    public static final long GZIP_WAIT_TIME = 100;
+    private static final ByteBuffer END_OF_INPUT = ByteBuffer.allocate(0);
+
+    /**
+     * This interface receives what the parser finds
+     */
+    public interface ClauseHandler {
+        /**
+         * This method is called for the 'p cnf <variables> <clauses>' line
+         * @param variables number of variables
+         * @param clauses number of clauses
+         */
+        void header(int variables, int clauses) throws IOException;
+
+        /**
+         * This method is called for each clause (the buffer is reused after this call returns)
+         * @param literals buffer holding the literals
+         * @param length number of literals
+         */
+        void clause(int[] literals, int length) throws IOException;
+    }
+
+    private ClauseHandler handler;
+    private int[] literals;
+    private int length;
+    private StringBuilder line;
+    private boolean isLineStart;
+    private boolean isComment;
+    private boolean isHeader;
+    private boolean isNumber;
+    private boolean isNegative;
+    private boolean isEnd;
+    private boolean isHeaderOnly;
+    private long value;
+    private long position;
+
+
+    /* Class Constructors */
+    public DimacsParser(ClauseHandler handler) {
+        this.handler = handler;
+        literals = new int[64];
+        length = 0;
+        line = new StringBuilder();
+        isLineStart = true;
+        isComment = false;
+        isHeader = false;
+        isNumber = false;
+        isNegative = false;
+        isEnd = false;
+        isHeaderOnly = false;
+        value = 0;
+        position = 0;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will memory-map the whole file and parse it (or stream it when it's gzipped)
+     * @param file given the path of the file
+     */
+    public void parse(String file) throws IOException {
+        if (isGzip(file)) {
+            try (InputStream input = new GZIPInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(GZIP_BUFFER_SIZE);
+                while (fill(input, buffer) > 0) {
+                    feed(buffer);
+                }
+            }
+        }
+        else {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r");
+                 FileChannel channel = input.getChannel()) {
+                parse(channel, 0, channel.size());
+            }
+        }
+
+        finish();
+    }
+
+
+    /**
+     * This method will parse the file with several threads.
+     * The problem line is parsed first, then the rest is cut into chunks at clause boundaries and every chunk
+     * is parsed by its own thread, so handler.clause() is called concurrently and must be thread-safe.
+     * @param file given the path of the file
+     * @param handler given the handler (header() is called once before any clause())
+     * @param threadPool given the threads to use
+     * @param threads number of chunks to cut the file into (at most)
+     */
+    public static void parse(String file, final ClauseHandler handler, ExecutorService threadPool, int threads)
+            throws IOException {
+        // a gzip stream can't be cut, so decompress it in the background and parse it here
+        if (isGzip(file)) {
+            DimacsParser parser = new DimacsParser(handler);
+            parser.parseGzip(file, threadPool);
+            parser.finish();
+            return;
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r");
+             final FileChannel channel = input.getChannel()) {
+            // parse up to the end of the problem line
+            long size = channel.size();
+            DimacsParser headerParser = new DimacsParser(handler);
+            headerParser.isHeaderOnly = true;
+            headerParser.parse(channel, 0, size);
+            if (!headerParser.isEnd) {
+                headerParser.finish();
+                return;
+            }
+
+            // cut the rest into chunks
+            long[] bounds = getChunkBounds(channel, headerParser.position, size,
+                    (int) Math.max(1, Math.min(threads, (size - headerParser.position) / MIN_CHUNK_SIZE)));
+
+            // parse the chunks at the same time
+            List<Future<Void>> results = new ArrayList<>();
+            for (int i = 0; i < bounds.length - 1; i++) {
+                final long start = bounds[i];
+                final long end = bounds[i+1];
+                results.add(threadPool.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        DimacsParser parser = new DimacsParser(handler);
+                        parser.parse(channel, start, end);
+                        parser.finish();
+                        return null;
+                    }
+                }));
+            }
+
+            // wait for all the chunks
+            try {
+                for (Future<Void> result : results) {
+                    result.get();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while parsing", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+
+    /**
+     * This method will check whether the file starts with the gzip magic bytes
+     * @param file given the path of the file
+     * @return whether it's gzipped
+     */
+    public static boolean isGzip(String file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return (input.read() == 0x1f) && (input.read() == 0x8b);
+        }
+    }
+
+
+    /**
+     * This method will parse the remaining bytes of the buffer (tokens may continue in the next buffer)
+     * @param buffer given the bytes
+     */
+    public void feed(ByteBuffer buffer) throws IOException {
+        byte item;
+        while (buffer.hasRemaining() && !isEnd) {
+            item = buffer.get();
+            position++;
+
+            // skip comment lines
+            if (isComment) {
+                if (item == '\n') {
+                    isComment = false;
+                    isLineStart = true;
+                }
+                continue;
+            }
+
+            // collect the problem line and parse it at its end
+            if (isHeader) {
+                if (item == '\n') {
+                    parseHeader();
+                    isHeader = false;
+                    isLineStart = true;
+                    isEnd = isHeaderOnly;
+                }
+                else {
+                    line.append((char) item);
+                }
+                continue;
+            }
+
+            // handle numbers
+            if ((item >= '0') && (item <= '9')) {
+                value = value * 10 + (item - '0');
+                if (value > Integer.MAX_VALUE) {
+                    throw new IOException(String.format("Literal is too big at byte %d", position));
+                }
+                isNumber = true;
+                isLineStart = false;
+                continue;
+            }
+
+            // end the current number
+            if (isNumber) {
+                endNumber();
+            }
+
+            switch (item) {
+                case ' ':
+                case '\t':
+                case '\r':
+                    break;
+
+                case '\n':
+                    isLineStart = true;
+                    break;
+
+                case '-':
+                    isNegative = true;
+                    isLineStart = false;
+                    break;
+
+                case 'c':
+                    if (!isLineStart) {
+                        throw new IOException(String.format("Unexpected 'c' at byte %d", position));
+                    }
+                    isComment = true;
+                    break;
+
+                case 'p':
+                    if (!isLineStart) {
+                        throw new IOException(String.format("Unexpected 'p' at byte %d", position));
+                    }
+                    line.setLength(0);
+                    line.append('p');
+                    isHeader = true;
+                    break;
+
+                case '%':
+                    // some benchmark files end with a '%' line
+                    isEnd = true;
+                    break;
+
+                default:
+                    throw new IOException(String.format("Unexpected character '%c' at byte %d", (char) item,
+                            position));
+            }
+        }
+    }
+
+
+    /**
+     * This method will flush the last number, header or clause when the input ends without a new line or 0
+     */
+    public void finish() throws IOException {
+        if (isHeader) {
+            parseHeader();
+            isHeader = false;
+        }
+        if (isNumber) {
+            endNumber();
+        }
+        if (length > 0) {
+            handler.clause(literals, length);
+            length = 0;
+        }
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will decompress the gzip file on a thread of the pool and parse the buffers it fills here,
+     * so decompression overlaps with parsing and adding the clauses.
+     * When the parsing stops early, the decompressor is told to stop and waited for (a task of a ForkJoinPool is not
+     * interrupted by cancel, and a shared pool would lose that thread).
+     * @param file given the path of the file
+     * @param threadPool given the threads
+     */
+    private void parseGzip(final String file, ExecutorService threadPool) throws IOException {
+        // the buffers go around: free -> decompressor -> full -> parser -> free
+        final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(GZIP_BUFFERS);
+        final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(GZIP_BUFFERS + 1);
+        final AtomicBoolean isStopped = new AtomicBoolean(false);
+        for (int i = 0; i < GZIP_BUFFERS; i++) {
+            free.add(ByteBuffer.allocate(GZIP_BUFFER_SIZE));
+        }
+
+        Future<Void> decompressor = threadPool.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException, InterruptedException {
+                try (InputStream input = new GZIPInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE)) {
+                    ByteBuffer buffer = take(free, isStopped);
+                    while ((buffer != null) && (fill(input, buffer) > 0) && put(full, buffer, isStopped)) {
+                        buffer = take(free, isStopped);
+                    }
+                }
+                finally {
+                    // there is always room for it (only GZIP_BUFFERS buffers go around)
+                    full.offer(END_OF_INPUT);
+                }
+                return null;
+            }
+        });
+
+        // parse the buffers as they come
+        try {
+            ByteBuffer buffer = full.take();
+            while ((buffer != END_OF_INPUT) && !isEnd) {
+                feed(buffer);
+                free.put(buffer);
+                buffer = full.take();
+            }
+
+            // report decompression errors
+            if (buffer == END_OF_INPUT) {
+                decompressor.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        finally {
+            stop(decompressor, isStopped, full, free);
+        }
+    }
+
+
+    /**
+     * This method will stop the decompressor and wait for it, so that it gives its thread back to the pool and closes
+     * the file (its errors are not reported, the parsing is over)
+     * @param decompressor given the task of the decompressor
+     * @param isStopped given the flag the decompressor checks
+     * @param full given the buffers that are filled
+     * @param free given the buffers that can be filled
+     */
+    private static void stop(Future<Void> decompressor, AtomicBoolean isStopped, BlockingQueue<ByteBuffer> full,
+                             BlockingQueue<ByteBuffer> free) {
+        ByteBuffer buffer;
+        isStopped.set(true);
+
+        // give the buffers back, so the decompressor doesn't wait for room
+        while ((buffer = full.poll()) != null) {
+            if (buffer != END_OF_INPUT) {
+                free.offer(buffer);
+            }
+        }
+
+        try {
+            decompressor.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            // already reported, or the parsing stopped before it mattered
+        }
+    }
+
+
+    /**
+     * This method will take a buffer from the queue, checking the flag while it waits
+     * @param queue given the queue
+     * @param isStopped given the flag
+     * @return the buffer, or null once the flag is set
+     */
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue, AtomicBoolean isStopped)
+            throws InterruptedException {
+        ByteBuffer result = null;
+        while ((result == null) && !isStopped.get()) {
+            result = queue.poll(GZIP_WAIT_TIME, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will put a buffer in the queue, checking the flag while it waits
+     * @param queue given the queue
+     * @param buffer given the buffer
+     * @param isStopped given the flag
+     * @return true when the buffer is in, false once the flag is set
+     */
+    private static boolean put(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer, AtomicBoolean isStopped)
+            throws InterruptedException {
+        while (!isStopped.get()) {
+            if (queue.offer(buffer, GZIP_WAIT_TIME, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * This method will read from the stream until the buffer is full or the stream ends
+     * @param input given the stream
+     * @param buffer given the buffer (it is flipped, ready to be read)
+     * @return number of bytes read
+     */
+    private static int fill(InputStream input, ByteBuffer buffer) throws IOException {
+        byte[] array = buffer.array();
+        int size = 0;
+        int read = 0;
+        while ((size < array.length) && (read >= 0)) {
+            read = input.read(array, size, array.length - size);
+            size += (read > 0) ? read : 0;
+        }
+
+        buffer.clear();
+        buffer.limit(size);
+        return size;
+    }
+
+
+    /**
+     * This method will map the given range of the channel one region at a time and parse it
+     * (a single mapping can't be bigger than 2GB)
+     * @param channel given the file channel
+     * @param start first byte
+     * @param end end of the range (exclusive)
+     */
+    private void parse(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer region;
+        for (long from = start; (from < end) && !isEnd; from += REGION_SIZE) {
+            region = channel.map(FileChannel.MapMode.READ_ONLY, from, Math.min(REGION_SIZE, end - from));
+            feed(region);
+        }
+    }
+
+
+    /**
+     * This method will cut the range into chunks that all start at the beginning of a clause.
+     * A chunk ends after a line whose last token is a 0 (and which is not a comment).
+     * @param channel given the file channel
+     * @param start first byte (at a line start, after the problem line)
+     * @param end end of the range (exclusive)
+     * @param chunks number of chunks wanted
+     * @return the chunk bounds (chunk i is [bounds[i], bounds[i+1]))
+     */
+    private static long[] getChunkBounds(FileChannel channel, long start, long end, int chunks)
+            throws IOException {
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(start);
+
+        // look for a boundary after each even split point
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        long position, lineStart, target;
+        int read, i;
+        byte item, previous;
+        boolean isLineEnd, isZeroLine, isFirstToken, isSkipped;
+        for (int chunk = 1; chunk < chunks; chunk++) {
+            target = start + (end - start) * chunk / chunks;
+            if (target <= bounds.get(bounds.size() - 1)) {
+                continue;
+            }
+
+            // scan line by line from the split point, the first partial line is never a boundary
+            position = target;
+            lineStart = -1;
+            isZeroLine = false;
+            isFirstToken = true;
+            isSkipped = false;
+            previous = '\n';
+            while (position < end) {
+                buffer.clear();
+                read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+
+                isLineEnd = false;
+                for (i = 0; i < read; i++) {
+                    item = buffer.get(i);
+                    if (item == '\n') {
+                        // a full line that ends with a 0 token is the end of a clause
+                        if ((lineStart >= 0) && isZeroLine && !isSkipped) {
+                            isLineEnd = true;
+                            position += i + 1;
+                            break;
+                        }
+                        lineStart = position + i + 1;
+                        isZeroLine = false;
+                        isFirstToken = true;
+                        isSkipped = false;
+                    }
+                    else if ((item != ' ') && (item != '\t') && (item != '\r')) {
+                        // comment or '%' lines don't count (after '%' the parser stops, so stop cutting)
+                        if (isFirstToken && (lineStart >= 0)) {
+                            isSkipped = (item == 'c');
+                            if (item == '%') {
+                                bounds.add(end);
+                                return toArray(bounds);
+                            }
+                        }
+                        isZeroLine = (item == '0') && isSpace(previous);
+                        isFirstToken = false;
+                    }
+                    previous = item;
+                }
+
+                if (isLineEnd) {
+                    break;
+                }
+                position += read;
+            }
+
+            // the boundary must move forward
+            if ((position >= end) || (position <= bounds.get(bounds.size() - 1))) {
+                break;
+            }
+            bounds.add(position);
+        }
+
+        bounds.add(end);
+        return toArray(bounds);
+    }
+
+
+    /**
+     * @param item given the byte
+     * @return whether it's a whitespace between tokens
+     */
+    private static boolean isSpace(byte item) {
+        return (item == ' ') || (item == '\t') || (item == '\r') || (item == '\n');
+    }
+
+
+    /**
+     * @param list given the list
+     * @return the items in an array
+     */
+    private static long[] toArray(List<Long> list) {
+        long[] result = new long[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will take the current number as a literal or end the clause when it is 0
+     */
+    private void endNumber() throws IOException {
+        if (value == 0) {
+            handler.clause(literals, length);
+            length = 0;
+        }
+        else {
+            if (length == literals.length) {
+                literals = Arrays.copyOf(literals, length * 2);
+            }
+            literals[length++] = isNegative ? (int) -value : (int) value;
+        }
+
+        value = 0;
+        isNumber = false;
+        isNegative = false;
+    }
+
+
+    /**
+     * This method will parse the 'p cnf <variables> <clauses>' line
+     */
+    private void parseHeader() throws IOException {
+        String[] split = line.toString().trim().split("\\s+");
+        if ((split.length < 4) || !split[1].equals("cnf")) {
+            throw new IOException(String.format("Invalid problem line '%s'", line));
+        }
+
+        try {
+            handler.header(Integer.parseInt(split[2]), Integer.parseInt(split[3]));
+        }
+        catch (NumberFormatException e) {
+            throw new IOException(String.format("Invalid problem line '%s'", line), e);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package tim.parallel;
+
+import java.util.Arrays;
+
+
+/**
+ * This class computes the order in which the variables are eliminated.
+ * The buckets are processed from variable 1 up, so the order decides the induced width of the run
+ * (and the size of the resolutions). The heuristics work on the primal graph of the formula:
+ * one vertex per variable, and an edge between two variables that share a clause.
+ */
+public class EliminationOrder {
+
+    /* Declare Variables */
+    public enum Strategy {
+        INPUT,
+        MIN_DEGREE,
+        MIN_FILL,
+        MCS
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will parse the name of a strategy from the command line (e.g. "min-degree")
+     * @param name given the name
+     * @return the strategy
+     */
+    public static Strategy parseStrategy(String name) {
+        return Strategy.valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+
+
+    /**
+     * This method will compute the elimination order of the formula
+     * @param formula given the formula
+     * @param strategy given the heuristic
+     * @return newIndex where newIndex[v] is the position (1-based) at which variable v is eliminated
+     */
+    public static int[] compute(Formula formula, Strategy strategy) {
+        int[] order;
+        switch (strategy) {
+            case MIN_DEGREE:
+                order = eliminate(getPrimalGraph(formula), false);
+                break;
+
+            case MIN_FILL:
+                order = eliminate(getPrimalGraph(formula), true);
+                break;
+
+            case MCS:
+                order = maxCardinalitySearch(getPrimalGraph(formula));
+                break;
+
+            default:
+                order = new int[formula.getVariables()];
+                for (int i = 0; i < order.length; i++) {
+                    order[i] = i + 1;
+                }
+        }
+
+        // turn the order into the new name of each variable
+        int[] newIndex = new int[formula.getVariables() + 1];
+        for (int i = 0; i < order.length; i++) {
+            newIndex[order[i]] = i + 1;
+        }
+        return newIndex;
+    }
+
+
+    /**
+     * This method will compute the elimination tree of the formula in its current order (Liu's algorithm): the
+     * parent of v is the smallest variable above v in the clauses of its bucket once every variable below v has been
+     * eliminated. The resolutions of bucket v only go to ancestors of v, so the buckets of two different branches
+     * never write to each other.
+     * A clause is a clique of the primal graph, but the path through its sorted variables gives the same tree, so
+     * only the consecutive variables of each clause are used (no need to build the graph).
+     * @param formula given the formula (renumbered, every clause sorted)
+     * @return parents where parents[v] is the parent of variable v, or 0 when v is a root
+     */
+    public static int[] getTree(Formula formula) {
+        int variables = formula.getVariables();
+        int[] starts = new int[variables + 2];
+        int[] literals;
+        int i, j, from, end, variable, root, next;
+
+        // count the variables right below each variable in a clause
+        for (Clauses chunk : formula.getChunks()) {
+            literals = chunk.getLiterals();
+            for (i = 0; i < chunk.size(); i++) {
+                from = chunk.getOffset(i);
+                end = from + chunk.getLength(i);
+                for (j = from + 1; j < end; j++) {
+                    starts[(literals[j] >>> 1) + 1]++;
+                }
+            }
+        }
+        for (i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        // fill them in (starts[v] moves up to the end of the list of v, and is moved back after)
+        int[] below = new int[starts[variables + 1]];
+        for (Clauses chunk : formula.getChunks()) {
+            literals = chunk.getLiterals();
+            for (i = 0; i < chunk.size(); i++) {
+                from = chunk.getOffset(i);
+                end = from + chunk.getLength(i);
+                for (j = from + 1; j < end; j++) {
+                    below[starts[literals[j] >>> 1]++] = literals[j - 1] >>> 1;
+                }
+            }
+        }
+        for (i = variables; i > 0; i--) {
+            starts[i] = starts[i - 1];
+        }
+        starts[0] = 0;
+
+        // climb from each neighbor below to the root of its tree so far, which becomes a child of v
+        // (the ancestors are compressed to v on the way, so the climbs stay short)
+        int[] parents = new int[variables + 1];
+        int[] ancestors = new int[variables + 1];
+        for (variable = 1; variable <= variables; variable++) {
+            for (j = starts[variable]; j < starts[variable + 1]; j++) {
+                root = below[j];
+                while ((ancestors[root] != 0) && (ancestors[root] != variable)) {
+                    next = ancestors[root];
+                    ancestors[root] = variable;
+                    root = next;
+                }
+                if (ancestors[root] == 0) {
+                    ancestors[root] = variable;
+                    parents[root] = variable;
+                }
+            }
+        }
+
+        return parents;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will build the primal graph of the formula
+     * @param formula given the formula
+     * @return the sorted adjacency list of each variable (index 0 is unused)
+     */
+    private static int[][] getPrimalGraph(Formula formula) {
+        int variables = formula.getVariables();
+        int[] degrees = new int[variables + 1];
+        int[] literals;
+        int i, j, k, from, end, variable;
+
+        // count the edges of each variable (with repeats)
+        for (Clauses chunk : formula.getChunks()) {
+            literals = chunk.getLiterals();
+            for (i = 0; i < chunk.size(); i++) {
+                from = chunk.getOffset(i);
+                end = from + chunk.getLength(i);
+                for (j = from; j < end; j++) {
+                    degrees[literals[j] >>> 1] += end - from - 1;
+                }
+            }
+        }
+
+        // fill the edges
+        int[][] graph = new int[variables + 1][];
+        for (i = 1; i <= variables; i++) {
+            graph[i] = new int[degrees[i]];
+            degrees[i] = 0;
+        }
+        for (Clauses chunk : formula.getChunks()) {
+            literals = chunk.getLiterals();
+            for (i = 0; i < chunk.size(); i++) {
+                from = chunk.getOffset(i);
+                end = from + chunk.getLength(i);
+                for (j = from; j < end; j++) {
+                    variable = literals[j] >>> 1;
+                    for (k = from; k < end; k++) {
+                        if (k != j) {
+                            graph[variable][degrees[variable]++] = literals[k] >>> 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        // sort and drop the repeats
+        int size;
+        for (i = 1; i <= variables; i++) {
+            Arrays.sort(graph[i]);
+            size = 0;
+            for (j = 0; j < graph[i].length; j++) {
+                if ((size == 0) || (graph[i][size - 1] != graph[i][j])) {
+                    graph[i][size++] = graph[i][j];
+                }
+            }
+            graph[i] = Arrays.copyOf(graph[i], size);
+        }
+
+        return graph;
+    }
+
+
+    /**
+     * This method will play the elimination game: take the variable with the smallest score, connect all its
+     * neighbors (the fill-in) and repeat. The score is the degree, or the number of fill-in edges.
+     * With min-fill the scores of the neighbors and their neighbors are updated, since those are the only ones
+     * whose fill-in can change.
+     * @param graph given the primal graph (it is modified)
+     * @param isMinFill use the fill-in as the score instead of the degree
+     * @return the variables in elimination order
+     */
+    private static int[] eliminate(int[][] graph, boolean isMinFill) {
+        int variables = graph.length - 1;
+        int[] order = new int[variables];
+        boolean[] isMarked = new boolean[variables + 1];
+        int[] touched = new int[variables];
+        int touchedSize, i, j, k, variable, neighbor;
+        int[] neighbors;
+
+        // init the scores
+        IndexedHeap heap = new IndexedHeap(variables);
+        for (i = 1; i <= variables; i++) {
+            heap.push(i, isMinFill ? getFill(graph, i) : graph[i].length);
+        }
+
+        for (i = 0; i < variables; i++) {
+            variable = heap.pop();
+            order[i] = variable;
+            neighbors = graph[variable];
+            graph[variable] = null;
+
+            // connect the neighbors together and drop the variable from their lists
+            for (j = 0; j < neighbors.length; j++) {
+                neighbor = neighbors[j];
+                graph[neighbor] = mergeWithout(graph[neighbor], neighbors, variable, neighbor);
+            }
+
+            // update the scores
+            if (!isMinFill) {
+                for (j = 0; j < neighbors.length; j++) {
+                    heap.update(neighbors[j], graph[neighbors[j]].length);
+                }
+                continue;
+            }
+
+            touchedSize = 0;
+            for (j = 0; j < neighbors.length; j++) {
+                neighbor = neighbors[j];
+                if (!isMarked[neighbor]) {
+                    isMarked[neighbor] = true;
+                    touched[touchedSize++] = neighbor;
+                }
+                for (k = 0; k < graph[neighbor].length; k++) {
+                    if (!isMarked[graph[neighbor][k]]) {
+                        isMarked[graph[neighbor][k]] = true;
+                        touched[touchedSize++] = graph[neighbor][k];
+                    }
+                }
+            }
+            for (j = 0; j < touchedSize; j++) {
+                heap.update(touched[j], getFill(graph, touched[j]));
+                isMarked[touched[j]] = false;
+            }
+        }
+
+        return order;
+    }
+
+
+    /**
+     * This method will count the missing edges between the neighbors of the variable
+     * @param graph given the graph
+     * @param variable given the variable
+     * @return the number of fill-in edges
+     */
+    private static int getFill(int[][] graph, int variable) {
+        int[] neighbors = graph[variable];
+        int result = 0;
+        for (int i = 0; i < neighbors.length; i++) {
+            for (int j = i + 1; j < neighbors.length; j++) {
+                if (Arrays.binarySearch(graph[neighbors[i]], neighbors[j]) < 0) {
+                    result++;
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will merge two sorted lists, leaving out the two given items
+     * @param list1 given the 1st list
+     * @param list2 given the 2nd list
+     * @param skip1 item to leave out
+     * @param skip2 item to leave out
+     * @return the sorted union
+     */
+    private static int[] mergeWithout(int[] list1, int[] list2, int skip1, int skip2) {
+        int[] result = new int[list1.length + list2.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        int item;
+        while ((i < list1.length) || (j < list2.length)) {
+            if ((j == list2.length) || ((i < list1.length) && (list1[i] < list2[j]))) {
+                item = list1[i++];
+            }
+            else if ((i == list1.length) || (list2[j] < list1[i])) {
+                item = list2[j++];
+            }
+            else {
+                item = list1[i++];
+                j++;
+            }
+
+            if ((item != skip1) && (item != skip2)) {
+                result[size++] = item;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+
+    /**
+     * This method will run maximum cardinality search: number the variable with the most numbered neighbors next.
+     * The elimination order is the reverse of the numbering.
+     * @param graph given the primal graph
+     * @return the variables in elimination order
+     */
+    private static int[] maxCardinalitySearch(int[][] graph) {
+        int variables = graph.length - 1;
+        int[] order = new int[variables];
+        int[] weights = new int[variables + 1];
+        boolean[] isNumbered = new boolean[variables + 1];
+        int i, variable;
+
+        // the heap takes the smallest score, so the scores are negative weights
+        IndexedHeap heap = new IndexedHeap(variables);
+        for (i = 1; i <= variables; i++) {
+            heap.push(i, 0);
+        }
+
+        for (i = variables - 1; i >= 0; i--) {
+            variable = heap.pop();
+            order[i] = variable;
+            isNumbered[variable] = true;
+            for (int neighbor : graph[variable]) {
+                if (!isNumbered[neighbor]) {
+                    weights[neighbor]++;
+                    heap.update(neighbor, -weights[neighbor]);
+                }
+            }
+        }
+
+        return order;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class is a binary min heap of variables that can change the score of a variable in the heap
+     * (ties go to the smaller variable so the order is stable)
+     */
+    private static class IndexedHeap {
+
+        /* Declare Variables */
+        private int[] heap;
+        private int[] positions;
+        private int[] scores;
+        private int size;
+
+
+        /* Class Constructors */
+        private IndexedHeap(int variables) {
+            heap = new int[variables];
+            positions = new int[variables + 1];
+            scores = new int[variables + 1];
+            Arrays.fill(positions, -1);
+            size = 0;
+        }
+
+
+        /* Private Methods */
+        private void push(int variable, int score) {
+            scores[variable] = score;
+            heap[size] = variable;
+            positions[variable] = size;
+            up(size++);
+        }
+
+
+        private int pop() {
+            int result = heap[0];
+            positions[result] = -1;
+            if (--size > 0) {
+                heap[0] = heap[size];
+                positions[heap[0]] = 0;
+                down(0);
+            }
+            return result;
+        }
+
+
+        private void update(int variable, int score) {
+            if (positions[variable] < 0) {
+                return;
+            }
+            int old = scores[variable];
+            scores[variable] = score;
+            if (score < old) {
+                up(positions[variable]);
+            }
+            else {
+                down(positions[variable]);
+            }
+        }
+
+
+        private boolean isBefore(int variable1, int variable2) {
+            return (scores[variable1] < scores[variable2]) ||
+                    ((scores[variable1] == scores[variable2]) && (variable1 < variable2));
+        }
+
+
+        private void up(int index) {
+            int variable = heap[index];
+            int parent;
+            while (index > 0) {
+                parent = (index - 1) / 2;
+                if (!isBefore(variable, heap[parent])) {
+                    break;
+                }
+                heap[index] = heap[parent];
+                positions[heap[index]] = index;
+                index = parent;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+
+
+        private void down(int index) {
+            int variable = heap[index];
+            int child;
+            while ((child = 2 * index + 1) < size) {
+                if ((child + 1 < size) && isBefore(heap[child + 1], heap[child])) {
+                    child++;
+                }
+                if (!isBefore(heap[child], variable)) {
+                    break;
+                }
+                heap[index] = heap[child];
+                positions[heap[index]] = index;
+                index = child;
+            }
+            heap[index] = variable;
+            positions[variable] = index;
+        }
+    }
+}
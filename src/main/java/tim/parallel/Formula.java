@@ -0,0 +1,350 @@
+package tim.parallel;
+
+import tim.LiteralSort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * This class holds the whole input formula between parsing and bucketing.
+ * Every parsing thread appends its normalized clauses to its own arena (a chunk), so the formula can be
+ * preprocessed (e.g. variables renumbered) and then put into the buckets by all the threads at once.
+ * The literals are turned into the encoding of the solver (see Literal) as they are parsed.
+ */
+public class Formula {
+
+    /* Declare Variables */
+    private int variables;
+    private int clauses;
+    private List<Clauses> chunks;
+    private volatile boolean hasEmptyClause;
+    private byte[] values;
+
+
+    /* Class Constructors */
+    public Formula(int variables, int clauses) {
+        this.variables = variables;
+        this.clauses = clauses;
+        chunks = Collections.synchronizedList(new ArrayList<Clauses>());
+        hasEmptyClause = false;
+        values = new byte[variables + 1];
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will parse the file with all the threads and normalize every clause
+     * @param file given the path of the file
+     * @param threadPool given the threads
+     * @param threads number of threads
+     * @return the formula
+     */
+    public static Formula read(final String file, ExecutorService threadPool, int threads) throws IOException {
+        final Formula[] result = new Formula[1];
+        final ThreadLocal<Clauses[]> chunk = new ThreadLocal<>();
+        final List<Clauses[]> holders = Collections.synchronizedList(new ArrayList<Clauses[]>());
+        DimacsParser.parse(file, new DimacsParser.ClauseHandler() {
+            @Override
+            public void header(int variables, int clauses) throws IOException {
+                if (variables >= Literal.MAX_VARIABLES) {
+                    throw new IOException(String.format("Too many variables (%d)", variables));
+                }
+                result[0] = new Formula(variables, clauses);
+            }
+
+
+            @Override
+            public void clause(int[] literals, int length) throws IOException {
+                if (result[0] == null) {
+                    throw new IOException("Clause found before the problem line");
+                }
+
+                // each thread appends to its own arena
+                Clauses[] holder = chunk.get();
+                if ((holder == null) || (holder[0] == null)) {
+                    holder = new Clauses[] {new Clauses(1 << 10, 1 << 12)};
+                    chunk.set(holder);
+                    holders.add(holder);
+                    result[0].chunks.add(holder[0]);
+                }
+                result[0].add(literals, length, holder[0]);
+            }
+        }, threadPool, threads);
+
+        // the pool threads outlive this call, so don't let their thread locals keep the arenas
+        for (Clauses[] holder : holders) {
+            holder[0] = null;
+        }
+
+        // handle files without a problem line
+        if (result[0] == null) {
+            throw new IOException(String.format("Missing problem line in '%s'", file));
+        }
+        return result[0];
+    }
+
+
+    /**
+     * This method will make the formula from clauses that are already in memory (in one chunk)
+     * @param variables given the number of variables
+     * @param clauses given the clauses in DIMACS (they are not modified)
+     * @return the formula
+     */
+    public static Formula fromClauses(int variables, int[][] clauses) throws IOException {
+        if ((variables < 0) || (variables >= Literal.MAX_VARIABLES)) {
+            throw new IOException(String.format("Too many variables (%d)", variables));
+        }
+        Formula result = new Formula(variables, clauses.length);
+        Clauses chunk = new Clauses(clauses.length, 3 * clauses.length);
+        int[] clause = new int[16];
+        for (int[] literals : clauses) {
+            if (clause.length < literals.length) {
+                clause = new int[Math.max(literals.length, clause.length * 2)];
+            }
+            System.arraycopy(literals, 0, clause, 0, literals.length);
+            result.add(clause, literals.length, chunk);
+        }
+        result.chunks.add(chunk);
+        return result;
+    }
+
+
+    /**
+     * This method will sort the clause in-place and drop duplicate literals (in the same pass as the sort)
+     * @param clause given the buffer holding the literals, encoded (it is modified)
+     * @param length number of literals
+     * @return the new length, or -1 when the clause is always true
+     */
+    public static int normalize(int[] clause, int length) {
+        return LiteralSort.normalize(clause, 0, length);
+    }
+
+
+    /**
+     * This method will rename every variable v to newIndex[v] and sort the clauses again
+     * @param newIndex given the new name of each variable (1-based, a permutation)
+     * @param threadPool given the threads
+     */
+    public void renumber(final int[] newIndex, ExecutorService threadPool) throws IOException {
+        forEachChunk(threadPool, new ChunkTask() {
+            @Override
+            public void run(Clauses chunk) {
+                int[] literals = chunk.getLiterals();
+                int i, j, end;
+                for (i = 0; i < chunk.size(); i++) {
+                    end = chunk.getOffset(i) + chunk.getLength(i);
+                    for (j = chunk.getOffset(i); j < end; j++) {
+                        literals[j] = (newIndex[literals[j] >>> 1] << 1) | (literals[j] & 1);
+                    }
+                    LiteralSort.sort(literals, chunk.getOffset(i), chunk.getLength(i));
+                }
+            }
+        });
+    }
+
+
+    /**
+     * This method will fix the given variables: the true clauses are dropped and the false literals are removed
+     * @param values given values[v] = 1 (true), -1 (false) or 0 (free) for each variable
+     * @param threadPool given the threads
+     */
+    public void assign(final byte[] values, ExecutorService threadPool) throws IOException {
+        this.values = values;
+        final List<Clauses> result = Collections.synchronizedList(new ArrayList<Clauses>());
+        forEachChunk(threadPool, new ChunkTask() {
+            @Override
+            public void run(Clauses chunk) {
+                Clauses simplified = new Clauses(chunk.size(), chunk.getOffset(chunk.size()));
+                int[] literals = chunk.getLiterals();
+                int[] clause = new int[16];
+                int i, j, end, value, length;
+                for (i = 0; i < chunk.size(); i++) {
+                    end = chunk.getOffset(i) + chunk.getLength(i);
+                    if (clause.length < chunk.getLength(i)) {
+                        clause = new int[chunk.getLength(i)];
+                    }
+
+                    // keep the free literals (the order stays sorted)
+                    length = 0;
+                    for (j = chunk.getOffset(i); j < end; j++) {
+                        value = values[literals[j] >>> 1];
+                        if (value == 0) {
+                            clause[length++] = literals[j];
+                        }
+                        else if ((value > 0) == Literal.isPositive(literals[j])) {
+                            break;
+                        }
+                    }
+
+                    // an empty clause can only come from a wrong assignment
+                    if (j == end) {
+                        if (length == 0) {
+                            hasEmptyClause = true;
+                        }
+                        else {
+                            simplified.add(clause, 0, length);
+                        }
+                    }
+                }
+                chunk.clear();
+                result.add(simplified);
+            }
+        });
+        chunks = result;
+    }
+
+
+    /**
+     * This method will put every clause into the bucket of its smallest variable (all the threads at once).
+     * The formula is empty afterwards.
+     * @param threadPool given the threads
+     * @param stripes number of stripes of each bucket
+     * @return the buckets (bucket i holds the clauses of variable i + 1)
+     */
+    public Bucket[] toBuckets(ExecutorService threadPool, int stripes) throws IOException {
+        final Bucket[] buckets = new Bucket[variables];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(stripes);
+        }
+
+        forEachChunk(threadPool, new ChunkTask() {
+            @Override
+            public void run(Clauses chunk) {
+                int[] literals = chunk.getLiterals();
+                int from;
+                for (int i = 0; i < chunk.size(); i++) {
+                    from = chunk.getOffset(i);
+                    buckets[(literals[from] >>> 1) - 1].add(literals, from, chunk.getLength(i),
+                            Literal.isPositive(literals[from]) ? Clauses.ClauseType.POSITIVE :
+                                    Clauses.ClauseType.NEGATIVE);
+                }
+                chunk.clear();
+            }
+        });
+        chunks.clear();
+
+        return buckets;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will check, encode, normalize and append the clause to the given chunk
+     * @param clause given the buffer holding the literals in DIMACS (it is modified)
+     * @param length number of literals
+     * @param chunk given the arena of this thread
+     */
+    private void add(int[] clause, int length, Clauses chunk) throws IOException {
+        // check the clause against the problem line
+        for (int i = 0; i < length; i++) {
+            if ((clause[i] > variables) || (-clause[i] > variables)) {
+                throw new IOException(String.format("Literal %d is out of range (variables = %d)", clause[i],
+                        variables));
+            }
+            clause[i] = Literal.fromDimacs(clause[i]);
+        }
+
+        // an empty clause can never be satisfied
+        length = normalize(clause, length);
+        if (length == 0) {
+            hasEmptyClause = true;
+        }
+        else if (length > 0) {
+            chunk.add(clause, 0, length);
+        }
+    }
+
+
+    /**
+     * This interface is a piece of work done on one chunk
+     */
+    private interface ChunkTask {
+        void run(Clauses chunk);
+    }
+
+
+    /**
+     * This method will run the task on every chunk with the threads and wait for all of them
+     * @param threadPool given the threads
+     * @param task given the task
+     */
+    private void forEachChunk(ExecutorService threadPool, final ChunkTask task) throws IOException {
+        List<Future<Void>> results = new ArrayList<>();
+        for (final Clauses chunk : chunks) {
+            results.add(threadPool.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    task.run(chunk);
+                    return null;
+                }
+            }));
+        }
+
+        try {
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preparing the formula", e);
+        }
+        catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+
+    /* Getters & Setters */
+    public int getVariables() {
+        return variables;
+    }
+
+
+    public int getClauses() {
+        return clauses;
+    }
+
+
+    /**
+     * @return the number of clauses in the chunks (the problem line may say otherwise once they are simplified)
+     */
+    public long getSize() {
+        long result = 0;
+        for (Clauses chunk : chunks) {
+            result += chunk.size();
+        }
+        return result;
+    }
+
+
+    public List<Clauses> getChunks() {
+        return chunks;
+    }
+
+
+    public boolean hasEmptyClause() {
+        return hasEmptyClause;
+    }
+
+
+    public void setHasEmptyClause(boolean hasEmptyClause) {
+        this.hasEmptyClause = hasEmptyClause;
+    }
+
+
+    /**
+     * @return values[v] is 1 when variable v (of the input file) was fixed to true, -1 when fixed to false and 0
+     * when it is free
+     */
+    public byte[] getValues() {
+        return values;
+    }
+}
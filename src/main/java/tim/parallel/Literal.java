@@ -0,0 +1,79 @@
+package tim.parallel;
+
+
+/**
+ * This class is the encoding of the literals inside the solver: variable v is 2v when negative and 2v + 1 when
+ * positive (-1 1 -2 2 become 2 3 4 5).
+ * The plain int order is then the order by variable with the negative literal first, the negation is an XOR and
+ * the variable a shift, so the merge and compare loops need no abs() and no sign test.
+ * The literals are only converted from and to DIMACS (signed ints) when the file is read and when clauses leave the
+ * engine (the CDCL search, the logs).
+ * Note: the variables must be below MAX_VARIABLES so that the literals stay positive.
+ */
+public class Literal {
+
+    /* Declare Variables */
+    public static final int MAX_VARIABLES = 1 << 30;
+
+
+    /* Public Methods */
+    /**
+     * @param literal given the literal in DIMACS (v or -v)
+     * @return the literal in the internal encoding
+     */
+    public static int fromDimacs(int literal) {
+        int sign = literal >> 31;
+        return (((literal ^ sign) - sign) << 1) | (sign + 1);
+    }
+
+
+    /**
+     * @param literal given the literal in the internal encoding
+     * @return the literal in DIMACS (v or -v)
+     */
+    public static int toDimacs(int literal) {
+        int mask = (literal & 1) - 1;
+        return ((literal >>> 1) ^ mask) - mask;
+    }
+
+
+    /**
+     * @param clause given the literals in DIMACS
+     * @return a new array with the literals in the internal encoding
+     */
+    public static int[] fromDimacs(int[] clause) {
+        int[] result = new int[clause.length];
+        for (int i = 0; i < clause.length; i++) {
+            result[i] = fromDimacs(clause[i]);
+        }
+        return result;
+    }
+
+
+    /**
+     * @param clause given the literals in the internal encoding
+     * @return a new array with the literals in DIMACS
+     */
+    public static int[] toDimacs(int[] clause) {
+        int[] result = new int[clause.length];
+        for (int i = 0; i < clause.length; i++) {
+            result[i] = toDimacs(clause[i]);
+        }
+        return result;
+    }
+
+
+    public static int getVariable(int literal) {
+        return literal >>> 1;
+    }
+
+
+    public static boolean isPositive(int literal) {
+        return (literal & 1) == 1;
+    }
+
+
+    public static int negate(int literal) {
+        return literal ^ 1;
+    }
+}
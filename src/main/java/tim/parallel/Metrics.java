@@ -0,0 +1,240 @@
+package tim.parallel;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * This class holds the metrics of a run: one BucketMetrics per processed bucket, and the busy time and allocated bytes
+ * of each thread that did tiles. The idle time of a thread is the elimination time minus its busy time.
+ * The allocated bytes come from the ThreadMXBean of HotSpot (0 when the JVM doesn't support it).
+ * They are written at the end of the run as JSON or CSV (one line per bucket, without the threads).
+ */
+public class Metrics {
+
+    /* Declare Variables */
+    private static final ThreadMXBean threadBean = getThreadBean();
+
+    private BucketMetrics[] buckets;
+    private ConcurrentHashMap<String,ThreadMetrics> threads;
+    private long startTime;
+    private long time;
+
+
+    /* Class Constructors */
+    /**
+     * @param bucketCount given the number of buckets
+     */
+    public Metrics(int bucketCount) {
+        buckets = new BucketMetrics[bucketCount];
+        threads = new ConcurrentHashMap<>();
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will start the clock of the elimination
+     */
+    public void start() {
+        startTime = System.nanoTime();
+    }
+
+
+    /**
+     * This method will stop the clock of the elimination
+     */
+    public void stop() {
+        time = System.nanoTime() - startTime;
+    }
+
+
+    /**
+     * This method will return the metrics of the bucket, creating them on first use (from the main thread only)
+     * @param index given the index of the bucket
+     * @return the metrics of the bucket
+     */
+    public BucketMetrics getBucket(int index) {
+        if (buckets[index] == null) {
+            buckets[index] = new BucketMetrics(this, index);
+        }
+        return buckets[index];
+    }
+
+
+    /**
+     * This method will add a tile to the current thread
+     * @param busyTime given the time the tile took in nanoseconds
+     * @param allocatedBytes given the bytes allocated for the tile
+     */
+    public void addTile(long busyTime, long allocatedBytes) {
+        String name = Thread.currentThread().getName();
+        ThreadMetrics thread = threads.get(name);
+        if (thread == null) {
+            thread = new ThreadMetrics();
+            ThreadMetrics other = threads.putIfAbsent(name, thread);
+            thread = (other != null) ? other : thread;
+        }
+        thread.busyTime.addAndGet(busyTime);
+        thread.allocatedBytes.addAndGet(allocatedBytes);
+        thread.tiles.incrementAndGet();
+    }
+
+
+    /**
+     * @return the bytes allocated by the current thread so far (0 when the JVM doesn't tell)
+     */
+    public static long getAllocatedBytes() {
+        if (threadBean == null) {
+            return 0;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+
+    /**
+     * This method will write the metrics to the file, as CSV when its name ends with .csv and as JSON otherwise
+     * @param file given the path of the file
+     */
+    public void write(String file) throws IOException {
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            if (file.endsWith(".csv")) {
+                writeCsv(writer);
+            }
+            else {
+                writeJson(writer);
+            }
+        }
+    }
+
+
+    /**
+     * This method will write the metrics as one JSON object (the times are in nanoseconds, the buckets are 1-based)
+     * @param writer given the output
+     */
+    public void writeJson(Writer writer) throws IOException {
+        String separator = "";
+        String targetSeparator;
+        ThreadMetrics thread;
+        writer.write(String.format("{\n  \"time\": %d,\n  \"threads\": [", time));
+        for (Map.Entry<String,ThreadMetrics> entry : new TreeMap<>(threads).entrySet()) {
+            thread = entry.getValue();
+            writer.write(String.format("%s\n    {\"name\": \"%s\", \"tiles\": %d, \"busyTime\": %d, " +
+                    "\"idleTime\": %d, \"allocatedBytes\": %d}", separator, escape(entry.getKey()), thread.tiles.get(),
+                    thread.busyTime.get(), Math.max(0, time - thread.busyTime.get()), thread.allocatedBytes.get()));
+            separator = ",";
+        }
+
+        separator = "";
+        writer.write("\n  ],\n  \"buckets\": [");
+        for (BucketMetrics bucket : buckets) {
+            if (bucket == null) {
+                continue;
+            }
+            writer.write(String.format("%s\n    {\"bucket\": %d, \"posSize\": %d, \"negSize\": %d, \"pairs\": %d, " +
+                    "\"tautologies\": %d, \"duplicates\": %d, \"subsumed\": %d, \"lockWait\": %d, \"time\": %d, " +
+                    "\"busyTime\": %d, \"allocatedBytes\": %d, \"tiles\": %d, \"resolvents\": {", separator,
+                    bucket.getIndex() + 1, bucket.getPosSize(), bucket.getNegSize(), bucket.getPairs(),
+                    bucket.getTautologies(), bucket.getDuplicates(), bucket.getSubsumed(), bucket.getLockWait(),
+                    bucket.getTime(), bucket.getBusyTime(), bucket.getAllocatedBytes(), bucket.getTiles()));
+            targetSeparator = "";
+            for (Map.Entry<Integer,Long> entry : bucket.getResolvents().entrySet()) {
+                writer.write(String.format("%s\"%d\": %d", targetSeparator, entry.getKey() + 1, entry.getValue()));
+                targetSeparator = ", ";
+            }
+            writer.write("}}");
+            separator = ",";
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+
+    /**
+     * This method will write the metrics of the buckets as CSV with a header line (the resolvents are target:count
+     * pairs separated by spaces)
+     * @param writer given the output
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        StringBuilder targets = new StringBuilder();
+        long resolvents;
+        writer.write("bucket,posSize,negSize,pairs,tautologies,resolvents,duplicates,subsumed,lockWait,time," +
+                "busyTime,allocatedBytes,tiles,targets\n");
+        for (BucketMetrics bucket : buckets) {
+            if (bucket == null) {
+                continue;
+            }
+            targets.setLength(0);
+            resolvents = 0;
+            for (Map.Entry<Integer,Long> entry : bucket.getResolvents().entrySet()) {
+                targets.append((targets.length() == 0) ? "" : " ").append(entry.getKey() + 1).append(':')
+                        .append(entry.getValue());
+                resolvents += entry.getValue();
+            }
+            writer.write(String.format("%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%s\n", bucket.getIndex() + 1,
+                    bucket.getPosSize(), bucket.getNegSize(), bucket.getPairs(), bucket.getTautologies(), resolvents,
+                    bucket.getDuplicates(), bucket.getSubsumed(), bucket.getLockWait(), bucket.getTime(),
+                    bucket.getBusyTime(), bucket.getAllocatedBytes(), bucket.getTiles(), targets));
+        }
+    }
+
+
+    /* Private Methods */
+    /**
+     * @return the bean that tells the bytes allocated by a thread (turned on), or null when the JVM doesn't have it
+     */
+    private static ThreadMXBean getThreadBean() {
+        ThreadMXBean result = ManagementFactory.getThreadMXBean();
+        if (!(result instanceof com.sun.management.ThreadMXBean) ||
+                !((com.sun.management.ThreadMXBean) result).isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        ((com.sun.management.ThreadMXBean) result).setThreadAllocatedMemoryEnabled(true);
+        return result;
+    }
+
+
+    /**
+     * @param value given a string
+     * @return the string with the quotes and the backslashes escaped for JSON
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+
+    /* Getters & Setters */
+    /**
+     * @return the metrics of the processed buckets (null for the others)
+     */
+    public BucketMetrics[] getBuckets() {
+        return buckets;
+    }
+
+
+    /**
+     * @return the wall time of the elimination in nanoseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class holds the counts of one thread
+     */
+    private static class ThreadMetrics {
+
+        /* Declare Variables */
+        private AtomicLong busyTime = new AtomicLong();
+        private AtomicLong allocatedBytes = new AtomicLong();
+        private AtomicLong tiles = new AtomicLong();
+    }
+}
@@ -0,0 +1,314 @@
+package tim.parallel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * This class simplifies the formula before it goes into the buckets.
+ * Unit clauses are propagated to a fixpoint (a clause with all its literals false but one forces that one),
+ * and then the pure literals (variables that only appear with one sign) are set so that their clauses are true.
+ * The fixed variables end up in no clause at all, so their buckets are empty.
+ */
+public class Preprocessor {
+
+    /* Declare Variables */
+    private Formula formula;
+    private int variables;
+    private Clauses[] chunks;
+    private int[] bases;
+    private int[] starts;
+    private int[] occurrences;
+    private int[] falseCounts;
+    private boolean[] isSatisfied;
+    private byte[] values;
+    private int[] queue;
+    private int queueSize;
+    private int unitCount;
+    private int pureCount;
+
+
+    /* Class Constructors */
+    public Preprocessor(Formula formula) {
+        this.formula = formula;
+        variables = formula.getVariables();
+        values = new byte[variables + 1];
+        queue = new int[variables];
+        queueSize = 0;
+        unitCount = 0;
+        pureCount = 0;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will propagate the units, set the pure literals and remove the fixed variables from the formula
+     * @param threadPool given the threads
+     * @return false when a unit propagation falsifies a clause (the formula is unsatisfiable)
+     */
+    public boolean run(ExecutorService threadPool) throws IOException {
+        buildOccurrences();
+
+        // propagate the unit clauses of the input
+        int i, j;
+        for (i = 0; i < chunks.length; i++) {
+            for (j = 0; j < chunks[i].size(); j++) {
+                if ((chunks[i].getLength(j) == 1) && !assign(chunks[i].getLiterals()[chunks[i].getOffset(j)])) {
+                    return false;
+                }
+            }
+        }
+        if (!propagate()) {
+            return false;
+        }
+        unitCount = queueSize;
+
+        // pure literals never falsify a clause, so nothing has to be propagated after them
+        eliminatePureLiterals();
+        pureCount = queueSize - unitCount;
+
+        // free the lists before rewriting the chunks
+        starts = null;
+        occurrences = null;
+        falseCounts = null;
+        isSatisfied = null;
+        chunks = null;
+
+        formula.assign(values, threadPool);
+        return true;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will build the occurrence list of every literal (clauses are numbered across the chunks)
+     */
+    private void buildOccurrences() {
+        List<Clauses> list = formula.getChunks();
+        chunks = list.toArray(new Clauses[list.size()]);
+        bases = new int[chunks.length + 1];
+        int i, j, k, literalCount = 0;
+        for (i = 0; i < chunks.length; i++) {
+            bases[i + 1] = bases[i] + chunks[i].size();
+            literalCount += chunks[i].getOffset(chunks[i].size());
+        }
+
+        // count the occurrences (the encoded literals are the indexes)
+        starts = new int[2 * variables + 3];
+        int[] literals;
+        for (i = 0; i < chunks.length; i++) {
+            literals = chunks[i].getLiterals();
+            for (j = 0; j < chunks[i].getOffset(chunks[i].size()); j++) {
+                starts[literals[j] + 1]++;
+            }
+        }
+        for (i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        // fill the lists
+        occurrences = new int[literalCount];
+        int[] positions = Arrays.copyOf(starts, starts.length);
+        for (i = 0; i < chunks.length; i++) {
+            literals = chunks[i].getLiterals();
+            for (j = 0; j < chunks[i].size(); j++) {
+                for (k = chunks[i].getOffset(j); k < chunks[i].getOffset(j + 1); k++) {
+                    occurrences[positions[literals[k]]++] = bases[i] + j;
+                }
+            }
+        }
+
+        falseCounts = new int[bases[chunks.length]];
+        isSatisfied = new boolean[bases[chunks.length]];
+    }
+
+
+    /**
+     * This method will make the literal true
+     * @param literal given the literal
+     * @return false when the literal is already false
+     */
+    private boolean assign(int literal) {
+        int value = getValue(literal);
+        if (value != 0) {
+            return value > 0;
+        }
+
+        values[literal >>> 1] = (byte) (Literal.isPositive(literal) ? 1 : -1);
+        queue[queueSize++] = literal;
+        return true;
+    }
+
+
+    /**
+     * This method will propagate the assigned literals until no clause is unit anymore
+     * @return false when a clause has all its literals false
+     */
+    private boolean propagate() {
+        int head = 0;
+        int literal, clause, chunk, from, length, i, j, unassigned;
+        int[] literals;
+        while (head < queueSize) {
+            literal = queue[head++];
+
+            // the clauses with the literal are true
+            for (i = starts[literal]; i < starts[literal + 1]; i++) {
+                isSatisfied[occurrences[i]] = true;
+            }
+
+            // the clauses with its negation lose a literal
+            for (i = starts[literal ^ 1]; i < starts[(literal ^ 1) + 1]; i++) {
+                clause = occurrences[i];
+                if (isSatisfied[clause]) {
+                    continue;
+                }
+
+                chunk = getChunk(clause);
+                from = chunks[chunk].getOffset(clause - bases[chunk]);
+                length = chunks[chunk].getLength(clause - bases[chunk]);
+                if (++falseCounts[clause] < length - 1) {
+                    continue;
+                }
+
+                // find the literal that is left (the clause may be true already by one that is still queued)
+                literals = chunks[chunk].getLiterals();
+                unassigned = 0;
+                for (j = from; j < from + length; j++) {
+                    if (getValue(literals[j]) > 0) {
+                        unassigned = 0;
+                        break;
+                    }
+                    if (getValue(literals[j]) == 0) {
+                        unassigned = literals[j];
+                    }
+                }
+                if ((unassigned == 0) && (j == from + length)) {
+                    return false;
+                }
+                if ((unassigned != 0) && !assign(unassigned)) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * This method will set the pure literals one after another (setting one can make others pure)
+     */
+    private void eliminatePureLiterals() {
+        // count the free literals of the clauses that are not true yet
+        int[] counts = new int[2 * variables + 2];
+        int[] literals;
+        int i, j, k, from, end;
+        for (i = 0; i < chunks.length; i++) {
+            literals = chunks[i].getLiterals();
+            for (j = 0; j < chunks[i].size(); j++) {
+                if (isSatisfied[bases[i] + j]) {
+                    continue;
+                }
+                for (k = chunks[i].getOffset(j); k < chunks[i].getOffset(j + 1); k++) {
+                    if (getValue(literals[k]) == 0) {
+                        counts[literals[k]]++;
+                    }
+                }
+            }
+        }
+
+        // loop until no variable is pure (the candidates are kept on a stack)
+        int[] candidates = new int[variables];
+        int candidateSize = 0;
+        for (i = 1; i <= variables; i++) {
+            candidates[candidateSize++] = i;
+        }
+
+        int variable, literal, clause, chunk;
+        boolean[] isCandidate = new boolean[variables + 1];
+        Arrays.fill(isCandidate, true);
+        while (candidateSize > 0) {
+            variable = candidates[--candidateSize];
+            isCandidate[variable] = false;
+            if ((values[variable] != 0) || ((counts[2 * variable + 1] > 0) == (counts[2 * variable] > 0))) {
+                continue;
+            }
+
+            // set it and remove its clauses from the counts
+            literal = (counts[2 * variable + 1] > 0) ? 2 * variable + 1 : 2 * variable;
+            assign(literal);
+            for (i = starts[literal]; i < starts[literal + 1]; i++) {
+                clause = occurrences[i];
+                if (isSatisfied[clause]) {
+                    continue;
+                }
+                isSatisfied[clause] = true;
+
+                chunk = getChunk(clause);
+                literals = chunks[chunk].getLiterals();
+                from = chunks[chunk].getOffset(clause - bases[chunk]);
+                end = chunks[chunk].getOffset(clause - bases[chunk] + 1);
+                for (k = from; k < end; k++) {
+                    if (getValue(literals[k]) != 0) {
+                        continue;
+                    }
+
+                    // the other sign of a literal that disappears may be pure now
+                    if ((--counts[literals[k]] == 0) && !isCandidate[literals[k] >>> 1]) {
+                        isCandidate[literals[k] >>> 1] = true;
+                        candidates[candidateSize++] = literals[k] >>> 1;
+                    }
+                }
+            }
+        }
+    }
+
+
+    /**
+     * @param clause given the number of the clause
+     * @return the index of the chunk holding the clause
+     */
+    private int getChunk(int clause) {
+        int index = Arrays.binarySearch(bases, clause);
+        if (index < 0) {
+            return -index - 2;
+        }
+
+        // skip the empty chunks
+        while (bases[index + 1] == clause) {
+            index++;
+        }
+        return index;
+    }
+
+
+    /**
+     * @param literal given the literal
+     * @return 1 when it is true, -1 when it is false and 0 when its variable is not set
+     */
+    private int getValue(int literal) {
+        int value = values[literal >>> 1];
+        return Literal.isPositive(literal) ? value : -value;
+    }
+
+
+    /* Getters & Setters */
+    public int getUnitCount() {
+        return unitCount;
+    }
+
+
+    public int getPureCount() {
+        return pureCount;
+    }
+
+
+    /**
+     * @return values[v] is 1 when variable v is set to true, -1 when it is set to false and 0 when it is free
+     */
+    public byte[] getValues() {
+        return values;
+    }
+}
@@ -3,260 +3,700 @@ package tim.parallel;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.apache.logging.log4j.core.LoggerContext;
-import org.apache.logging.log4j.core.config.Configuration;
-import org.apache.logging.log4j.core.config.LoggerConfig;
-import tim.QuickSort;
 import tim.Timer;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * This class is a parallel SAT Solver based on Rina's paper
+ * This class is a parallel SAT Solver based on Rina's paper: it eliminates the variables bucket by bucket, with all
+ * the threads of a fork/join pool resolving the buckets.
+ * There is no static state, so many solvers can run at the same time in one JVM.
  */
 public class Solver {
 
     /* Declare Variables */
-    public static Level debugLevel;
-    public static Logger logger;
+    public enum Status {
+        SATISFIABLE,
+        UNSATISFIABLE,
+        UNKNOWN
+    }
+
+    public static final long DEFAULT_CHECKPOINT_TIME = 10 * 60 * 1000;
 
+    private static final Logger logger = LogManager.getLogger(Solver.class.getName());
+
+    private Level level;
     private String file;
+    private int[][] clauses;
+    private int variableCount;
+    private int clauseCount;
     private Bucket[] buckets;
+    private int[] parents;
+    private boolean hasEmptyClause;
+    private EliminationOrder.Strategy order;
+    private boolean isPreprocessing;
+    private double boundFactor;
+    private int[] originalIndex;
+    private byte[] fixedValues;
+    private BucketArchive archive;
+    private long memoryBudget;
+    private BucketStore store;
+    private ForkJoinPool threadPool;
+    private byte[] model;
+    private long conflicts;
+    private boolean isCollectingMetrics;
+    private Metrics metrics;
+    private Checkpoint checkpoint;
+    private String resumeFile;
+    private Budget budget;
+    private Status status;
 
 
     /* Class Constructors */
+    /**
+     * @param file given the path of the DIMACS file (it can be gzipped)
+     * @param level given the level of the logs of this solver
+     */
     public Solver(String file, Level level) {
         this.file = file;
+        this.level = level;
+        order = EliminationOrder.Strategy.INPUT;
+        isPreprocessing = true;
+        boundFactor = 0;
+        memoryBudget = Runtime.getRuntime().maxMemory() / 10 * 7;
+        budget = new Budget();
+    }
+
 
-        // set level for the logger & turn off status logger warnings
-        debugLevel = level;
-        logger = LogManager.getLogger(Solver.class.getName());
-        LoggerContext context = (LoggerContext) LogManager.getContext(false);
-        Configuration config = context.getConfiguration();
-        LoggerConfig loggerConfig = config.getLoggerConfig(logger.getName());
-        loggerConfig.setLevel(level);
-        context.updateLoggers();
-     }
+    /**
+     * @param variables given the number of variables
+     * @param clauses given the clauses in DIMACS (they are not modified, and are read again on every run)
+     * @param level given the level of the logs of this solver
+     */
+    public Solver(int variables, int[][] clauses, Level level) {
+        this(null, level);
+        this.variableCount = variables;
+        this.clauses = clauses;
+    }
 
 
     /* Public Methods */
     /**
-     * This method will run the solver
+     * This method will run the solver (on the shared thread pool when there is one, otherwise on a pool of its own).
+     * A solver can run again, but a second call waits for the first one to end.
+     * @return the answer and the stats of the run
      */
-    public void run() throws Exception {
-        // read the file and init buckets
-        logger.warn("Init Buckets");
+    public synchronized SolverResult run() throws Exception {
+        long startTime = System.nanoTime();
+        budget.start();
+        status = null;
+        model = null;
+        conflicts = 0;
+        metrics = null;
+        if (clauses == null) {
+            variableCount = 0;
+        }
+        clauseCount = 0;
+
+        // use the shared work-stealing thread pool, or create one for this run
+        ForkJoinPool threadPool = (this.threadPool != null) ? this.threadPool :
+                new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        int cores = threadPool.getParallelism();
+        log(Level.WARN, "Available Cores = {}", cores);
+        try {
+            solve(threadPool, cores);
+        }
+        finally {
+            budget.finish();
+            buckets = null;
+            parents = null;
+            archive = null;
+            store = null;
+            if (threadPool != this.threadPool) {
+                threadPool.shutdownNow();
+            }
+        }
+
+        return new SolverResult(status, getReason(), model, variableCount, clauseCount, budget.getResolutions(),
+                conflicts, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), metrics);
+    }
+
+
+    /**
+     * This method will cancel the run from any thread (the workers stop at their next check, and the answer is
+     * UNKNOWN unless it is already known), or the next run when it is not started yet
+     */
+    public void cancel() {
+        budget.cancel();
+    }
+
+
+    /**
+     * This method will take the settings of another solver: the order, the preprocessing, the metrics, the bound, the
+     * memory budget, the limits of the budget (the counters are not shared) and the thread pool
+     * @param settings given the solver to copy from
+     */
+    public void setSettings(Solver settings) {
+        order = settings.order;
+        isPreprocessing = settings.isPreprocessing;
+        isCollectingMetrics = settings.isCollectingMetrics;
+        boundFactor = settings.boundFactor;
+        memoryBudget = settings.memoryBudget;
+        budget = new Budget(settings.budget);
+        threadPool = settings.threadPool;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will read the input, init the buckets and eliminate them
+     * @param threadPool given the threads
+     * @param cores given the number of threads
+     */
+    private void solve(ForkJoinPool threadPool, int cores) throws IOException {
+        // read the input and init buckets (with all the cores), or take them from the checkpoint
+        log(Level.WARN, "Init Buckets");
         Timer timerInitBuckets = new Timer("Init Buckets");
-        initBuckets();
-        logger.warn(timerInitBuckets.result());
+        if (resumeFile != null) {
+            resume(Bucket.getStripeCount(cores));
+        }
+        else {
+            initBuckets(threadPool, cores);
+        }
+        log(Level.WARN, "{}", timerInitBuckets);
 
-        // create a thread pool
-        int cores = Runtime.getRuntime().availableProcessors();
-        logger.warn(String.format("Available Cores = %d", cores));
-        ExecutorService threadPool = Executors.newFixedThreadPool(cores);
-        CompletionService<Boolean> completionService = new ExecutorCompletionService<>(threadPool);
+        // an empty clause in the input is unsatisfiable right away
+        if (hasEmptyClause) {
+            setStatus(Status.UNSATISFIABLE);
+            return;
+        }
+        if (budget.check(0) || budget.checkMemory()) {
+            setStatus(Status.UNKNOWN);
+            return;
+        }
 
         // print original buckets
         printBuckets();
+        archive = (archive != null) ? archive : new BucketArchive(buckets.length);
+        store = new BucketStore(buckets, memoryBudget, new File(System.getProperty("java.io.tmpdir")));
+        metrics = isCollectingMetrics ? new Metrics(buckets.length) : null;
+        if (metrics != null) {
+            metrics.start();
+        }
+        if (checkpoint != null) {
+            checkpoint.start();
+        }
+        try {
+            resolveBuckets(threadPool, cores);
+        }
+        finally {
+            // the last snapshot can still be reading the store
+            closeCheckpoint();
+            store.close();
+            if (metrics != null) {
+                metrics.stop();
+            }
+        }
+    }
 
-        // loop through each bucket and do resolution
-        Bucket bucket;
-        WorkerTask worker;
-        Iterator<int[]> iterator;
-        Future<Boolean> result;
-        Boolean isUnsatisfiable;
-        int[][][] negData = new int[cores][][];
-        int i, j, negCutOff, negCount, negMod, maxResolutionSize, tasksDone;
-        for (i = 0; i < buckets.length; i++) {
-            bucket = buckets[i];
 
-            // print the bucket
-            logger.warn(String.format("Starting Bucket %d -- Iteration %d\n\t%s", i + 1, i + 1, bucket));
+    /**
+     * This method will eliminate the buckets along the elimination tree and log the result.
+     * A bucket only gets resolutions from the buckets below it in the tree, so it is ready as soon as its children are
+     * done, and the buckets of different branches run at the same time.
+     * The ready buckets wait in a queue and the lowest ones are started, up to maxRunning at once. The store is only
+     * used from this thread.
+     * @param threadPool given the threads
+     * @param maxRunning given the number of buckets to process at the same time
+     */
+    private void resolveBuckets(ForkJoinPool threadPool, int maxRunning) throws IOException {
+        CompletionService<BucketTask> completionService = new ExecutorCompletionService<>(threadPool);
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        Set<Integer> running = new HashSet<>();
+        int[] pending = new int[buckets.length];
+        BucketTask task;
+        boolean isUnsatisfiable = false;
+        int i, next, spilled;
+        int boundBucket = -1;
 
-            // get iterator and necessary data
-            iterator = bucket.getIterator(bucket.getNegSize(), Clauses.ClauseType.NEGATIVE);
-            negCutOff = bucket.getNegSize() / cores;
-            negMod = bucket.getNegSize() % cores;
-            negCount = 0;
-            maxResolutionSize = bucket.getPosClauseMaxSize() + bucket.getNegClauseMaxSize();
+        // the leaves of the tree are ready right away (the buckets of a checkpoint that are done are null)
+        for (i = 0; i < buckets.length; i++) {
+            if ((buckets[i] != null) && (parents[i] >= 0)) {
+                pending[parents[i]]++;
+            }
+        }
+        for (i = 0; i < buckets.length; i++) {
+            if ((buckets[i] != null) && (pending[i] == 0)) {
+                ready.add(i);
+            }
+        }
 
-            // init the negData for this bucket
-            logger.warn(String.format("Creating thread data -- Iteration %d", i + 1));
-            Timer timerThreadData = new Timer("Thread Data");
-            for (j = 0; j < negData.length; j++) {
-                negData[j] = (j < negMod) ? (new int[negCutOff + 1][]) : (new int[negCutOff][]);
+        while (!ready.isEmpty() || !running.isEmpty()) {
+            // start the lowest ready buckets (none once the run is stopped or the bound is hit, the rest only finish)
+            while (!ready.isEmpty() && (running.size() < maxRunning) && !budget.isStopped() && (boundBucket < 0)) {
+                i = ready.poll();
+                running.add(i);
+                completionService.submit(new BucketTask(i, store.take(i)));
+            }
+            if (running.isEmpty()) {
+                break;
             }
 
-            // loop through the negIterator to assign negData
-            while (iterator.hasNext()) {
-                // assign one each horizontally
-                negData[negCount % cores][negCount / cores] = iterator.next();
-                negCount++;
+            // wait for the next bucket that is done
+            task = getResult(completionService);
+            running.remove(task.index);
+            if (task.isUnsatisfiable) {
+                isUnsatisfiable = true;
+                continue;
+            }
+            if (budget.check(0) || budget.checkMemory()) {
+                continue;
+            }
+            if (task.isBoundHit) {
+                log(Level.WARN, "Bound hit at Bucket {} ({} resolutions > {})", task.index + 1,
+                        task.resolutionCount.get(), task.resolutionLimit);
+                boundBucket = (boundBucket < 0) ? task.index : Math.min(boundBucket, task.index);
+                continue;
             }
-            logger.warn(timerThreadData.result());
 
-            // submit tasks to thread pool
-            logger.warn(String.format("Submitting %d tasks (task size = %d) -- Iteration %d",
-                    cores, negCutOff + 1, i + 1));
-            for (j = 0; j < cores; j++) {
-                iterator = bucket.getIterator(bucket.getPosSize(), Clauses.ClauseType.POSITIVE);
-                worker = new WorkerTask(maxResolutionSize, negData[j], iterator, buckets);
-                completionService.submit(worker);
+            // deallocate the bucket, and its parent is ready once all its children are done
+            buckets[task.index] = null;
+            if ((parents[task.index] >= 0) && (--pending[parents[task.index]] == 0)) {
+                ready.add(parents[task.index]);
             }
 
-            // getting the results
-            logger.warn(String.format("Waiting for %d results -- Iteration %d", cores, i + 1));
-            Timer timerWaitingResult = new Timer("Waiting Result");
-            tasksDone = 0;
-            while (tasksDone < cores) {
-                // wait until a result is collected
-                result = completionService.take();
-
-                // get the result
-                isUnsatisfiable = result.get();
-                if (isUnsatisfiable) {
-                    logger.error("UNSATISFIABLE");
-                    threadPool.shutdownNow();
-                    logger.warn(timerWaitingResult.result());
-                    return;
-                }
-                else {
-                    tasksDone++;
-                    logger.warn(String.format("%d tasks done", tasksDone));
+            // keep the heap under the budget, and read back the next buckets while they are cold
+            next = ready.isEmpty() ? buckets.length : ready.peek();
+            if (store.isOverBudget()) {
+                spilled = store.spillDown(next - 1, getHotBuckets(running));
+                if (spilled > 0) {
+                    log(Level.WARN, "Spilled {} buckets -- Iteration {} ({} MB on disk)", spilled, task.index + 1,
+                            store.getFileSize() >> 20);
                 }
             }
-            logger.warn(timerWaitingResult.result());
+            store.prefetch(next - 1);
 
-            // deallocate the bucket
-            buckets[i] = null;
+            // take a snapshot every so often (the workers go on)
+            if ((checkpoint != null) && checkpoint.addBucket()) {
+                writeCheckpoint();
+            }
+        }
+
+        // the buckets that were stopped half-way don't tell anything
+        if (isUnsatisfiable) {
+            setStatus(Status.UNSATISFIABLE);
+            return;
+        }
+        if (budget.isStopped()) {
+            // keep what is done so that another run can go on from there
+            if (checkpoint != null) {
+                writeCheckpoint();
+            }
+            setStatus(Status.UNKNOWN);
+            return;
+        }
+
+        // hand the rest over to the search when the bound is hit
+        if (boundBucket >= 0) {
+            byte[] values = search();
+            if (values != null) {
+                buildModel(values);
+            }
+            setStatus((values != null) ? Status.SATISFIABLE : budget.isStopped() ? Status.UNKNOWN :
+                    Status.UNSATISFIABLE);
+            return;
         }
 
         // return result in the end and shutdown
-        logger.error("SATISFIABLE");
-        threadPool.shutdownNow();
+        buildModel(new byte[buckets.length + 1]);
+        setStatus(Status.SATISFIABLE);
     }
 
 
-    /* Private Methods */
     /**
-     * This method will parse through the file and initialize the buckets
-     */
-    private void initBuckets() throws IOException {
-        // init reusable variables
-        BufferedReader buffer = new BufferedReader(new FileReader(file));
-        int i, variables, clauses, key, literal, duplicateCount, clauseIndex;
-        boolean isPosKey, isTrueClause;
-        int[] clause, tmp;
-
-        // read each line in the file
-        String line = buffer.readLine();
-        while (line != null) {
-            // ignore all the lines starting with c
-            if (!line.startsWith("c")) {
-                // split the line
-                String[] split = line.split("\\s+");
-
-                // handle line with 'p' (assume all the files have 'p' for problem)
-                if (split[0].equals("p")) {
-                    // get variables and clauses
-                    variables = Integer.parseInt(split[2]);
-                    clauses = Integer.parseInt(split[3]);
-                    logger.warn(String.format("Variables = %d, Clauses = %d", variables, clauses));
-
-                    // init the buckets
-                    buckets = new Bucket[variables];
-                    for (i = 0; i < buckets.length; i++) {
-                        buckets[i] = new Bucket();
-                    }
-                }
-                else {
-                    // create a new clause (assume 0 at the end)
-                    clause = new int[split.length - 1];
-                    key = 0;
-                    isPosKey = false;
-                    for (i = 0; i < clause.length; i++) {
-                        literal = Integer.parseInt(split[i]);
-                        clause[i] = literal;
-
-                        // init key for the first one
-                        if (i == 0) {
-                            key = (literal < 0) ? -literal : literal;
-                            isPosKey = literal > 0;
-                        }
-                        else {
-                            // handle the key (won't have 0)
-                            if ((literal < 0) && (key > -literal)) {
-                                key = -literal;
-                                isPosKey = false;
-                            }
-                            else if ((literal > 0) && (key > literal)) {
-                                key = literal;
-                                isPosKey = true;
-                            }
-                        }
-                    }
-
-                    // sort the clause
-                    QuickSort.sort(clause);
-                    assert (Clauses.inOrder(clause)) : String.format("Clauses must be in order, but clauses = %s",
-                            Arrays.toString(clause));
-
-                    // loop through the sorted clause to check duplicates
-                    duplicateCount = 0;
-                    isTrueClause = false;
-                    for (i = 0; i < (clause.length - 1); i++) {
-                        // look ahead one item
-                        if (clause[i+1] == clause[i]) {
-                            duplicateCount++;
-                        }
-                        else if (clause[i+1] == -clause[i]) {
-                            // don't handle true clauses
-                            isTrueClause = true;
-                            break;
-                        }
-                    }
-
-                    // don't add if it's true clause
-                    if (!isTrueClause) {
-                        // get rid of duplicates
-                        if (duplicateCount > 0) {
-                            tmp = clause;
-                            clause = new int[tmp.length - duplicateCount];
-                            clauseIndex = 0;
-                            for (i = 0; i < (tmp.length - 1); i++) {
-                                clause[clauseIndex] = tmp[i];
-
-                                // look ahead one item
-                                if (tmp[i+1] != tmp[i]) {
-                                    clause[++clauseIndex] = tmp[i+1];
-                                }
-                            }
-                        }
-
-                        // add the clause into the right bucket
-                        buckets[key - 1].add(clause, isPosKey ? Clauses.ClauseType.POSITIVE : Clauses.ClauseType.NEGATIVE);
-                    }
-                }
+     * This method will read the buckets, the archive and the renaming of the variables from the checkpoint of a run
+     * @param stripeCount given the number of stripes of the buckets
+     */
+    private void resume(int stripeCount) throws IOException {
+        SolverEvents.PhaseEvent event = new SolverEvents.PhaseEvent();
+        event.begin();
+        Checkpoint.Snapshot snapshot = Checkpoint.read(new File(resumeFile), stripeCount);
+        variableCount = snapshot.getVariables();
+        clauseCount = snapshot.getClauses();
+        originalIndex = snapshot.getOriginalIndex();
+        parents = snapshot.getParents();
+        fixedValues = snapshot.getFixedValues();
+        buckets = snapshot.getBuckets();
+        archive = snapshot.getArchive();
+        hasEmptyClause = false;
+
+        int left = 0;
+        long size = 0;
+        for (Bucket bucket : buckets) {
+            if (bucket != null) {
+                left++;
+                size += bucket.getPosSize() + bucket.getNegSize();
+            }
+        }
+        commit(event, "Resume", buckets.length, size);
+        log(Level.WARN, "Variables = {}, Clauses = {}", variableCount, clauseCount);
+        log(Level.WARN, "Resumed from '{}' -- {} of {} buckets left", resumeFile, left, buckets.length);
+    }
+
+
+    /**
+     * This method will hand a snapshot of the buckets over to the checkpoint (the run goes on when it can't be
+     * written)
+     */
+    private void writeCheckpoint() {
+        Checkpoint.Snapshot snapshot = new Checkpoint.Snapshot(variableCount, clauseCount, originalIndex, parents,
+                fixedValues);
+        int left = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == null) {
+                snapshot.setDone(i, archive);
             }
+            else {
+                snapshot.setLeft(i, buckets[i], store);
+                left++;
+            }
+        }
+
+        try {
+            checkpoint.write(snapshot);
+            log(Level.WARN, "Checkpoint -- {} of {} buckets left", left, buckets.length);
+        }
+        catch (IOException e) {
+            log(Level.ERROR, "Cannot write the checkpoint ({})", e.getMessage());
+        }
+    }
+
+
+    /**
+     * This method will wait for the last snapshot to be written
+     */
+    private void closeCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.close();
+        }
+        catch (IOException e) {
+            log(Level.ERROR, "Cannot write the checkpoint ({})", e.getMessage());
+        }
+    }
+
 
-            // read the next line
-            line = buffer.readLine();
+    /**
+     * This method will set the answer of the run and log it (with the reason when it is UNKNOWN)
+     * @param status given the answer
+     */
+    private void setStatus(Status status) {
+        this.status = status;
+        if (status == Status.UNKNOWN) {
+            log(Level.ERROR, "UNKNOWN ({})", budget.getReason());
+        }
+        else {
+            log(Level.ERROR, "{}", status);
         }
     }
 
 
+    /**
+     * This method will log the message when the level of this solver and the logger let it through (the parameters
+     * are only formatted then, into the {} of the message)
+     * @param level given the level of the message
+     * @param message given the message
+     * @param parameters given the parameters of the message
+     */
+    private void log(Level level, String message, Object... parameters) {
+        if (isLogging(level)) {
+            logger.log(level, message, parameters);
+        }
+    }
+
+
+    /**
+     * @param level given the level of a message
+     * @return whether the level of this solver and the logger let the message through
+     */
+    private boolean isLogging(Level level) {
+        return level.isMoreSpecificThan(this.level) && logger.isEnabled(level);
+    }
+
+
+    /**
+     * This method will record the end of a phase with the size of the formula (a flight recorder event, see
+     * SolverEvents)
+     * @param event given the event of the phase (begun)
+     * @param phase given the name of the phase
+     * @param formula given the formula
+     */
+    private static void commit(SolverEvents.PhaseEvent event, String phase, Formula formula) {
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.variables = formula.getVariables();
+            event.clauses = formula.getSize();
+            event.commit();
+        }
+    }
+
+
+    /**
+     * This method will record the end of a phase (a flight recorder event, see SolverEvents)
+     * @param event given the event of the phase (begun)
+     * @param phase given the name of the phase
+     * @param variables given the number of variables
+     * @param clauses given the number of clauses at the end of the phase
+     */
+    private static void commit(SolverEvents.PhaseEvent event, String phase, int variables, long clauses) {
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.variables = variables;
+            event.clauses = clauses;
+            event.commit();
+        }
+    }
+
+
+    /**
+     * This method will wait for the next bucket task that is done
+     * @param completionService given the tasks
+     * @return the task
+     */
+    private static BucketTask getResult(CompletionService<BucketTask> completionService) throws IOException {
+        try {
+            return completionService.take().get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a bucket", e);
+        }
+        catch (ExecutionException e) {
+            // let the errors of the workers out as they are
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+
+    /**
+     * This method will find the buckets a worker can write to: the running ones and all their ancestors
+     * @param running given the indexes of the running buckets
+     * @return isHot[i] is true when bucket i must stay in memory
+     */
+    private boolean[] getHotBuckets(Set<Integer> running) {
+        boolean[] result = new boolean[buckets.length];
+        int i;
+        for (int index : running) {
+            for (i = index; (i >= 0) && !result[i]; i = parents[i]) {
+                result[i] = true;
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will parse through the file and initialize the buckets.
+     * The file is cut into chunks and each thread parses and normalizes the clauses of its chunk. Then the variables
+     * are renamed by the elimination order and all the threads put the clauses into the buckets.
+     * It is package-private so that the benchmarks can run it alone.
+     * @param threadPool given the threads
+     * @param threads number of threads
+     */
+    void initBuckets(ExecutorService threadPool, int threads) throws IOException {
+        SolverEvents.PhaseEvent event = new SolverEvents.PhaseEvent();
+        event.begin();
+        Formula formula = (file != null) ? Formula.read(file, threadPool, threads) :
+                Formula.fromClauses(variableCount, clauses);
+        commit(event, "Parse", formula);
+        variableCount = formula.getVariables();
+        clauseCount = formula.getClauses();
+        log(Level.WARN, "Variables = {}, Clauses = {}", variableCount, clauseCount);
+        hasEmptyClause = formula.hasEmptyClause();
+
+        // propagate the units and set the pure literals
+        if (isPreprocessing && !hasEmptyClause) {
+            event = new SolverEvents.PhaseEvent();
+            event.begin();
+            Timer timerPreprocess = new Timer("Preprocessing");
+            Preprocessor preprocessor = new Preprocessor(formula);
+            hasEmptyClause = !preprocessor.run(threadPool) || formula.hasEmptyClause();
+            commit(event, "Preprocess", formula);
+            log(Level.WARN, "Units = {}, Pure Literals = {}", preprocessor.getUnitCount(),
+                    preprocessor.getPureCount());
+            log(Level.WARN, "{}", timerPreprocess);
+        }
+        if (hasEmptyClause) {
+            return;
+        }
+        fixedValues = formula.getValues();
+
+        // rename the variables so that bucket i is the i-th variable to eliminate
+        originalIndex = new int[formula.getVariables() + 1];
+        if (order == EliminationOrder.Strategy.INPUT) {
+            for (int i = 0; i < originalIndex.length; i++) {
+                originalIndex[i] = i;
+            }
+        }
+        else {
+            event = new SolverEvents.PhaseEvent();
+            event.begin();
+            Timer timerOrder = new Timer("Elimination Order");
+            int[] newIndex = EliminationOrder.compute(formula, order);
+            for (int i = 1; i < newIndex.length; i++) {
+                originalIndex[newIndex[i]] = i;
+            }
+            formula.renumber(newIndex, threadPool);
+            commit(event, "Order", formula);
+            log(Level.WARN, "{}", timerOrder);
+        }
+
+        // get the tree of the buckets (a variable of the tree is bucket variable - 1)
+        parents = EliminationOrder.getTree(formula);
+        for (int i = 0; i < parents.length - 1; i++) {
+            parents[i] = parents[i + 1] - 1;
+        }
+        parents = Arrays.copyOf(parents, parents.length - 1);
+
+        // init the buckets (striped so that all the workers can union into them at once)
+        // (the chunks are emptied into the buckets, so the clauses are counted before)
+        event = new SolverEvents.PhaseEvent();
+        event.begin();
+        long size = formula.getSize();
+        buckets = formula.toBuckets(threadPool, Bucket.getStripeCount(threads));
+        commit(event, "Buckets", formula.getVariables(), size);
+    }
+
+
+    /**
+     * This method will run the CDCL search on the clauses of all the buckets that are not eliminated
+     * @return the values of the variables of those buckets (the others are 0), or null when unsatisfiable
+     */
+    private byte[] search() throws IOException {
+        Timer timerSearch = new Timer("CDCL Search");
+        CdclSolver cdclSolver = new CdclSolver(buckets.length);
+        cdclSolver.setBudget(budget);
+        boolean[] isSearched = new boolean[buckets.length];
+        Bucket bucket;
+        for (int i = 0; i < buckets.length; i++) {
+            bucket = store.take(i);
+            if (bucket == null) {
+                continue;
+            }
+
+            // the buckets are freed as they are handed over
+            addClauses(cdclSolver, bucket.getPosClauses());
+            addClauses(cdclSolver, bucket.getNegClauses());
+            buckets[i] = null;
+            isSearched[i] = true;
+        }
+        log(Level.WARN, "Searching {} clauses", cdclSolver.getClauseCount());
+
+        SolverEvents.PhaseEvent event = new SolverEvents.PhaseEvent();
+        event.begin();
+        boolean isSatisfiable = cdclSolver.solve();
+        conflicts = cdclSolver.getConflicts();
+        commit(event, "Search", buckets.length, cdclSolver.getClauseCount());
+        log(Level.WARN, "Conflicts = {}, Decisions = {}, Propagations = {}", cdclSolver.getConflicts(),
+                cdclSolver.getDecisions(), cdclSolver.getPropagations());
+        log(Level.WARN, "{}", timerSearch);
+        if (!isSatisfiable) {
+            return null;
+        }
+
+        // the eliminated variables are set again by the archive
+        byte[] result = new byte[buckets.length + 1];
+        byte[] values = cdclSolver.getValues();
+        for (int i = 0; i < buckets.length; i++) {
+            if (isSearched[i]) {
+                result[i + 1] = values[i + 1];
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will hand the clauses over to the search (which takes them in DIMACS)
+     * @param cdclSolver given the search
+     * @param clauses given the clauses
+     */
+    private static void addClauses(CdclSolver cdclSolver, Clauses clauses) {
+        int[] literals = clauses.getLiterals();
+        int[] clause = new int[16];
+        int i, j, from, length;
+        for (i = 0; i < clauses.size(); i++) {
+            from = clauses.getOffset(i);
+            length = clauses.getLength(i);
+            if (clause.length < length) {
+                clause = new int[Math.max(length, clause.length * 2)];
+            }
+            for (j = 0; j < length; j++) {
+                clause[j] = Literal.toDimacs(literals[from + j]);
+            }
+            cdclSolver.addClause(clause, 0, length);
+        }
+    }
+
+
+    /**
+     * This method will rebuild the eliminated variables from the archive and map the model back to the input.
+     * Each processed bucket is archived, so the values are set backward from the last bucket to the first.
+     * @param values given the values of the variables that are already set (in bucket order, 0 when not)
+     */
+    private void buildModel(byte[] values) {
+        SolverEvents.PhaseEvent event = new SolverEvents.PhaseEvent();
+        event.begin();
+        Timer timerModel = new Timer("Model");
+        archive.reconstruct(values);
+        archive = null;
+
+        // rename the variables back, then add the ones fixed by the preprocessing
+        model = new byte[values.length];
+        for (int i = 1; i < values.length; i++) {
+            model[originalIndex[i]] = values[i];
+        }
+        for (int i = 1; i < model.length; i++) {
+            if (fixedValues[i] != 0) {
+                model[i] = fixedValues[i];
+            }
+        }
+        commit(event, "Model", model.length - 1, 0);
+        log(Level.WARN, "{}", timerModel);
+    }
+
+
     /**
      * This method will print the buckets out (for debug purposes)
      */
     private void printBuckets() {
+        if (!isLogging(Level.INFO)) {
+            return;
+        }
         for (int i = 0; i < buckets.length; i++) {
-            logger.info(String.format("Bucket %d\n%s", i + 1, buckets[i]));
+            if (buckets[i] != null) {
+                log(Level.INFO, "Bucket {}\n{}", i + 1, buckets[i].toString(true));
+            }
         }
     }
 
@@ -269,9 +709,288 @@ public class Solver {
         int[][] subData;
         for (int i = 0; i < data.length; i++) {
             subData = data[i];
-            logger.info(String.format("Array %d -- size = %d", i + 1, subData.length));
+            log(Level.INFO, "Array {} -- size = {}", i + 1, subData.length);
             for (int[] item : subData) {
-                logger.info(Arrays.toString(item));
+                log(Level.INFO, "{}", Arrays.toString(item));
+            }
+        }
+    }
+
+
+    /* Getters & Setters */
+    public Level getLevel() {
+        return level;
+    }
+
+
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+
+    public ForkJoinPool getThreadPool() {
+        return threadPool;
+    }
+
+
+    /**
+     * @param threadPool given the threads to share with other solvers (it is not shut down by the solver), or null
+     * to create a pool on every run
+     */
+    public void setThreadPool(ForkJoinPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+
+    public EliminationOrder.Strategy getOrder() {
+        return order;
+    }
+
+
+    public void setOrder(EliminationOrder.Strategy order) {
+        this.order = order;
+    }
+
+
+    public double getBoundFactor() {
+        return boundFactor;
+    }
+
+
+    /**
+     * @param boundFactor given the bound of bounded mode: a bucket is only eliminated while its resolutions stay under
+     * boundFactor * (posSize + negSize), and once one goes over, the clauses of that bucket and all the next ones are
+     * handed over to the CDCL search (0 eliminates every bucket whatever the size)
+     */
+    public void setBoundFactor(double boundFactor) {
+        this.boundFactor = boundFactor;
+    }
+
+
+    public boolean isPreprocessing() {
+        return isPreprocessing;
+    }
+
+
+    public void setPreprocessing(boolean isPreprocessing) {
+        this.isPreprocessing = isPreprocessing;
+    }
+
+
+    public boolean isCollectingMetrics() {
+        return isCollectingMetrics;
+    }
+
+
+    /**
+     * @param isCollectingMetrics whether the runs collect the metrics of the buckets (see Metrics)
+     */
+    public void setCollectingMetrics(boolean isCollectingMetrics) {
+        this.isCollectingMetrics = isCollectingMetrics;
+    }
+
+
+    /**
+     * @return the metrics of every bucket the last run eliminated, also in its result (null unless they are collected)
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+
+    public Checkpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+
+    /**
+     * @param checkpoint given where and how often (every so many buckets or minutes, and when the run is stopped) the
+     * runs write snapshots of the elimination, or null for never (it is not taken by setSettings, each run needs a
+     * file of its own)
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+
+    public String getResumeFile() {
+        return resumeFile;
+    }
+
+
+    /**
+     * @param resumeFile given the checkpoint the runs go on from instead of reading the input, or null to read it
+     * (the order and the preprocessing were done by the run that wrote it)
+     */
+    public void setResumeFile(String resumeFile) {
+        this.resumeFile = resumeFile;
+    }
+
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+
+    /**
+     * @param memoryBudget given the heap (in bytes) the buckets can use before the ones that are not processed yet are
+     * spilled to disk (see BucketStore)
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+
+    /**
+     * @return model[v] is 1 when variable v of the input file is true and -1 when it is false (null unless the answer
+     * is satisfiable)
+     */
+    public byte[] getModel() {
+        return model;
+    }
+
+
+    /**
+     * @return originalIndex[v] is the variable in the input file of the variable v in the buckets
+     */
+    public int[] getOriginalIndex() {
+        return originalIndex;
+    }
+
+
+    /**
+     * @return the answer of the last run (null before a run)
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+
+    /**
+     * @return why the last run stopped when the answer is UNKNOWN (null otherwise)
+     */
+    public Budget.Reason getReason() {
+        return (status == Status.UNKNOWN) ? budget.getReason() : null;
+    }
+
+
+    /**
+     * @return the budget of the runs: when a limit (wall time, resolutions, heap, clause width) is hit or the run is
+     * cancelled, the workers stop on their own and the answer is UNKNOWN with the reason
+     */
+    public Budget getBudget() {
+        return budget;
+    }
+
+
+    /**
+     * @param budget given the limits of the runs (a limit of 0 means no limit)
+     */
+    public void setBudget(Budget budget) {
+        this.budget = budget;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class processes one bucket: it archives the clauses and resolves every pair (the WorkerTask splits itself
+     * into tiles on the same threads)
+     */
+    private class BucketTask implements Callable<BucketTask> {
+
+        /* Declare Variables */
+        private int index;
+        private Bucket bucket;
+        private boolean isUnsatisfiable;
+        private boolean isBoundHit;
+        private AtomicLong resolutionCount;
+        private long resolutionLimit;
+        private BucketMetrics bucketMetrics;
+
+
+        /* Class Constructors */
+        private BucketTask(int index, Bucket bucket) {
+            this.index = index;
+            this.bucket = bucket;
+            bucketMetrics = (metrics != null) ? metrics.getBucket(index) : null;
+        }
+
+
+        /* Class Operators */
+        @Override
+        public BucketTask call() {
+            SolverEvents.BucketEvent event = new SolverEvents.BucketEvent();
+            event.begin();
+
+            // print the bucket (only built when it is going to be logged)
+            if (isLogging(Level.WARN)) {
+                log(Level.WARN, "Starting Bucket {} -- Iteration {}\n\t{}", index + 1, index + 1,
+                        bucket.toString(isLogging(Level.INFO)));
+            }
+
+            // don't start when the run is stopped
+            if (budget.isStopped()) {
+                bucket = null;
+                return this;
+            }
+
+            // get necessary data (nothing is added to this bucket anymore, so put each type in one arena)
+            bucket.compact();
+            archive.add(index, bucket.getPosClauses());
+            archive.add(index, bucket.getNegClauses());
+            if (bucketMetrics != null) {
+                bucketMetrics.setBucket(bucket);
+            }
+
+            // an empty or one-sided bucket has no resolvents
+            if ((bucket.getPosSize() == 0) || (bucket.getNegSize() == 0)) {
+                commit(event);
+                bucket = null;
+                return this;
+            }
+            int maxResolutionSize = bucket.getPosClauseMaxSize() + bucket.getNegClauseMaxSize();
+
+            // only count the resolutions when the bound can be hit
+            resolutionLimit = (long) (boundFactor * (bucket.getPosSize() + bucket.getNegSize()));
+            resolutionCount = ((boundFactor > 0) && ((long) bucket.getPosSize() * bucket.getNegSize() >
+                    resolutionLimit)) ? new AtomicLong() : null;
+
+            // resolve the whole bucket (the task splits itself into tiles that the threads steal)
+            log(Level.WARN, "Submitting {} pairs -- Iteration {}", (long) bucket.getPosSize() * bucket.getNegSize(),
+                    index + 1);
+            Timer timerWaitingResult = new Timer("Waiting Result");
+            long startTime = System.nanoTime();
+            WorkerTask task = new WorkerTask(maxResolutionSize, bucket.getPosClauses(), bucket.getNegClauses(),
+                    buckets, resolutionCount, resolutionLimit, budget);
+            task.setMetrics(bucketMetrics);
+            isUnsatisfiable = task.invoke();
+            if (bucketMetrics != null) {
+                bucketMetrics.setTime(System.nanoTime() - startTime);
+            }
+            log(Level.WARN, "{}", timerWaitingResult);
+
+            isBoundHit = !isUnsatisfiable && !budget.isStopped() && (resolutionCount != null) &&
+                    (resolutionCount.get() > resolutionLimit);
+            commit(event);
+            bucket = null;
+            return this;
+        }
+
+
+        /* Private Methods */
+        /**
+         * This method will record the elimination of the bucket (compacted) as a flight recorder event
+         * @param event given the event of the bucket (begun)
+         */
+        private void commit(SolverEvents.BucketEvent event) {
+            if (event.shouldCommit()) {
+                event.bucket = index + 1;
+                event.posSize = bucket.getPosSize();
+                event.negSize = bucket.getNegSize();
+                event.pairs = (long) bucket.getPosSize() * bucket.getNegSize();
+                event.isBoundHit = isBoundHit;
+                event.isUnsatisfiable = isUnsatisfiable;
+                event.commit();
             }
         }
     }
@@ -279,46 +998,344 @@ public class Solver {
 
     /* Main */
     public static void main(String[] args) throws Exception {
-        // Usage: Solver <input-file> <debug-mode (default: INFO)>
+        // Usage: Solver <input-file> <debug-mode (default: INFO)> [--order <strategy>] [--no-preprocess] [--bounded <factor>] [--memory <MB>]
+        //        [--time <seconds>] [--max-resolutions <count>] [--max-heap <MB>] [--max-width <literals>]
+        //        [--batch] [--jobs <count>] [--threads <count>] [--daemon <port>] [--metrics <file>]
+        //        [--checkpoint <file>] [--checkpoint-every <buckets>] [--checkpoint-time <seconds>] [--resume]
         Timer timerTotalProgram = new Timer("Total Time");
 
-        // check args
-        if (args.length < 1) {
-            System.out.println("Usage: Solver <input-file> <debug-mode (default: INFO)>");
-            System.exit(1);
+        // handle args (options can go anywhere, the rest are positional)
+        String file = null;
+        Level logLevel = null;
+        EliminationOrder.Strategy order = EliminationOrder.Strategy.INPUT;
+        boolean isPreprocessing = true;
+        double boundFactor = 0;
+        long memoryBudget = 0;
+        Budget budget = new Budget();
+        boolean isBatch = false;
+        int port = -1;
+        String metricsFile = null;
+        String checkpointFile = null;
+        int checkpointBuckets = 0;
+        long checkpointTime = 0;
+        boolean isResuming = false;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int threads = jobs;
+        int positional = 0;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--order") && (i + 1 < args.length)) {
+                try {
+                    order = EliminationOrder.parseStrategy(args[++i]);
+                }
+                catch (IllegalArgumentException e) {
+                    printUsage();
+                }
+            }
+            else if (args[i].equals("--bounded") && (i + 1 < args.length)) {
+                try {
+                    boundFactor = Double.parseDouble(args[++i]);
+                }
+                catch (NumberFormatException e) {
+                    printUsage();
+                }
+                if (boundFactor <= 0) {
+                    printUsage();
+                }
+            }
+            else if (args[i].equals("--memory") && (i + 1 < args.length)) {
+                try {
+                    memoryBudget = Long.parseLong(args[++i]) << 20;
+                }
+                catch (NumberFormatException e) {
+                    printUsage();
+                }
+                if (memoryBudget <= 0) {
+                    printUsage();
+                }
+            }
+            else if (args[i].equals("--time") && (i + 1 < args.length)) {
+                budget.setTimeLimit(parseLimit(args[++i]) * 1000);
+            }
+            else if (args[i].equals("--max-resolutions") && (i + 1 < args.length)) {
+                budget.setResolutionLimit(parseLimit(args[++i]));
+            }
+            else if (args[i].equals("--max-heap") && (i + 1 < args.length)) {
+                budget.setMemoryLimit(parseLimit(args[++i]) << 20);
+            }
+            else if (args[i].equals("--max-width") && (i + 1 < args.length)) {
+                budget.setWidthLimit((int) Math.min(parseLimit(args[++i]), Integer.MAX_VALUE));
+            }
+            else if (args[i].equals("--jobs") && (i + 1 < args.length)) {
+                jobs = (int) Math.min(parseLimit(args[++i]), Short.MAX_VALUE);
+            }
+            else if (args[i].equals("--threads") && (i + 1 < args.length)) {
+                threads = (int) Math.min(parseLimit(args[++i]), Short.MAX_VALUE);
+            }
+            else if (args[i].equals("--daemon") && (i + 1 < args.length)) {
+                port = (int) Math.min(parseLimit(args[++i]), 65535);
+            }
+            else if (args[i].equals("--metrics") && (i + 1 < args.length)) {
+                metricsFile = args[++i];
+            }
+            else if (args[i].equals("--checkpoint") && (i + 1 < args.length)) {
+                checkpointFile = args[++i];
+            }
+            else if (args[i].equals("--checkpoint-every") && (i + 1 < args.length)) {
+                checkpointBuckets = (int) Math.min(parseLimit(args[++i]), Integer.MAX_VALUE);
+            }
+            else if (args[i].equals("--checkpoint-time") && (i + 1 < args.length)) {
+                checkpointTime = parseLimit(args[++i]) * 1000;
+            }
+            else if (args[i].equals("--resume")) {
+                isResuming = true;
+            }
+            else if (args[i].equals("--batch")) {
+                isBatch = true;
+            }
+            else if (args[i].equals("--no-preprocess")) {
+                isPreprocessing = false;
+            }
+            else if (args[i].startsWith("--")) {
+                printUsage();
+            }
+            else if (positional == 0) {
+                file = args[i];
+                positional++;
+            }
+            else if (positional == 1) {
+                logLevel = parseLevel(args[i]);
+                positional++;
+            }
+            else {
+                printUsage();
+            }
         }
 
-        // handle args
-        String file = args[0];
-        Level logLevel = Level.INFO;
-        if (args.length == 2) {
-            switch (args[1].toUpperCase()) {
-                case "WARN":
-                    logLevel = Level.WARN;
-                    break;
-
-                case "ERROR":
-                    logLevel = Level.ERROR;
-                    break;
+        // check args (the logs of a batch or a daemon are off unless asked, since the runs are mixed)
+        if (((file == null) == (port < 0)) || ((metricsFile != null) && (isBatch || (port >= 0))) ||
+                (((checkpointFile != null) || isResuming) && (isBatch || (port >= 0)))) {
+            printUsage();
+        }
 
-                case "FATAL":
-                    logLevel = Level.FATAL;
-                    break;
+        // a snapshot every 10 minutes unless told otherwise
+        if ((checkpointBuckets == 0) && (checkpointTime == 0)) {
+            checkpointTime = DEFAULT_CHECKPOINT_TIME;
+        }
+        if (logLevel == null) {
+            logLevel = (isBatch || (port >= 0)) ? Level.OFF : Level.INFO;
+        }
 
-                case "OFF":
-                    logLevel = Level.OFF;
-                    break;
+        // the settings of every run, on one thread pool
+        Solver settings = new Solver(null, logLevel);
+        settings.setOrder(order);
+        settings.setPreprocessing(isPreprocessing);
+        settings.setBoundFactor(boundFactor);
+        settings.setCollectingMetrics(metricsFile != null);
+        settings.setBudget(budget);
+        if (memoryBudget > 0) {
+            settings.setMemoryBudget(memoryBudget);
+        }
+        ForkJoinPool threadPool = new ForkJoinPool(threads);
+        settings.setThreadPool(threadPool);
 
-                default:
-                    System.out.println("Usage: Solver <input-file> <debug-mode (default: INFO)>");
-                    System.exit(1);
+        try {
+            if (port >= 0) {
+                // keep the solver warm and take the jobs from the socket, until a client shuts it down
+                try (SolverDaemon daemon = new SolverDaemon(port, settings, jobs)) {
+                    System.out.println(String.format("Listening on port %d", daemon.getPort()));
+                    daemon.run();
+                }
+            }
+            else if (isBatch) {
+                runBatch(getBatchFiles(file), settings, jobs);
+            }
+            else {
+                Solver solver = new Solver(isResuming ? null : file, logLevel);
+                solver.setSettings(settings);
+                solver.setResumeFile(isResuming ? file : null);
+                if (checkpointFile != null) {
+                    solver.setCheckpoint(new Checkpoint(new File(checkpointFile), checkpointBuckets, checkpointTime));
+                }
+                SolverResult result = solver.run();
+                if (result.getModel() != null) {
+                    printModel(result.getModel());
+                }
+                if (result.getMetrics() != null) {
+                    result.getMetrics().write(metricsFile);
+                }
             }
         }
-
-        // init and run the solver
-        (new Solver(file, logLevel)).run();
+        finally {
+            threadPool.shutdownNow();
+        }
 
         // get the time
         System.out.println(timerTotalProgram.result());
     }
+
+
+    /**
+     * This method will run the files of a batch, jobs at a time, and print one line per file in the input order
+     * (the file, the answer and the time of the run)
+     * @param files given the files
+     * @param settings given the solver the runs take their settings from
+     * @param jobs given the number of runs at the same time
+     */
+    private static void runBatch(List<String> files, Solver settings, int jobs) throws InterruptedException {
+        ExecutorService drivers = Executors.newFixedThreadPool(jobs);
+        List<Future<SolverResult>> results = new ArrayList<>();
+        SolverResult result;
+        for (String file : files) {
+            final Solver solver = new Solver(file, settings.getLevel());
+            solver.setSettings(settings);
+            results.add(drivers.submit(new Callable<SolverResult>() {
+                @Override
+                public SolverResult call() throws Exception {
+                    return solver.run();
+                }
+            }));
+        }
+
+        // a run that fails doesn't stop the others
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    result = results.get(i).get();
+                    System.out.println(String.format("%s %s %d ms", files.get(i), result, result.getTime()));
+                }
+                catch (ExecutionException e) {
+                    System.out.println(String.format("%s ERROR (%s)", files.get(i), e.getCause()));
+                }
+            }
+        }
+        finally {
+            drivers.shutdownNow();
+        }
+    }
+
+
+    /**
+     * This method will list the files of a batch: the .cnf and .cnf.gz files of a directory (sorted by name), or the
+     * paths in a list file (one per line, the blank lines and the lines starting with # are skipped)
+     * @param input given the directory or the list file
+     * @return the files
+     */
+    private static List<String> getBatchFiles(String input) throws IOException {
+        List<String> result = new ArrayList<>();
+        File directory = new File(input);
+        String line;
+        if (directory.isDirectory()) {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                throw new IOException(String.format("Cannot list '%s'", input));
+            }
+            Arrays.sort(files);
+            for (File item : files) {
+                if (item.isFile() && (item.getName().endsWith(".cnf") || item.getName().endsWith(".cnf.gz"))) {
+                    result.add(item.getPath());
+                }
+            }
+            return result;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(input))) {
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will parse the debug mode
+     * @param name given the name of the level
+     * @return the level
+     */
+    private static Level parseLevel(String name) {
+        switch (name.toUpperCase()) {
+            case "INFO":
+                return Level.INFO;
+
+            case "WARN":
+                return Level.WARN;
+
+            case "ERROR":
+                return Level.ERROR;
+
+            case "FATAL":
+                return Level.FATAL;
+
+            case "OFF":
+                return Level.OFF;
+
+            default:
+                printUsage();
+                return null;
+        }
+    }
+
+
+    /**
+     * This method will parse a limit of the budget
+     * @param value given the value (a positive integer)
+     * @return the limit
+     */
+    private static long parseLimit(String value) {
+        long result = 0;
+        try {
+            result = Long.parseLong(value);
+        }
+        catch (NumberFormatException e) {
+            printUsage();
+        }
+        if (result <= 0) {
+            printUsage();
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will print the model in the DIMACS format ('v' lines that end with 0)
+     * @param model given model[v] = 1 (true) or -1 (false)
+     */
+    private static void printModel(byte[] model) {
+        StringBuilder line = new StringBuilder("v");
+        String literal;
+        for (int i = 1; i <= model.length; i++) {
+            literal = (i == model.length) ? "0" : String.valueOf((model[i] > 0) ? i : -i);
+            if (line.length() + literal.length() + 1 > 78) {
+                System.out.println(line);
+                line.setLength(0);
+                line.append("v");
+            }
+            line.append(' ').append(literal);
+        }
+        System.out.println(line);
+    }
+
+
+    /**
+     * This method will print the usage and exit
+     */
+    private static void printUsage() {
+        System.out.println("Usage: Solver <input-file> <debug-mode (default: INFO)> " +
+                "[--order input|min-degree|min-fill|mcs] [--no-preprocess] " +
+                "[--bounded <factor>] [--memory <MB>] [--time <seconds>] [--max-resolutions <count>] " +
+                "[--max-heap <MB>] [--max-width <literals>] [--batch] [--jobs <count>] [--threads <count>]");
+        System.out.println("       with --batch, the input is a directory of .cnf files or a file listing them " +
+                "(the debug mode defaults to OFF)");
+        System.out.println("       --metrics <file> writes the metrics of each bucket of a single run " +
+                "(CSV when the file ends with .csv, JSON otherwise)");
+        System.out.println("       --checkpoint <file> writes snapshots of a single run every --checkpoint-every " +
+                "<buckets> or --checkpoint-time <seconds> (default: 600), and --resume goes on from one");
+        System.out.println("       (the input file is then the checkpoint)");
+        System.out.println("       Solver --daemon <port> [options] takes the jobs on a local port " +
+                "(see SolverDaemon for the protocol)");
+        System.exit(1);
+    }
 }
@@ -0,0 +1,523 @@
+package tim.parallel;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * This class keeps the solver running in one JVM and takes jobs over a local socket, so that every job runs on the
+ * same warm thread pool (the hot loops stay compiled from one job to the next).
+ * The socket is TCP on the loopback address, so any client on any platform can connect (a Unix domain socket would
+ * need Java 16 and is not there on every platform).
+ * The protocol is one command per line, and every reply is a line that starts with its type:
+ * <pre>
+ *   SOLVE &lt;path&gt;     queue the file, the reply is QUEUED &lt;id&gt;
+ *   CNF               queue the DIMACS lines that follow, up to a line END, the reply is QUEUED &lt;id&gt;
+ *   CANCEL &lt;id&gt;       stop the job, its answer is UNKNOWN (CANCELLED)
+ *   STATUS            the reply is PENDING &lt;queued jobs&gt; &lt;running jobs&gt; &lt;free MB&gt;
+ *   QUIT              close the connection (its jobs are cancelled)
+ *   SHUTDOWN          stop the daemon, the reply is BYE
+ * </pre>
+ * A job then streams STARTED &lt;id&gt;, PROGRESS &lt;id&gt; &lt;ms&gt; &lt;resolutions&gt; every PROGRESS_INTERVAL ms,
+ * and RESULT &lt;id&gt; &lt;answer&gt; &lt;ms&gt; &lt;resolutions&gt; &lt;conflicts&gt;, followed by
+ * MODEL &lt;id&gt; &lt;literals&gt; 0 when it is satisfiable. A bad command gets ERROR &lt;message&gt;, and a job that
+ * fails gets ERROR &lt;id&gt; &lt;message&gt;.
+ * The jobs wait in a queue and start in order, up to jobs at a time, and only when their memory estimate fits in
+ * what is left of the memory budget (a job bigger than the budget runs alone).
+ */
+public class SolverDaemon implements Closeable {
+
+    /* Declare Variables */
+    public static final long PROGRESS_INTERVAL = 1000;
+    public static final int FILE_MEMORY_FACTOR = 16;
+    public static final int GZIP_MEMORY_FACTOR = 64;
+    public static final int LITERAL_MEMORY = 64;
+
+    private Solver settings;
+    private int memoryPermits;
+    private Semaphore memory;
+    private ServerSocket serverSocket;
+    private ExecutorService connections;
+    private ExecutorService drivers;
+    private ScheduledExecutorService progress;
+    private AtomicInteger nextId;
+    private AtomicInteger queued;
+    private AtomicInteger running;
+    private Map<Integer,Job> jobs;
+
+
+    /* Class Constructors */
+    /**
+     * @param port given the TCP port on the loopback address (0 picks a free one, see getPort)
+     * @param settings given the solver the jobs take their settings from (see Solver.setSettings), with the thread
+     * pool shared by all the jobs
+     * @param jobCount given the number of jobs that run at the same time
+     */
+    public SolverDaemon(int port, Solver settings, int jobCount) throws IOException {
+        this.settings = settings;
+        memoryPermits = (int) Math.max(1, Math.min(settings.getMemoryBudget() >> 20, Integer.MAX_VALUE));
+        memory = new Semaphore(memoryPermits, true);
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        connections = Executors.newCachedThreadPool(getThreadFactory("solver-daemon-connection"));
+        drivers = Executors.newFixedThreadPool(jobCount, getThreadFactory("solver-daemon-job"));
+        progress = Executors.newSingleThreadScheduledExecutor(getThreadFactory("solver-daemon-progress"));
+        nextId = new AtomicInteger();
+        queued = new AtomicInteger();
+        running = new AtomicInteger();
+        jobs = new ConcurrentHashMap<>();
+    }
+
+
+    /* Class Operators */
+    /**
+     * This method will stop the daemon: no more connections, and the jobs are cancelled
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Job job : jobs.values()) {
+            job.cancel();
+        }
+        connections.shutdownNow();
+        drivers.shutdownNow();
+        progress.shutdownNow();
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will take the connections until the daemon is closed (each connection gets a thread)
+     */
+    public void run() throws IOException {
+        Socket socket;
+        while (!serverSocket.isClosed()) {
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (SocketException e) {
+                // the daemon is closed
+                break;
+            }
+            connections.submit(new Connection(socket));
+        }
+    }
+
+
+    /**
+     * This method will estimate the heap a job needs from the size of its input (the clauses are parsed into arenas
+     * and sets, and the resolutions come on top of that)
+     * @param file given the file of the job, or null
+     * @param literals given the number of literals when the clauses are in memory
+     * @return the estimate in MB (at least 1)
+     */
+    public static int getMemoryEstimate(String file, long literals) {
+        long result;
+        if (file != null) {
+            result = new File(file).length() * (file.endsWith(".gz") ? GZIP_MEMORY_FACTOR : FILE_MEMORY_FACTOR);
+        }
+        else {
+            result = literals * LITERAL_MEMORY;
+        }
+        return (int) Math.max(1, Math.min(result >> 20, Integer.MAX_VALUE));
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will make a new solver with the settings of the daemon
+     * @param file given the file, or null
+     * @param variables given the number of variables when the clauses are in memory
+     * @param clauses given the clauses in memory, or null
+     * @return the solver
+     */
+    private Solver newSolver(String file, int variables, int[][] clauses) {
+        Solver result = (file != null) ? new Solver(file, settings.getLevel()) :
+                new Solver(variables, clauses, settings.getLevel());
+        result.setSettings(settings);
+        return result;
+    }
+
+
+    /**
+     * This method will read the DIMACS lines of a CNF command, up to a line END
+     * @param reader given the connection
+     * @param result given the list to fill with the clauses
+     * @return the number of variables of the problem line
+     */
+    private static int readClauses(BufferedReader reader, List<int[]> result) throws IOException {
+        int[] clause = new int[16];
+        int length = 0;
+        int variables = -1;
+        int literal;
+        String line;
+        String[] tokens;
+        while (true) {
+            line = reader.readLine();
+            if (line == null) {
+                throw new IOException("Connection closed before END");
+            }
+            line = line.trim();
+            if (line.equals("END")) {
+                break;
+            }
+            if (line.isEmpty() || line.startsWith("c") || line.startsWith("%")) {
+                continue;
+            }
+
+            // the problem line comes before the clauses
+            tokens = line.split("\\s+");
+            if (line.startsWith("p")) {
+                if ((tokens.length != 4) || !tokens[1].equals("cnf")) {
+                    throw new IOException(String.format("Bad problem line '%s'", line));
+                }
+                variables = parseInt(tokens[2]);
+                continue;
+            }
+            if (variables < 0) {
+                throw new IOException("Clause found before the problem line");
+            }
+
+            // a clause can go over many lines and ends with 0
+            for (String token : tokens) {
+                literal = parseInt(token);
+                if (literal == 0) {
+                    result.add(Arrays.copyOf(clause, length));
+                    length = 0;
+                    continue;
+                }
+                if (length == clause.length) {
+                    clause = Arrays.copyOf(clause, 2 * length);
+                }
+                clause[length++] = literal;
+            }
+        }
+        if (variables < 0) {
+            throw new IOException("Missing problem line");
+        }
+        if (length > 0) {
+            result.add(Arrays.copyOf(clause, length));
+        }
+        return variables;
+    }
+
+
+    /**
+     * @param token given a number of the input
+     * @return the number
+     */
+    private static int parseInt(String token) throws IOException {
+        try {
+            return Integer.parseInt(token);
+        }
+        catch (NumberFormatException e) {
+            throw new IOException(String.format("Bad number '%s'", token));
+        }
+    }
+
+
+    /**
+     * @param name given the name of the threads
+     * @return a factory of daemon threads (they don't keep the JVM up)
+     */
+    private static ThreadFactory getThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+
+    /* Getters & Setters */
+    /**
+     * @return the port the daemon listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class reads the commands of one client and writes the replies of its jobs (from any thread)
+     */
+    private class Connection implements Runnable {
+
+        /* Declare Variables */
+        private Socket socket;
+        private Writer writer;
+        private Set<Integer> ids;
+
+
+        /* Class Constructors */
+        private Connection(Socket socket) {
+            this.socket = socket;
+            ids = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+        }
+
+
+        /* Class Operators */
+        @Override
+        public void run() {
+            String line;
+            String[] tokens;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.US_ASCII))) {
+                writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                        StandardCharsets.US_ASCII));
+                while ((line = reader.readLine()) != null) {
+                    tokens = line.trim().split("\\s+", 2);
+                    try {
+                        if (tokens[0].equals("QUIT")) {
+                            break;
+                        }
+                        if (tokens[0].equals("SHUTDOWN")) {
+                            send("BYE");
+                            close();
+                            break;
+                        }
+                        handle(tokens[0], (tokens.length > 1) ? tokens[1] : "", reader);
+                    }
+                    catch (IOException e) {
+                        send(String.format("ERROR %s", e.getMessage()));
+                    }
+                }
+            }
+            catch (IOException e) {
+                // the client is gone
+            }
+            finally {
+                // nobody can read the answers of the jobs anymore
+                for (int id : ids) {
+                    Job job = jobs.get(id);
+                    if (job != null) {
+                        job.cancel();
+                    }
+                }
+                try {
+                    socket.close();
+                }
+                catch (IOException e) {
+                    // already closed
+                }
+            }
+        }
+
+
+        /* Private Methods */
+        /**
+         * This method will run one command
+         * @param command given the command
+         * @param argument given the rest of the line
+         * @param reader given the connection (for the lines of a CNF command)
+         */
+        private void handle(String command, String argument, BufferedReader reader) throws IOException {
+            List<int[]> clauses;
+            int variables, literals;
+            Job job;
+            switch (command) {
+                case "SOLVE":
+                    if (argument.isEmpty()) {
+                        throw new IOException("Missing path");
+                    }
+                    submit(newSolver(argument, 0, null), getMemoryEstimate(argument, 0));
+                    break;
+
+                case "CNF":
+                    clauses = new ArrayList<>();
+                    variables = readClauses(reader, clauses);
+                    literals = 0;
+                    for (int[] clause : clauses) {
+                        literals += clause.length;
+                    }
+                    submit(newSolver(null, variables, clauses.toArray(new int[clauses.size()][])),
+                            getMemoryEstimate(null, literals));
+                    break;
+
+                case "CANCEL":
+                    job = jobs.get(parseInt(argument));
+                    if (job == null) {
+                        throw new IOException(String.format("No job %s", argument));
+                    }
+                    job.cancel();
+                    break;
+
+                case "STATUS":
+                    send(String.format("PENDING %d %d %d", queued.get(), running.get(), memory.availablePermits()));
+                    break;
+
+                default:
+                    throw new IOException(String.format("Unknown command '%s'", command));
+            }
+        }
+
+
+        /**
+         * This method will queue the job
+         * @param solver given the solver of the job
+         * @param estimate given the memory estimate in MB
+         */
+        private void submit(Solver solver, int estimate) throws IOException {
+            int id = nextId.incrementAndGet();
+            Job job = new Job(id, solver, Math.min(estimate, memoryPermits), this);
+            jobs.put(id, job);
+            ids.add(id);
+            queued.incrementAndGet();
+            send(String.format("QUEUED %d", id));
+            drivers.submit(job);
+        }
+
+
+        /**
+         * This method will write one line to the client (thread-safe)
+         * @param line given the line
+         */
+        private synchronized void send(String line) throws IOException {
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+
+    /**
+     * This class runs one job on a driver thread once its memory is free, and streams its progress and answer
+     */
+    private class Job implements Runnable {
+
+        /* Declare Variables */
+        private int id;
+        private Solver solver;
+        private int permits;
+        private Connection connection;
+
+
+        /* Class Constructors */
+        private Job(int id, Solver solver, int permits, Connection connection) {
+            this.id = id;
+            this.solver = solver;
+            this.permits = permits;
+            this.connection = connection;
+        }
+
+
+        /* Class Operators */
+        @Override
+        public void run() {
+            ScheduledFuture<?> ticker = null;
+            SolverResult result;
+            final long startTime = System.nanoTime();
+            try {
+                // wait until the memory of the job is free (the queue is fair, so the big jobs are not starved)
+                memory.acquire(permits);
+                queued.decrementAndGet();
+                running.incrementAndGet();
+                try {
+                    if (solver.getBudget().isCancelled()) {
+                        connection.send(String.format("RESULT %d %s (%s) 0 0 0", id, Solver.Status.UNKNOWN,
+                                Budget.Reason.CANCELLED));
+                        return;
+                    }
+                    connection.send(String.format("STARTED %d", id));
+                    ticker = progress.scheduleAtFixedRate(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                connection.send(String.format("PROGRESS %d %d %d", id,
+                                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime),
+                                        solver.getBudget().getResolutions()));
+                            }
+                            catch (IOException e) {
+                                solver.cancel();
+                            }
+                        }
+                    }, PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+
+                    result = solver.run();
+                    ticker.cancel(false);
+                    connection.send(String.format("RESULT %d %s %d %d %d", id, result, result.getTime(),
+                            result.getResolutions(), result.getConflicts()));
+                    if (result.getModel() != null) {
+                        connection.send(String.format("MODEL %d %s", id, getModelLine(result.getModel())));
+                    }
+                }
+                finally {
+                    if (ticker != null) {
+                        ticker.cancel(false);
+                    }
+                    running.decrementAndGet();
+                    memory.release(permits);
+                }
+            }
+            catch (InterruptedException e) {
+                // the daemon is closed
+                queued.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+            catch (Exception e) {
+                try {
+                    connection.send(String.format("ERROR %d %s", id, e));
+                }
+                catch (IOException e1) {
+                    // the client is gone
+                }
+            }
+            finally {
+                jobs.remove(id);
+                connection.ids.remove(id);
+            }
+        }
+
+
+        /* Public Methods */
+        /**
+         * This method will cancel the job, whether it is queued or running
+         */
+        public void cancel() {
+            solver.cancel();
+        }
+
+
+        /* Private Methods */
+        /**
+         * @param model given model[v] = 1 (true) or -1 (false)
+         * @return the literals of the model in DIMACS, ending with 0
+         */
+        private String getModelLine(byte[] model) {
+            StringBuilder result = new StringBuilder();
+            for (int i = 1; i < model.length; i++) {
+                result.append((model[i] > 0) ? i : -i).append(' ');
+            }
+            return result.append('0').toString();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package tim.parallel;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ * This class holds the Java Flight Recorder events of the solver. They only carry numbers (and the name of a phase),
+ * so a recording can stay on in production: an event that is not enabled costs a check, and its fields are only set
+ * when it is going to be committed (see shouldCommit). The buckets are numbered from 1, as in the logs.
+ * Record them with e.g. -XX:StartFlightRecording=filename=solver.jfr and look for the "SAT Solver" category.
+ */
+public class SolverEvents {
+
+    /* Inner Classes */
+    /**
+     * This class is one phase of a run: Parse, Preprocess, Order, Buckets, Search or Model
+     */
+    @Name("tim.parallel.Phase")
+    @Label("Solver Phase")
+    @Category("SAT Solver")
+    @StackTrace(false)
+    public static class PhaseEvent extends Event {
+
+        /* Declare Variables */
+        @Label("Phase")
+        public String phase;
+
+        @Label("Variables")
+        public int variables;
+
+        @Label("Clauses")
+        @Description("The clauses at the end of the phase")
+        public long clauses;
+    }
+
+
+    /**
+     * This class is the elimination of one bucket, from the moment a thread starts it until all its tiles are done
+     */
+    @Name("tim.parallel.Bucket")
+    @Label("Bucket Elimination")
+    @Category("SAT Solver")
+    @StackTrace(false)
+    public static class BucketEvent extends Event {
+
+        /* Declare Variables */
+        @Label("Bucket")
+        public int bucket;
+
+        @Label("Positive Clauses")
+        public int posSize;
+
+        @Label("Negative Clauses")
+        public int negSize;
+
+        @Label("Pairs")
+        public long pairs;
+
+        @Label("Bound Hit")
+        public boolean isBoundHit;
+
+        @Label("Unsatisfiable")
+        @Description("The empty clause was found")
+        public boolean isUnsatisfiable;
+    }
+
+
+    /**
+     * This class is one tile of a bucket resolved by one thread, with the redistribution of its resolutions
+     */
+    @Name("tim.parallel.Tile")
+    @Label("Resolution Tile")
+    @Category("SAT Solver")
+    @StackTrace(false)
+    public static class TileEvent extends Event {
+
+        /* Declare Variables */
+        @Label("Bucket")
+        public int bucket;
+
+        @Label("Pairs")
+        public long pairs;
+
+        @Label("Tautologies")
+        public long tautologies;
+
+        @Label("Resolutions")
+        @Description("The resolutions staged for the other buckets")
+        public int resolutions;
+
+        @Label("Targets")
+        @Description("The buckets the resolutions went to")
+        public int targets;
+    }
+
+
+    /**
+     * This class is the union of the staged resolutions of a tile into one bucket (only the slow ones by default,
+     * they are the ones waiting for the locks)
+     */
+    @Name("tim.parallel.Union")
+    @Label("Bucket Union")
+    @Category("SAT Solver")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    public static class UnionEvent extends Event {
+
+        /* Declare Variables */
+        @Label("Bucket")
+        public int bucket;
+
+        @Label("Clauses")
+        public int clauses;
+    }
+}
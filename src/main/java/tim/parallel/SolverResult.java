@@ -0,0 +1,113 @@
+package tim.parallel;
+
+
+/**
+ * This class is the answer of one run of the Solver with the stats of the run.
+ * It is a snapshot: the solver can run again (or be dropped) without changing it.
+ */
+public class SolverResult {
+
+    /* Declare Variables */
+    private Solver.Status status;
+    private Budget.Reason reason;
+    private byte[] model;
+    private int variables;
+    private int clauses;
+    private long resolutions;
+    private long conflicts;
+    private long time;
+    private Metrics metrics;
+
+
+    /* Class Constructors */
+    SolverResult(Solver.Status status, Budget.Reason reason, byte[] model, int variables, int clauses,
+                 long resolutions, long conflicts, long time, Metrics metrics) {
+        this.status = status;
+        this.reason = reason;
+        this.model = model;
+        this.variables = variables;
+        this.clauses = clauses;
+        this.resolutions = resolutions;
+        this.conflicts = conflicts;
+        this.time = time;
+        this.metrics = metrics;
+    }
+
+
+    /* Class Operators */
+    @Override
+    public String toString() {
+        return (status == Solver.Status.UNKNOWN) ? String.format("%s (%s)", status, reason) : status.toString();
+    }
+
+
+    /* Getters & Setters */
+    public Solver.Status getStatus() {
+        return status;
+    }
+
+
+    /**
+     * @return why the run stopped when the answer is UNKNOWN (null otherwise)
+     */
+    public Budget.Reason getReason() {
+        return reason;
+    }
+
+
+    /**
+     * @return model[v] is 1 when variable v of the input is true and -1 when it is false (null unless the answer is
+     * satisfiable)
+     */
+    public byte[] getModel() {
+        return model;
+    }
+
+
+    /**
+     * @return the number of variables of the input (0 when the run stopped before reading it)
+     */
+    public int getVariables() {
+        return variables;
+    }
+
+
+    /**
+     * @return the number of clauses of the input, as given by the problem line
+     */
+    public int getClauses() {
+        return clauses;
+    }
+
+
+    /**
+     * @return the number of resolutions done by the elimination
+     */
+    public long getResolutions() {
+        return resolutions;
+    }
+
+
+    /**
+     * @return the number of conflicts of the CDCL search (0 unless the bound is hit)
+     */
+    public long getConflicts() {
+        return conflicts;
+    }
+
+
+    /**
+     * @return the wall time of the run in milliseconds
+     */
+    public long getTime() {
+        return time;
+    }
+
+
+    /**
+     * @return the metrics of the buckets (null unless the solver collects them)
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,360 @@
+package tim.parallel;
+
+import java.util.Arrays;
+
+
+/**
+ * This class finds subsumed clauses in one arena of a bucket (all the clauses start with the same key literal).
+ * Clause D subsumes clause C when D is a subset of C, so C is redundant and only costs resolution work.
+ * Every clause is watched by its first literal after the key and has a 64-bit signature of its literals,
+ * so a new clause is only compared with the clauses watched by one of its own literals whose signature fits.
+ * Watch lists longer than LIST_LIMIT are skipped so a check never turns into a scan of the whole bucket.
+ */
+public class SubsumptionIndex {
+
+    /* Declare Variables */
+    public static final int LIST_LIMIT = 1000;
+
+    private Clauses clauses;
+    private long[] signatures;
+    private int[] next;
+    private LiteralMap heads;
+    private boolean hasUnit;
+
+
+    /* Class Constructors */
+    public SubsumptionIndex(Clauses clauses) {
+        this.clauses = clauses;
+        signatures = new long[Clauses.INITIAL_CLAUSES];
+        next = new int[Clauses.INITIAL_CLAUSES];
+        heads = new LiteralMap();
+        hasUnit = false;
+    }
+
+
+    /* Public Methods */
+    /**
+     * This method will check whether a clause of the arena subsumes the given clause (forward subsumption)
+     * @param source given the array holding the literals (sorted, same key as the arena)
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return whether it is subsumed
+     */
+    public boolean isSubsumed(int[] source, int from, int length) {
+        // the unit clause of the key subsumes everything
+        if (hasUnit) {
+            return true;
+        }
+
+        long signature = getSignature(source, from, length);
+        int[] literals = clauses.getLiterals();
+        int slot, clause;
+        for (int i = from + 1; i < from + length; i++) {
+            slot = heads.find(source[i]);
+            if ((slot < 0) || (heads.counts[slot] > LIST_LIMIT)) {
+                continue;
+            }
+
+            // compare with the clauses watched by this literal
+            for (clause = heads.values[slot]; clause >= 0; clause = next[clause]) {
+                if (((signatures[clause] & ~signature) == 0) && (clauses.getLength(clause) <= length) &&
+                        isSubset(literals, clauses.getOffset(clause), clauses.getLength(clause), source, from,
+                                length)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * This method will start watching the clause that was just appended to the arena
+     * @param index given the arena index of the clause
+     */
+    public void add(int index) {
+        if (index >= next.length) {
+            next = Arrays.copyOf(next, Math.max(index + 1, next.length * 2));
+            signatures = Arrays.copyOf(signatures, next.length);
+        }
+
+        int[] literals = clauses.getLiterals();
+        int from = clauses.getOffset(index);
+        int length = clauses.getLength(index);
+        signatures[index] = getSignature(literals, from, length);
+        if (length == 1) {
+            hasUnit = true;
+            next[index] = -1;
+            return;
+        }
+
+        // push the clause in front of the watch list of its second literal
+        int slot = heads.findOrAdd(literals[from + 1]);
+        next[index] = heads.values[slot];
+        heads.values[slot] = index;
+        heads.counts[slot]++;
+    }
+
+
+    /**
+     * This method will find all the clauses of the arena that are subsumed by another one (backward subsumption).
+     * The clauses are checked from the shortest, and each one only looks at the clauses that contain its rarest
+     * literal.
+     * @param clauses given the arena (all the clauses start with the same key, no duplicates)
+     * @return isRemoved[i] tells whether clause i is subsumed (null when none is)
+     */
+    public static boolean[] getSubsumed(Clauses clauses) {
+        int size = clauses.size();
+        int[] literals = clauses.getLiterals();
+        boolean[] isRemoved = null;
+        int i, j, from, length, slot, best, count;
+
+        // the unit clause of the key subsumes all the others
+        for (i = 0; i < size; i++) {
+            if (clauses.getLength(i) == 1) {
+                if (size == 1) {
+                    return null;
+                }
+                isRemoved = new boolean[size];
+                Arrays.fill(isRemoved, true);
+                isRemoved[i] = false;
+                return isRemoved;
+            }
+        }
+
+        // build the occurrence lists of the literals after the key
+        LiteralMap occurrences = new LiteralMap();
+        int[] occurrenceClause = new int[clauses.getOffset(size)];
+        int[] occurrenceNext = new int[occurrenceClause.length];
+        long[] signatures = new long[size];
+        int occurrenceSize = 0;
+        for (i = 0; i < size; i++) {
+            from = clauses.getOffset(i);
+            length = clauses.getLength(i);
+            signatures[i] = getSignature(literals, from, length);
+            for (j = from + 1; j < from + length; j++) {
+                slot = occurrences.findOrAdd(literals[j]);
+                occurrenceClause[occurrenceSize] = i;
+                occurrenceNext[occurrenceSize] = occurrences.values[slot];
+                occurrences.values[slot] = occurrenceSize++;
+                occurrences.counts[slot]++;
+            }
+        }
+
+        // check from the shortest clauses (counting sort by length)
+        int[] order = getOrderByLength(clauses);
+        int clause, candidate, occurrence;
+        for (i = 0; i < size; i++) {
+            clause = order[i];
+            if ((isRemoved != null) && isRemoved[clause]) {
+                continue;
+            }
+
+            // pick the rarest literal of the clause
+            from = clauses.getOffset(clause);
+            length = clauses.getLength(clause);
+            best = -1;
+            count = Integer.MAX_VALUE;
+            for (j = from + 1; j < from + length; j++) {
+                slot = occurrences.find(literals[j]);
+                if (occurrences.counts[slot] < count) {
+                    count = occurrences.counts[slot];
+                    best = slot;
+                }
+            }
+            if (count > LIST_LIMIT) {
+                continue;
+            }
+
+            // every clause it subsumes contains that literal
+            for (occurrence = occurrences.values[best]; occurrence >= 0; occurrence = occurrenceNext[occurrence]) {
+                candidate = occurrenceClause[occurrence];
+                if ((candidate != clause) && ((signatures[clause] & ~signatures[candidate]) == 0) &&
+                        (clauses.getLength(candidate) > length) &&
+                        ((isRemoved == null) || !isRemoved[candidate]) &&
+                        isSubset(literals, from, length, literals, clauses.getOffset(candidate),
+                                clauses.getLength(candidate))) {
+                    if (isRemoved == null) {
+                        isRemoved = new boolean[size];
+                    }
+                    isRemoved[candidate] = true;
+                }
+            }
+        }
+
+        return isRemoved;
+    }
+
+
+    /**
+     * This method will check whether the 1st clause is a subset of the 2nd one (both sorted by variable)
+     * @param source1 given the array holding the 1st clause
+     * @param from1 index of its first literal
+     * @param length1 its number of literals
+     * @param source2 given the array holding the 2nd clause
+     * @param from2 index of its first literal
+     * @param length2 its number of literals
+     * @return whether every literal of the 1st clause is in the 2nd one
+     */
+    public static boolean isSubset(int[] source1, int from1, int length1, int[] source2, int from2, int length2) {
+        int j = from2;
+        int end2 = from2 + length2;
+        for (int i = from1; i < from1 + length1; i++) {
+            while ((j < end2) && (source2[j] < source1[i])) {
+                j++;
+            }
+            if ((j == end2) || (source2[j] != source1[i])) {
+                return false;
+            }
+            j++;
+        }
+        return true;
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will compute the signature of a clause (one bit per literal modulo 64)
+     * @param source given the array holding the literals
+     * @param from index of the first literal
+     * @param length number of literals
+     * @return the signature
+     */
+    private static long getSignature(int[] source, int from, int length) {
+        long result = 0;
+        for (int i = from; i < from + length; i++) {
+            result |= 1L << (source[i] & 63);
+        }
+        return result;
+    }
+
+
+    /**
+     * This method will sort the clause indexes by length (counting sort)
+     * @param clauses given the arena
+     * @return the clause indexes from the shortest clause
+     */
+    private static int[] getOrderByLength(Clauses clauses) {
+        int size = clauses.size();
+        int maxLength = 0;
+        int i;
+        for (i = 0; i < size; i++) {
+            maxLength = Math.max(maxLength, clauses.getLength(i));
+        }
+
+        int[] starts = new int[maxLength + 2];
+        for (i = 0; i < size; i++) {
+            starts[clauses.getLength(i) + 1]++;
+        }
+        for (i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        int[] result = new int[size];
+        for (i = 0; i < size; i++) {
+            result[starts[clauses.getLength(i)]++] = i;
+        }
+        return result;
+    }
+
+
+    /* Getters & Setters */
+    /**
+     * @return the bytes held by the index
+     */
+    public long getMemorySize() {
+        return 12L * next.length + 12L * heads.keys.length;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class is an open-addressing map from a literal to the head of its list and the length of the list
+     */
+    private static class LiteralMap {
+
+        /* Declare Variables */
+        private int[] keys;
+        private int[] values;
+        private int[] counts;
+        private int size;
+
+
+        /* Class Constructors */
+        private LiteralMap() {
+            keys = new int[16];
+            values = new int[16];
+            counts = new int[16];
+            size = 0;
+        }
+
+
+        /* Private Methods */
+        /**
+         * @param literal given the literal (never 0)
+         * @return the slot of the literal or -1
+         */
+        private int find(int literal) {
+            int mask = keys.length - 1;
+            int slot = (literal * 0x9E3779B9) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == literal) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+
+        /**
+         * @param literal given the literal (never 0)
+         * @return the slot of the literal (a new one has an empty list)
+         */
+        private int findOrAdd(int literal) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            int mask = keys.length - 1;
+            int slot = (literal * 0x9E3779B9) & mask;
+            while (keys[slot] != 0) {
+                if (keys[slot] == literal) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            keys[slot] = literal;
+            values[slot] = -1;
+            counts[slot] = 0;
+            size++;
+            return slot;
+        }
+
+
+        private void resize() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            int[] oldCounts = counts;
+            keys = new int[oldKeys.length * 2];
+            values = new int[keys.length];
+            counts = new int[keys.length];
+
+            int mask = keys.length - 1;
+            int slot;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    slot = (oldKeys[i] * 0x9E3779B9) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    counts[slot] = oldCounts[i];
+                }
+            }
+        }
+    }
+}
@@ -1,177 +1,564 @@
 package tim.parallel;
 
-import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
- * This class will handle the resolution and redistribution task for each thread/worker.
+ * This class will handle the resolution and redistribution task for a tile of a bucket, a range of positive clauses
+ * times a range of negative clauses, split in half (fork/join) while it is big.
+ * It returns true when the empty clause is found.
  */
-public class WorkerTask implements Callable<Boolean> {
+public class WorkerTask extends RecursiveTask<Boolean> {
 
     /* Declare Variables */
+    private static final long serialVersionUID = 1L;
+
     public static final Random random = new Random();
+    public static final long TILE_PAIRS = 1 << 16;
+
+    private static final ThreadLocal<Staging> stagings = new ThreadLocal<Staging>() {
+        @Override
+        protected Staging initialValue() {
+            return new Staging();
+        }
+    };
 
-    private Map<Integer,Bucket> data;
+    private Staging staging;
     private Bucket[] buckets;
-    private Iterator<int[]> posData;
-    private int[][] negData;
+    private Clauses posData;
+    private Clauses negData;
+    private int posFrom;
+    private int posTo;
+    private int negFrom;
+    private int negTo;
     private int maxResolutionSize;
+    private AtomicLong resolutionCount;
+    private long resolutionLimit;
+    private long resolutions;
+    private long pairs;
+    private long tautologies;
+    private Budget budget;
+    private BucketMetrics metrics;
 
 
     /* Class Constructors */
-    public WorkerTask(int maxResolutionSize, int[][] negData, Iterator<int[]> posData, Bucket[] buckets) {
+    /**
+     * The task resolves every pair of the whole bucket
+     * @param maxResolutionSize the longest resolution possible in this bucket
+     * @param posData given the positive clauses of the bucket
+     * @param negData given the negative clauses of the bucket
+     * @param buckets given all the buckets
+     */
+    public WorkerTask(int maxResolutionSize, Clauses posData, Clauses negData, Bucket[] buckets) {
+        this(maxResolutionSize, posData, 0, posData.size(), negData, 0, negData.size(), buckets, null,
+                Long.MAX_VALUE, new Budget());
+    }
+
+
+    /**
+     * The task resolves every pair of the whole bucket, and stops once the number of resolutions is over the limit
+     * @param maxResolutionSize the longest resolution possible in this bucket
+     * @param posData given the positive clauses of the bucket
+     * @param negData given the negative clauses of the bucket
+     * @param buckets given all the buckets
+     * @param resolutionCount given the counter of resolutions (shared by all the tiles)
+     * @param resolutionLimit given the number of resolutions to stop at
+     */
+    public WorkerTask(int maxResolutionSize, Clauses posData, Clauses negData, Bucket[] buckets,
+                      AtomicLong resolutionCount, long resolutionLimit) {
+        this(maxResolutionSize, posData, negData, buckets, resolutionCount, resolutionLimit, new Budget());
+    }
+
+
+    /**
+     * The task resolves every pair of the whole bucket, and stops once the number of resolutions is over the limit or
+     * the budget of the run is stopped
+     * @param maxResolutionSize the longest resolution possible in this bucket
+     * @param posData given the positive clauses of the bucket
+     * @param negData given the negative clauses of the bucket
+     * @param buckets given all the buckets
+     * @param resolutionCount given the counter of resolutions (shared by all the tiles)
+     * @param resolutionLimit given the number of resolutions to stop at
+     * @param budget given the budget of the run
+     */
+    public WorkerTask(int maxResolutionSize, Clauses posData, Clauses negData, Bucket[] buckets,
+                      AtomicLong resolutionCount, long resolutionLimit, Budget budget) {
+        this(maxResolutionSize, posData, 0, posData.size(), negData, 0, negData.size(), buckets, resolutionCount,
+                resolutionLimit, budget);
+    }
+
+
+    /**
+     * The task resolves the positive clauses [posFrom, posTo) against the negative clauses [negFrom, negTo)
+     * @param maxResolutionSize the longest resolution possible in this bucket
+     * @param posData given the positive clauses of the bucket
+     * @param posFrom first positive clause
+     * @param posTo end of the positive clauses (exclusive)
+     * @param negData given the negative clauses of the bucket
+     * @param negFrom first negative clause
+     * @param negTo end of the negative clauses (exclusive)
+     * @param buckets given all the buckets
+     * @param resolutionCount given the counter of resolutions (null when unbounded)
+     * @param resolutionLimit given the number of resolutions to stop at
+     * @param budget given the budget of the run
+     */
+    public WorkerTask(int maxResolutionSize, Clauses posData, int posFrom, int posTo, Clauses negData, int negFrom,
+                      int negTo, Bucket[] buckets, AtomicLong resolutionCount, long resolutionLimit, Budget budget) {
         this.maxResolutionSize = maxResolutionSize;
-        this.negData = negData;
         this.posData = posData;
+        this.posFrom = posFrom;
+        this.posTo = posTo;
+        this.negData = negData;
+        this.negFrom = negFrom;
+        this.negTo = negTo;
         this.buckets = buckets;
-        data = new HashMap<>();
+        this.resolutionCount = resolutionCount;
+        this.resolutionLimit = resolutionLimit;
+        this.budget = budget;
     }
 
 
     /* Class Operators */
+    /**
+     * This method will split a big tile along its longer side and resolve the halves, so idle threads steal them and
+     * every thread stays busy whatever the clause lengths are
+     * @return true if the empty clause is found
+     */
     @Override
-    public Boolean call() {
+    protected Boolean compute() {
+        // don't split a stopped run any further
+        if (budget.isStopped()) {
+            return false;
+        }
+
+        // split big tiles along the longer side
+        long pairs = (long) (posTo - posFrom) * (negTo - negFrom);
+        if (pairs > TILE_PAIRS) {
+            WorkerTask first, second;
+            if (posTo - posFrom >= negTo - negFrom) {
+                int posMiddle = posFrom + (posTo - posFrom) / 2;
+                first = new WorkerTask(maxResolutionSize, posData, posFrom, posMiddle, negData, negFrom, negTo,
+                        buckets, resolutionCount, resolutionLimit, budget);
+                second = new WorkerTask(maxResolutionSize, posData, posMiddle, posTo, negData, negFrom, negTo,
+                        buckets, resolutionCount, resolutionLimit, budget);
+            }
+            else {
+                int negMiddle = negFrom + (negTo - negFrom) / 2;
+                first = new WorkerTask(maxResolutionSize, posData, posFrom, posTo, negData, negFrom, negMiddle,
+                        buckets, resolutionCount, resolutionLimit, budget);
+                second = new WorkerTask(maxResolutionSize, posData, posFrom, posTo, negData, negMiddle, negTo,
+                        buckets, resolutionCount, resolutionLimit, budget);
+            }
+
+            // let other threads steal the first half while doing the second one
+            first.metrics = metrics;
+            second.metrics = metrics;
+            first.fork();
+            boolean isUnsatisfiable = second.compute();
+            return first.join() || isUnsatisfiable;
+        }
+
+        return resolve();
+    }
+
+
+    /* Private Methods */
+    /**
+     * This method will do the resolution on this tile and redistribute the resolutions.
+     * When the run collects metrics, the counts of the tile (pairs, tautologies, time and allocated bytes) are added
+     * to the metrics of the bucket once it is done. The tile is also a flight recorder event (see SolverEvents), whose
+     * fields are only set when it is recorded.
+     * @return true if the empty clause is found
+     */
+    private boolean resolve() {
+        SolverEvents.TileEvent event = new SolverEvents.TileEvent();
+        long startTime = 0;
+        long allocatedBytes = 0;
+
+        // don't start when the bound is already hit or the run is stopped
+        if (isOverLimit()) {
+            return false;
+        }
+        if (metrics != null) {
+            startTime = System.nanoTime();
+            allocatedBytes = Metrics.getAllocatedBytes();
+        }
+        event.begin();
+
+        // the staging of this thread is empty between two tiles
+        staging = stagings.get();
+        staging.reset(buckets.length);
+        try {
+            return resolveStaged();
+        }
+        finally {
+            if (event.shouldCommit()) {
+                event.bucket = posData.getLiterals()[posData.getOffset(posFrom)] >>> 1;
+                event.pairs = pairs;
+                event.tautologies = tautologies;
+                event.resolutions = staging.arena.size();
+                event.targets = staging.targetCount;
+                event.commit();
+            }
+            staging.clear();
+            staging = null;
+            if (metrics != null) {
+                metrics.addTile(pairs, tautologies, System.nanoTime() - startTime,
+                        Metrics.getAllocatedBytes() - allocatedBytes);
+            }
+        }
+    }
+
+
+    /**
+     * This method will do the resolution on this tile into the staging and then add the resolutions to their buckets.
+     * Two clauses of 2 or 3 literals are resolved from their packed form by resolveShort, so the loop doesn't allocate.
+     * @return true if the empty clause is found
+     */
+    private boolean resolveStaged() {
         // init necessary variables
-        int[] resolutionTmp = new int[maxResolutionSize];
-        int[] posClause, negClause, resolution;
-        int i, j, posIndex, negIndex, posItem, negItem, resolutionLength;
-        boolean isTrueClause, isSpecialCase;
+        int[] resolutionTmp = staging.getBuffer(maxResolutionSize);
+        int[] posLiterals = posData.getLiterals();
+        int[] negLiterals = negData.getLiterals();
+        long[] posPacked = posData.getPacked();
+        long[] negPacked = negData.getPacked();
+        int posClause, negClause, posStart, posEnd, negStart, negEnd, posLength, negLength;
+        int j, posIndex, negIndex, posItem, negItem, resolutionLength;
+        long posShort, negShort;
+        boolean isTrueClause;
 
         // do resolution on this bucket
-        while (posData.hasNext()) {
+        for (posClause = posFrom; posClause < posTo; posClause++) {
+            // stop in bounded mode or when the run is stopped (the count is reported once per positive clause)
+            if (isOverLimit()) {
+                return false;
+            }
+            pairs += negTo - negFrom;
+
             // get posClause
-            posClause = posData.next();
-            
+            posStart = posData.getOffset(posClause);
+            posLength = posData.getLength(posClause);
+            posEnd = posStart + posLength;
+            posShort = posPacked[posClause];
+
             // loop through the negData for negClause
-            for (i = 0; i < negData.length; i++) {
+            for (negClause = negFrom; negClause < negTo; negClause++) {
+                // handle two short clauses (neither is NOT_PACKED, so neither is negative)
+                negShort = negPacked[negClause];
+                if ((posShort | negShort) >= 0) {
+                    resolutionLength = resolveShort(posShort, negShort, resolutionTmp);
+                    if (resolutionLength > 0) {
+                        addToBucket(resolutionTmp, 0, resolutionLength);
+                    }
+                    else {
+                        tautologies++;
+                    }
+                    continue;
+                }
+
                 // get negClause
-                negClause = negData[i];
+                negStart = negData.getOffset(negClause);
+                negLength = negData.getLength(negClause);
+                negEnd = negStart + negLength;
 
                 // handle special clause (bad resolution)
-                if ((posClause.length == 1) && (negClause.length == 1)) {
+                if ((posLength == 1) && (negLength == 1)) {
+                    budget.stop(Budget.Reason.EMPTY_CLAUSE);
                     return true;
                 }
 
                 // handle posClause length 1
-                if (posClause.length == 1) {
-                    resolution = new int[negClause.length - 1];
-                    for (j = 0; j < resolution.length; j++) {
-                        resolution[j] = negClause[j+1];
-                    }
-
+                if (posLength == 1) {
                     // add resolution to bucket
-                    addToBucket(resolution);
+                    addToBucket(negLiterals, negStart + 1, negLength - 1);
                 }
                 // handle negClause length 1
-                else if (negClause.length == 1) {
-                    resolution = new int[posClause.length - 1];
-                    for (j = 0; j < resolution.length; j++) {
-                        resolution[j] = posClause[j+1];
-                    }
-
+                else if (negLength == 1) {
                     // add resolution to bucket
-                    addToBucket(resolution);
+                    addToBucket(posLiterals, posStart + 1, posLength - 1);
                 }
                 // handle when both negClause and posClause > 1
                 else {
                     // loop over posClause and negClause for resolutionLength (ignore the first item)
                     resolutionLength = 0;
-                    posIndex = 1;
-                    negIndex = 1;
+                    posIndex = posStart + 1;
+                    negIndex = negStart + 1;
                     isTrueClause = false;
-                    while ((posIndex < posClause.length) &&  (negIndex < negClause.length)) {
-                        // handle true clauses
-                        if (posClause[posIndex] == -negClause[negIndex]) {
+                    while ((posIndex < posEnd) && (negIndex < negEnd)) {
+                        posItem = posLiterals[posIndex];
+                        negItem = negLiterals[negIndex];
+
+                        // handle true clauses (a literal and its negation only differ in the low bit)
+                        if ((posItem ^ negItem) == 1) {
                             isTrueClause = true;
                             break;
                         }
 
-                        // convert items to positive
-                        posItem = (posClause[posIndex] < 0) ? -posClause[posIndex] : posClause[posIndex];
-                        negItem = (negClause[negIndex] < 0) ? -negClause[negIndex] : negClause[negIndex];
-
-                        // add small items first
-                        if (posItem < negItem) {
-                            resolutionTmp[resolutionLength++] = posClause[posIndex++];
-                        }
-                        else if (posItem > negItem) {
-                            resolutionTmp[resolutionLength++] = negClause[negIndex++];
-                        }
-                        else {
-                            resolutionTmp[resolutionLength++] = posClause[posIndex++];
-                            negIndex++;
-                        }
+                        // add small items first (the literals are encoded, so the int order is the variable order)
+                        resolutionTmp[resolutionLength++] = Math.min(posItem, negItem);
+                        posIndex += (posItem <= negItem) ? 1 : 0;
+                        negIndex += (negItem <= posItem) ? 1 : 0;
                     }
 
                     // don't add true clauses
                     if (!isTrueClause) {
                         // add left over items
-                        for (j = posIndex; j < posClause.length; j++) {
-                            resolutionTmp[resolutionLength++] = posClause[j];
+                        for (j = posIndex; j < posEnd; j++) {
+                            resolutionTmp[resolutionLength++] = posLiterals[j];
                         }
-                        for (j = negIndex; j < negClause.length; j++) {
-                            resolutionTmp[resolutionLength++] = negClause[j];
-                        }
-
-                        // create resolution
-                        resolution = new int[resolutionLength];
-                        for (j = 0; j < resolutionLength; j++) {
-                            resolution[j] = resolutionTmp[j];
+                        for (j = negIndex; j < negEnd; j++) {
+                            resolutionTmp[resolutionLength++] = negLiterals[j];
                         }
 
                         // add resolution to bucket
-                        addToBucket(resolution);
+                        addToBucket(resolutionTmp, 0, resolutionLength);
+                    }
+                    else {
+                        tautologies++;
                     }
                 }
             }
         }
 
         // do distribution to the right bucket randomly
-        redistributeData();
+        staging.flush(buckets, budget, metrics);
 
         return false;
     }
 
 
-    /* Private Methods */
     /**
-     * This method will add the clause into the right bucket in data
-     * @param clause given the clause (must be sorted)
+     * This method will resolve two packed clauses of 2 or 3 literals (see Clauses.getPacked).
+     * The other literals of each clause are sorted and 0 stands for a missing one, so the two pairs are merged with
+     * the 3 compare-exchanges of a Batcher merge, and the duplicates and the negations end up next to each other.
+     * @param posShort given the packed positive clause
+     * @param negShort given the packed negative clause
+     * @param result given the buffer to write the resolution to (room for all the literals)
+     * @return the length of the resolution, or 0 when it is always true
+     */
+    public static int resolveShort(long posShort, long negShort, int[] result) {
+        int literal0 = (int) (posShort >>> 32);
+        int literal1 = (int) posShort;
+        int literal2 = (int) (negShort >>> 32);
+        int literal3 = (int) negShort;
+        int smaller, length;
+
+        // the missing literals go to the end
+        literal1 = (literal1 == 0) ? Integer.MAX_VALUE : literal1;
+        literal3 = (literal3 == 0) ? Integer.MAX_VALUE : literal3;
+
+        // merge (0, 1) with (2, 3)
+        smaller = Math.min(literal0, literal2);
+        literal2 = Math.max(literal0, literal2);
+        literal0 = smaller;
+        smaller = Math.min(literal1, literal3);
+        literal3 = Math.max(literal1, literal3);
+        literal1 = smaller;
+        smaller = Math.min(literal1, literal2);
+        literal2 = Math.max(literal1, literal2);
+        literal1 = smaller;
+
+        // the first literal is always there
+        result[0] = literal0;
+        length = 1;
+        length = appendShort(literal1, result, length);
+        if (length > 0) {
+            length = appendShort(literal2, result, length);
+        }
+        if (length > 0) {
+            length = appendShort(literal3, result, length);
+        }
+        return length;
+    }
+
+
+    /**
+     * This method will append the next sorted literal to the resolution of resolveShort
+     * @param literal given the literal (Integer.MAX_VALUE when missing)
+     * @param result given the resolution so far
+     * @param length given its length
+     * @return the new length, or 0 when the literal is the negation of the last one
      */
-    private void addToBucket(int[] clause) {
-        int key = (clause[0] < 0) ? -clause[0] : clause[0];
-        Clauses.ClauseType clauseType = (clause[0] < 0) ? Clauses.ClauseType.NEGATIVE : Clauses.ClauseType.POSITIVE;
-        
-        // handle when key doesn't exist 
-        Bucket b = data.get(key);
-        if (b == null) {
-            Bucket bucket = new Bucket();
-            bucket.add(clause, clauseType);
-            data.put(key, bucket);
-        } else {
-        	b.add(clause, clauseType);
+    private static int appendShort(int literal, int[] result, int length) {
+        int last = result[length - 1];
+        if ((literal == Integer.MAX_VALUE) || (literal == last)) {
+            return length;
         }
+        if ((literal ^ last) == 1) {
+            return 0;
+        }
+        result[length] = literal;
+        return length + 1;
+    }
+
+
+    /**
+     * This method will report the resolutions done since the last call to the shared counters and check the limits.
+     * In bounded mode all the tiles of a bucket share the counter, so they stop soon after it goes over the limit (the
+     * resolutions added so far are still implied by the formula, so they can stay).
+     * All the tiles of a run share the Budget, so they all give up soon after one of them stops it, e.g. when a tile
+     * finds the empty clause.
+     * @return whether the bound of the bucket is hit (never in unbounded mode) or the run is stopped
+     */
+    private boolean isOverLimit() {
+        boolean result = budget.check(resolutions);
+        if (resolutionCount != null) {
+            result |= resolutionCount.addAndGet(resolutions) > resolutionLimit;
+        }
+        resolutions = 0;
+        return result;
+    }
+
+
+    /**
+     * This method will stage the clause for the right bucket (the literals are copied, so the source can be reused)
+     * @param source given the array holding the clause (must be sorted)
+     * @param from index of the first literal
+     * @param length number of literals
+     */
+    private void addToBucket(int[] source, int from, int length) {
+        // a resolution over the width limit stops the run (the loop sees it at the next positive clause)
+        if (budget.checkWidth(length)) {
+            return;
+        }
+        resolutions++;
+        staging.add(source, from, length);
     }
 
 
+    /* Getters & Setters */
     /**
-     * This method will redistribute the data to the right bucket using 'union'
+     * @param metrics given the metrics of the bucket, filled by every tile of this task (null to not collect them)
      */
-    private void redistributeData() {
-        // base case
-    	if (data.size() == 0)
-    	    return;
-
-        // random the values in data
-        List<Object> values = Arrays.asList((Object[]) data.values().toArray());
-        Collections.shuffle(values);
-
-        // loop through values and union to the right bucket
-        Bucket bucket;
-        for (Object obj : values) {
-            bucket = (Bucket) obj;
-            buckets[bucket.getKey() - 1].union(bucket);
+    public void setMetrics(BucketMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+
+    /* Inner Classes */
+    /**
+     * This class holds the resolutions of the tile a thread is working on: a bump arena of clauses, the hash of each
+     * one, and for each target variable a chain of its clauses (heads[v] is the last clause + 1, 0 when none).
+     * Everything only grows and is reset after each tile, so a thread reuses the same arrays for the whole run and
+     * the resolution loop makes no garbage.
+     */
+    private static class Staging {
+
+        /* Declare Variables */
+        private Clauses arena = new Clauses(1 << 10, 1 << 12);
+        private long[] hashes = new long[1 << 10];
+        private int[] next = new int[1 << 10];
+        private int[] heads = new int[0];
+        private int[] targets = new int[16];
+        private int targetCount = 0;
+        private int[] indexes = new int[1 << 10];
+        private int[] buffer = new int[16];
+
+
+        /* Private Methods */
+        /**
+         * This method will make room for a target of each variable
+         * @param variables given the number of variables
+         */
+        private void reset(int variables) {
+            if (heads.length <= variables) {
+                heads = new int[variables + 1];
+            }
+        }
+
+
+        /**
+         * @param size given the number of literals needed
+         * @return a buffer of this thread that holds at least size literals
+         */
+        private int[] getBuffer(int size) {
+            if (buffer.length < size) {
+                buffer = new int[Math.max(size, buffer.length * 2)];
+            }
+            return buffer;
+        }
+
+
+        /**
+         * This method will append the clause to the arena and to the chain of its bucket
+         * @param source given the array holding the clause (must be sorted)
+         * @param from index of the first literal
+         * @param length number of literals
+         */
+        private void add(int[] source, int from, int length) {
+            int key = source[from] >>> 1;
+            int index = arena.add(source, from, length);
+            if (hashes.length <= index) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                next = Arrays.copyOf(next, next.length * 2);
+            }
+            hashes[index] = ClauseSet.hash(source, from, length);
+
+            // a new target goes to the list of targets
+            if (heads[key] == 0) {
+                if (targets.length == targetCount) {
+                    targets = Arrays.copyOf(targets, targetCount * 2);
+                }
+                targets[targetCount++] = key;
+            }
+            next[index] = heads[key];
+            heads[key] = index + 1;
+        }
+
+
+        /**
+         * This method will add the staged clauses to their buckets, the targets in a random rotation so that the
+         * threads spread over them (nothing more is added once the run is stopped, e.g. over the heap limit).
+         * Each union is a flight recorder event (see SolverEvents), and its count goes to the metrics of the target.
+         * @param buckets given all the buckets
+         * @param budget given the budget of the run
+         * @param metrics given the metrics of the bucket being processed (null when not collected)
+         */
+        private void flush(Bucket[] buckets, Budget budget, BucketMetrics metrics) {
+            int first = (targetCount == 0) ? 0 : ThreadLocalRandom.current().nextInt(targetCount);
+            int i, key, count, index;
+            SolverEvents.UnionEvent event;
+            if (budget.checkMemory()) {
+                return;
+            }
+            if (indexes.length < arena.size()) {
+                indexes = new int[Math.max(arena.size(), indexes.length * 2)];
+            }
+
+            for (i = 0; (i < targetCount) && !budget.isStopped(); i++) {
+                key = targets[(first + i) % targetCount];
+                count = 0;
+                for (index = heads[key]; index != 0; index = next[index - 1]) {
+                    indexes[count++] = index - 1;
+                }
+                event = new SolverEvents.UnionEvent();
+                event.begin();
+                buckets[key - 1].addAll(arena, hashes, indexes, count);
+                if (event.shouldCommit()) {
+                    event.bucket = key;
+                    event.clauses = count;
+                    event.commit();
+                }
+                if (metrics != null) {
+                    metrics.addResolvents(key - 1, count);
+                }
+            }
+        }
+
+
+        /**
+         * This method will empty the staging (the arrays are kept)
+         */
+        private void clear() {
+            for (int i = 0; i < targetCount; i++) {
+                heads[targets[i]] = 0;
+            }
+            targetCount = 0;
+            arena.clear();
         }
     }
 }
@@ -1,8 +1,54 @@
 import org.junit.Assert;
 import org.junit.Test;
+import tim.LiteralSort;
 import tim.QuickSort;
 import tim.parallel.Bucket;
+import tim.parallel.BucketArchive;
+import tim.parallel.BucketMetrics;
+import tim.parallel.BucketStore;
+import tim.parallel.Budget;
+import tim.parallel.CdclSolver;
+import tim.parallel.Checkpoint;
+import tim.parallel.ClauseSet;
 import tim.parallel.Clauses;
+import tim.parallel.DimacsParser;
+import tim.parallel.EliminationOrder;
+import tim.parallel.Formula;
+import tim.parallel.Literal;
+import tim.parallel.Preprocessor;
+import tim.parallel.Solver;
+import tim.parallel.SolverDaemon;
+import tim.parallel.SolverResult;
+import tim.parallel.WorkerTask;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
@@ -24,4 +70,934 @@ public class SimpleTests {
         Assert.assertArrayEquals(test2, result2);
         Assert.assertArrayEquals(test3, result3);
     }
+
+
+    @Test
+    public void testLiteralSort() {
+        // every path (network, insertion, radix) sorts the encoded literals, and drops the duplicates
+        Random random = new Random(7);
+        int[] data, expected, clause;
+        int length, variables, size, i;
+        for (length = 0; length < 200; length++) {
+            variables = (length % 3 == 0) ? 2 * length + 1 : 1 << 24;
+            data = new int[length + 2];
+            for (i = 0; i < length; i++) {
+                data[i + 1] = Literal.fromDimacs((1 + random.nextInt(variables)) * (random.nextBoolean() ? 1 : -1));
+            }
+            expected = Arrays.copyOfRange(data, 1, length + 1);
+            clause = Arrays.copyOf(expected, expected.length);
+            Arrays.sort(expected);
+            LiteralSort.sort(data, 1, length);
+            Assert.assertArrayEquals(expected, Arrays.copyOfRange(data, 1, length + 1));
+
+            // normalize drops the duplicates, or finds the tautology
+            size = (expected.length == 0) ? 0 : 1;
+            for (i = 1; (i < expected.length) && (size >= 0); i++) {
+                if (expected[i] == Literal.negate(expected[size - 1])) {
+                    size = -1;
+                }
+                else if (expected[i] != expected[size - 1]) {
+                    expected[size++] = expected[i];
+                }
+            }
+            Assert.assertEquals(size, LiteralSort.normalize(clause, 0, clause.length));
+            if (size >= 0) {
+                Assert.assertArrayEquals(Arrays.copyOf(expected, size), Arrays.copyOf(clause, size));
+            }
+        }
+
+        Assert.assertEquals(-1, LiteralSort.normalize(Literal.fromDimacs(new int[] {3, -2, -3}), 0, 3));
+        Assert.assertEquals(-1, LiteralSort.normalize(Literal.fromDimacs(new int[] {-3, 5, 1, 2, 3, 9}), 0, 6));
+        data = Literal.fromDimacs(new int[] {4, 4, -1, 4});
+        Assert.assertEquals(2, LiteralSort.normalize(data, 0, 4));
+        Assert.assertArrayEquals(new int[] {-1, 4}, Literal.toDimacs(Arrays.copyOf(data, 2)));
+        Assert.assertArrayEquals(new int[] {2, 3, 4, 5}, Literal.fromDimacs(new int[] {-1, 1, -2, 2}));
+    }
+
+
+    @Test
+    public void testClausesArena() {
+        Clauses clauses = new Clauses(1, 1);
+        int[] source = {9, 1, 2, 3, 9};
+        Assert.assertEquals(0, clauses.add(new int[] {-1, 2}));
+        Assert.assertEquals(1, clauses.add(source, 1, 3));
+        Assert.assertEquals(2, clauses.add(new int[] {4}));
+        Assert.assertEquals(3, clauses.size());
+        Assert.assertEquals(3, clauses.getLength(1));
+        Assert.assertArrayEquals(new int[] {1, 2, 3}, clauses.get(1));
+        Assert.assertArrayEquals(new int[] {4}, clauses.pop());
+        Assert.assertArrayEquals(new int[] {-1, 2}, clauses.get(0));
+        Assert.assertEquals(2, clauses.size());
+    }
+
+
+    @Test
+    public void testShortResolution() {
+        Random random = new Random(7);
+        Clauses posClauses = new Clauses();
+        Clauses negClauses = new Clauses();
+        int[] clause, expected;
+        int[] result = new int[4];
+        long[] posPacked, negPacked;
+        int i, j, length;
+
+        // short clauses of variable 1 over 4 more variables, so that duplicates and negations are common
+        for (i = 0; i < 50; i++) {
+            clause = new int[2 + random.nextInt(2)];
+            for (j = 1; j < clause.length; j++) {
+                clause[j] = Literal.fromDimacs(random.nextBoolean() ? 2 + random.nextInt(4) : -2 - random.nextInt(4));
+            }
+            length = LiteralSort.normalize(clause, 1, clause.length - 1);
+            if (length > 0) {
+                clause[0] = Literal.fromDimacs(1);
+                posClauses.add(clause, 0, length + 1);
+                clause[0] = Literal.fromDimacs(-1);
+                negClauses.add(clause, 0, length + 1);
+            }
+        }
+        negClauses.add(Literal.fromDimacs(new int[] {-1, 2, 3, 4}));
+        posPacked = posClauses.getPacked();
+        negPacked = negClauses.getPacked();
+        Assert.assertEquals(Clauses.NOT_PACKED, negPacked[negClauses.size() - 1]);
+
+        // compare with the other literals of both clauses normalized
+        for (i = 0; i < posClauses.size(); i++) {
+            for (j = 0; j < posClauses.size(); j++) {
+                expected = new int[posClauses.getLength(i) + negClauses.getLength(j) - 2];
+                System.arraycopy(posClauses.get(i), 1, expected, 0, posClauses.getLength(i) - 1);
+                System.arraycopy(negClauses.get(j), 1, expected, posClauses.getLength(i) - 1,
+                        negClauses.getLength(j) - 1);
+                length = LiteralSort.normalize(expected, 0, expected.length);
+                Assert.assertEquals(Math.max(length, 0), WorkerTask.resolveShort(posPacked[i], negPacked[j], result));
+                if (length > 0) {
+                    Assert.assertArrayEquals(Arrays.copyOf(expected, length), Arrays.copyOf(result, length));
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void testBucketDuplicates() {
+        Bucket bucket = new Bucket();
+        bucket.add(Literal.fromDimacs(new int[] {1, 2, 5}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, 3, 4}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, 2, 5}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {-1, 2, 5}), Clauses.ClauseType.NEGATIVE);
+        Assert.assertEquals(2, bucket.getPosSize());
+        Assert.assertEquals(1, bucket.getNegSize());
+        Assert.assertTrue(bucket.isClauseExisted(Literal.fromDimacs(new int[] {1, 3, 4})));
+        Assert.assertFalse(bucket.isClauseExisted(Literal.fromDimacs(new int[] {1, 3, -4})));
+
+        // popped clauses can be added again
+        Assert.assertArrayEquals(Literal.fromDimacs(new int[] {1, 3, 4}), bucket.pop(Clauses.ClauseType.POSITIVE));
+        Assert.assertFalse(bucket.isClauseExisted(Literal.fromDimacs(new int[] {1, 3, 4})));
+
+        // union only takes the new clauses
+        Bucket other = new Bucket();
+        other.add(Literal.fromDimacs(new int[] {1, 2, 5}), Clauses.ClauseType.POSITIVE);
+        other.add(Literal.fromDimacs(new int[] {1, 3, 4}), Clauses.ClauseType.POSITIVE);
+        Assert.assertEquals(1, Bucket.getAmountOfDuplicates(bucket, other));
+        bucket.union(other);
+        Assert.assertEquals(2, bucket.getPosSize());
+    }
+
+
+    @Test
+    public void testBucketRestore() {
+        Bucket bucket = new Bucket();
+        bucket.add(Literal.fromDimacs(new int[] {1, 2, 5}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, 3}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {-1, 4}), Clauses.ClauseType.NEGATIVE);
+        Assert.assertArrayEquals(Literal.fromDimacs(new int[] {1, 3}), bucket.pop(Clauses.ClauseType.POSITIVE));
+        Assert.assertArrayEquals(Literal.fromDimacs(new int[] {-1, 4}), bucket.pop(Clauses.ClauseType.NEGATIVE));
+
+        // restore after a pop (the clauses are not checked for subsumption, only for duplicates)
+        Clauses clauses = new Clauses();
+        clauses.add(Literal.fromDimacs(new int[] {1, 2, 5}));
+        clauses.add(Literal.fromDimacs(new int[] {1, 3}));
+        clauses.add(Literal.fromDimacs(new int[] {1, 3, 6}));
+        bucket.restore(clauses, Clauses.ClauseType.POSITIVE);
+        clauses = new Clauses();
+        clauses.add(Literal.fromDimacs(new int[] {-1, 4}));
+        bucket.restore(clauses, Clauses.ClauseType.NEGATIVE);
+        Assert.assertEquals(3, bucket.getPosSize());
+        Assert.assertEquals(1, bucket.getNegSize());
+        Assert.assertEquals(1, bucket.getDuplicateCount());
+
+        // the restored clauses take part in the subsumption checks of the next adds
+        bucket.add(Literal.fromDimacs(new int[] {1, 3, 7}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {-1, 4, 8}), Clauses.ClauseType.NEGATIVE);
+        Assert.assertEquals(3, bucket.getPosSize());
+        Assert.assertEquals(1, bucket.getNegSize());
+    }
+
+
+    @Test
+    public void testBucketAddAll() {
+        // stage clauses of variable 2 in an arena (with a duplicate), and add some of them to a striped bucket
+        Clauses arena = new Clauses();
+        long[] hashes = new long[200];
+        int[] indexes = new int[200];
+        int[] clause;
+        int i, count = 0;
+        for (i = 0; i < 100; i++) {
+            clause = Literal.fromDimacs((i % 2 == 0) ? new int[] {2, 3 + i, 200 + i} : new int[] {-2, -3 - i});
+            arena.add(clause);
+            hashes[i] = ClauseSet.hash(clause, 0, clause.length);
+            if (i % 5 != 0) {
+                indexes[count++] = i;
+            }
+        }
+        indexes[count++] = 1;
+
+        Bucket bucket = new Bucket(8);
+        bucket.addAll(arena, hashes, indexes, count);
+        Assert.assertEquals(40, bucket.getPosSize());
+        Assert.assertEquals(40, bucket.getNegSize());
+        Assert.assertEquals(2, bucket.getKey());
+        Assert.assertTrue(bucket.isClauseExisted(Literal.fromDimacs(new int[] {-2, -4})));
+        Assert.assertFalse(bucket.isClauseExisted(Literal.fromDimacs(new int[] {2, 3, 200})));
+    }
+
+
+    @Test
+    public void testBucketSubsumption() {
+        Bucket bucket = new Bucket(4);
+        bucket.add(Literal.fromDimacs(new int[] {1, 3, 5}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, 3, 5, 7}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, 2, -4, 6}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {1, -4}), Clauses.ClauseType.POSITIVE);
+        bucket.add(Literal.fromDimacs(new int[] {-1, 3, 5, 7}), Clauses.ClauseType.NEGATIVE);
+
+        // the clauses subsumed by an older one are dropped when compacting (the rest on add)
+        bucket.compact();
+        Assert.assertEquals(2, bucket.getPosSize());
+        Assert.assertEquals(1, bucket.getNegSize());
+        Assert.assertTrue(bucket.isClauseExisted(Literal.fromDimacs(new int[] {1, -4})));
+        Assert.assertFalse(bucket.isClauseExisted(Literal.fromDimacs(new int[] {1, 2, -4, 6})));
+
+        // the unit clause of the key subsumes everything of its type
+        bucket.add(Literal.fromDimacs(new int[] {-1}), Clauses.ClauseType.NEGATIVE);
+        bucket.add(Literal.fromDimacs(new int[] {-1, 2}), Clauses.ClauseType.NEGATIVE);
+        bucket.compact();
+        Assert.assertEquals(1, bucket.getNegSize());
+        Assert.assertEquals(1, bucket.getNegClauseMaxSize());
+        Assert.assertEquals(2, bucket.getPosSize());
+    }
+
+
+    @Test
+    public void testCdclSolver() {
+        // 3 pigeons can't sit in 2 holes (variable 2 * p + h + 1 is pigeon p in hole h)
+        CdclSolver solver = new CdclSolver(6);
+        int p, q, h;
+        for (p = 0; p < 3; p++) {
+            solver.addClause(new int[] {2 * p + 1, 2 * p + 2}, 0, 2);
+        }
+        for (h = 0; h < 2; h++) {
+            for (p = 0; p < 3; p++) {
+                for (q = p + 1; q < 3; q++) {
+                    solver.addClause(new int[] {-(2 * p + h + 1), -(2 * q + h + 1)}, 0, 2);
+                }
+            }
+        }
+        Assert.assertFalse(solver.solve());
+
+        // a chain of implications with a unit at the start
+        solver = new CdclSolver(4);
+        solver.addClause(new int[] {1}, 0, 1);
+        solver.addClause(new int[] {-1, 2}, 0, 2);
+        solver.addClause(new int[] {-2, -3, 4}, 0, 3);
+        solver.addClause(new int[] {-4, -3}, 0, 2);
+        Assert.assertTrue(solver.solve());
+        byte[] values = solver.getValues();
+        Assert.assertEquals(1, values[1]);
+        Assert.assertEquals(1, values[2]);
+        Assert.assertEquals(-1, values[3]);
+    }
+
+
+    @Test
+    public void testBucketArchive() {
+        // bucket 1 needs x1 when x300 is false, bucket 2 has x2 pure negative, and x3 is free
+        BucketArchive archive = new BucketArchive(300);
+        Clauses clauses = new Clauses();
+        clauses.add(Literal.fromDimacs(new int[] {1, 2, 300}));
+        clauses.add(Literal.fromDimacs(new int[] {1, -2}));
+        archive.add(0, clauses);
+        clauses = new Clauses();
+        clauses.add(Literal.fromDimacs(new int[] {-2, -299}));
+        archive.add(1, clauses);
+
+        byte[] values = new byte[301];
+        values[300] = -1;
+        archive.reconstruct(values);
+        Assert.assertEquals(1, values[1]);
+        Assert.assertEquals(-1, values[2]);
+        Assert.assertEquals(-1, values[3]);
+        Assert.assertEquals(-1, values[300]);
+    }
+
+
+    @Test
+    public void testBucketStore() throws Exception {
+        Bucket[] buckets = new Bucket[8];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(2);
+        }
+        for (int i = 0; i < 100; i++) {
+            buckets[6].add(Literal.fromDimacs(new int[] {7, 8 + i}), Clauses.ClauseType.POSITIVE);
+            buckets[7].add(Literal.fromDimacs(new int[] {-8, 9 + i, 200 + i}), Clauses.ClauseType.NEGATIVE);
+        }
+        buckets[6].add(Literal.fromDimacs(new int[] {-7, 8}), Clauses.ClauseType.NEGATIVE);
+
+        // spill both, add to the overflow, then read them back (one prefetched and one not)
+        BucketStore store = new BucketStore(buckets, Long.MAX_VALUE, null);
+        try {
+            Assert.assertTrue(store.spill(6) > 0);
+            store.spill(7);
+            Assert.assertEquals(0, buckets[6].getPosSize());
+            buckets[6].add(Literal.fromDimacs(new int[] {7, 500}), Clauses.ClauseType.POSITIVE);
+            buckets[6].add(Literal.fromDimacs(new int[] {7, 8}), Clauses.ClauseType.POSITIVE);
+
+            store.prefetch(5);
+            Bucket bucket = store.take(6);
+            Assert.assertSame(bucket, buckets[6]);
+            Assert.assertEquals(101, bucket.getPosSize());
+            Assert.assertEquals(1, bucket.getNegSize());
+            Assert.assertTrue(bucket.isClauseExisted(Literal.fromDimacs(new int[] {7, 500})));
+            Assert.assertTrue(bucket.isClauseExisted(Literal.fromDimacs(new int[] {-7, 8})));
+            Assert.assertEquals(100, store.take(7).getNegSize());
+            Assert.assertTrue(buckets[7].isClauseExisted(Literal.fromDimacs(new int[] {-8, 108, 299})));
+            Assert.assertSame(buckets[5], store.take(5));
+        }
+        finally {
+            store.close();
+        }
+    }
+
+
+    @Test
+    public void testWorkerTaskSplit() {
+        // 300 x 300 pairs on variable 1 are more than a tile, so the task splits (with tautologies, units and lengths
+        // 2 to 4, and no resolution subsumes another, so the bucket keeps them all)
+        Bucket[] buckets = new Bucket[1000];
+        int i, j;
+        for (i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket(Bucket.getStripeCount(4));
+        }
+        List<int[]> posClauses = new ArrayList<>();
+        List<int[]> negClauses = new ArrayList<>();
+        for (i = 0; i < 300; i++) {
+            posClauses.add((i % 2 == 0) ? new int[] {1, 2 + i} : new int[] {1, 2 + i, 700 + i});
+            negClauses.add((i % 50 == 0) ? new int[] {-1, -2 - i, 302 + i} : new int[] {-1, 302 + i});
+        }
+        Assert.assertTrue((long) posClauses.size() * negClauses.size() > WorkerTask.TILE_PAIRS);
+        for (i = 0; i < 300; i++) {
+            buckets[0].add(Literal.fromDimacs(posClauses.get(i)), Clauses.ClauseType.POSITIVE);
+            buckets[0].add(Literal.fromDimacs(negClauses.get(i)), Clauses.ClauseType.NEGATIVE);
+        }
+
+        // the unsplit product, resolved one pair at a time
+        Set<String> expected = new TreeSet<>();
+        TreeSet<Integer> literals = new TreeSet<>();
+        for (int[] posClause : posClauses) {
+            for (int[] negClause : negClauses) {
+                literals.clear();
+                for (j = 1; j < posClause.length; j++) {
+                    literals.add(posClause[j]);
+                }
+                for (j = 1; j < negClause.length; j++) {
+                    literals.add(negClause[j]);
+                }
+                boolean isTrueClause = false;
+                for (int literal : literals) {
+                    isTrueClause |= literals.contains(-literal);
+                }
+                if (!isTrueClause) {
+                    expected.add(literals.toString());
+                }
+            }
+        }
+
+        ForkJoinPool threadPool = new ForkJoinPool(4);
+        try {
+            Assert.assertFalse(threadPool.invoke(new WorkerTask(4, buckets[0].getPosClauses(),
+                    buckets[0].getNegClauses(), buckets)));
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+
+        Set<String> result = new TreeSet<>();
+        int count = 0;
+        for (i = 1; i < buckets.length; i++) {
+            for (Clauses clauses : new Clauses[] {buckets[i].getPosClauses(), buckets[i].getNegClauses()}) {
+                for (j = 0; j < clauses.size(); j++) {
+                    literals.clear();
+                    for (int literal : Literal.toDimacs(clauses.get(j))) {
+                        literals.add(literal);
+                    }
+                    result.add(literals.toString());
+                    count++;
+                }
+            }
+        }
+        Assert.assertEquals(expected.size(), count);
+        Assert.assertEquals(expected, result);
+    }
+
+
+    @Test
+    public void testConcurrentUnion() throws Exception {
+        final int threads = 8;
+        final Bucket target = new Bucket(Bucket.getStripeCount(threads));
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 500;
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // each worker shares half of its clauses with the next one
+                    Bucket local = new Bucket(target.getStripeCount());
+                    for (int i = offset; i < offset + 1000; i++) {
+                        local.add(Literal.fromDimacs(new int[] {1, 2 + i, 3000 + i}), Clauses.ClauseType.POSITIVE);
+                        local.add(Literal.fromDimacs(new int[] {-1, -(2 + i)}), Clauses.ClauseType.NEGATIVE);
+                    }
+                    target.union(local);
+                }
+            }));
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertEquals(threads * 500 + 500, target.getPosSize());
+        Assert.assertEquals(threads * 500 + 500, target.getNegSize());
+        target.compact();
+        Assert.assertEquals(threads * 500 + 500, target.getPosClauses().size());
+        Assert.assertEquals(1, target.getKey());
+    }
+
+
+    @Test
+    public void testDimacsParser() throws Exception {
+        File file = File.createTempFile("parser", ".cnf");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("c comment with 1 0 inside\np cnf 5 4\n1 -2\n 3 0 -4 5 0\n\t2 0\n-1 -5");
+        }
+
+        final List<String> result = new ArrayList<>();
+        (new DimacsParser(new DimacsParser.ClauseHandler() {
+            @Override
+            public void header(int variables, int clauses) {
+                result.add(variables + "/" + clauses);
+            }
+
+
+            @Override
+            public void clause(int[] literals, int length) {
+                result.add(Arrays.toString(Arrays.copyOf(literals, length)));
+            }
+        })).parse(file.getPath());
+
+        Assert.assertEquals(Arrays.asList("5/4", "[1, -2, 3]", "[-4, 5]", "[2]", "[-1, -5]"), result);
+    }
+
+
+    @Test
+    public void testDimacsParserChunks() throws Exception {
+        // clauses that go over several lines, several clauses on a line, lone 0s and comments, so that the split
+        // points of the chunks land inside clauses
+        File file = File.createTempFile("chunks", ".cnf");
+        file.deleteOnExit();
+        Random random = new Random(5);
+        int clauses = 200000;
+        int i, j, length;
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            writer.write("c chunk test\np cnf 5000 " + clauses + "\n");
+            for (i = 0; i < clauses; i++) {
+                length = random.nextInt(8) + 1;
+                for (j = 0; j < length; j++) {
+                    writer.write(Integer.toString((random.nextInt(5000) + 1) * (random.nextBoolean() ? 1 : -1)));
+                    writer.write((random.nextInt(6) == 0) ? "\n" : " ");
+                }
+                writer.write((random.nextInt(4) == 0) ? "0 " : (random.nextInt(20) == 0) ? "\n0\nc 1 2 0\n" : "0\n");
+            }
+        }
+        Assert.assertTrue(file.length() > 4 * DimacsParser.MIN_CHUNK_SIZE);
+
+        final List<String> result = new ArrayList<>();
+        DimacsParser.ClauseHandler handler = new DimacsParser.ClauseHandler() {
+            @Override
+            public void header(int variables, int clauses) {
+                synchronized (result) {
+                    result.add(variables + "/" + clauses);
+                }
+            }
+
+
+            @Override
+            public void clause(int[] literals, int length) {
+                String clause = Arrays.toString(Arrays.copyOf(literals, length));
+                synchronized (result) {
+                    result.add(clause);
+                }
+            }
+        };
+
+        // read it in one go, then in 4 chunks and with more threads than chunks (one per MIN_CHUNK_SIZE at most)
+        (new DimacsParser(handler)).parse(file.getPath());
+        List<String> expected = new ArrayList<>(result);
+        Assert.assertEquals(clauses + 1, expected.size());
+        Collections.sort(expected);
+        ExecutorService threadPool = Executors.newFixedThreadPool(8);
+        try {
+            for (int threads : new int[] {4, 64}) {
+                result.clear();
+                DimacsParser.parse(file.getPath(), handler, threadPool, threads);
+                Collections.sort(result);
+                Assert.assertEquals(expected, result);
+            }
+
+            // in 2 chunks the split point is the 0 of "3 10", which looks like the end of a clause but isn't
+            String header = "p cnf 10 399999\n";
+            try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+                writer.write(header);
+                for (i = 0; i < 200000; i++) {
+                    writer.write("1 2 0\n");
+                }
+                writer.write("3 10\n4 0\n");
+                for (i = 0; i < 200000 - 2; i++) {
+                    writer.write("1 2 0\n");
+                }
+                writer.write("c 1234 0\n");
+            }
+            Assert.assertEquals('0', new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII)
+                    .charAt(header.length() + (int) (file.length() - header.length()) / 2));
+            result.clear();
+            DimacsParser.parse(file.getPath(), handler, threadPool, 2);
+            Assert.assertEquals(400000, result.size());
+            Assert.assertTrue(result.contains("[3, 10, 4]"));
+
+            // a file smaller than a chunk is one chunk whatever the number of threads
+            try (FileWriter writer = new FileWriter(file)) {
+                writer.write("p cnf 3 3\n1 -2\n3 0 2 0\n-1\n0");
+            }
+            result.clear();
+            DimacsParser.parse(file.getPath(), handler, threadPool, 8);
+            Assert.assertEquals(Arrays.asList("3/3", "[1, -2, 3]", "[2]", "[-1]"), result);
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testDimacsParserGzip() throws Exception {
+        File file = File.createTempFile("parser", ".cnf.gz");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)))) {
+            writer.write("p cnf 3 2\n1 -3 0\n2\n3 0\n");
+        }
+
+        final List<String> result = new ArrayList<>();
+        Assert.assertTrue(DimacsParser.isGzip(file.getPath()));
+        (new DimacsParser(new DimacsParser.ClauseHandler() {
+            @Override
+            public void header(int variables, int clauses) {
+                result.add(variables + "/" + clauses);
+            }
+
+
+            @Override
+            public void clause(int[] literals, int length) {
+                result.add(Arrays.toString(Arrays.copyOf(literals, length)));
+            }
+        })).parse(file.getPath());
+
+        Assert.assertEquals(Arrays.asList("3/2", "[1, -3]", "[2, 3]"), result);
+    }
+
+
+    @Test
+    public void testDimacsParserGzipStop() throws Exception {
+        // the trailer comes first, so the decompressor has more than all the buffers left to fill
+        File file = File.createTempFile("parser", ".cnf.gz");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)))) {
+            writer.write("p cnf 3 2\n1 -3 0\n2 3 0\n%\n");
+            for (int i = 0; i < (DimacsParser.GZIP_BUFFERS + 2) * (DimacsParser.GZIP_BUFFER_SIZE / 8); i++) {
+                writer.write("1 2 3 0\n");
+            }
+        }
+
+        final List<String> result = new ArrayList<>();
+        ForkJoinPool threadPool = new ForkJoinPool(2);
+        try {
+            DimacsParser.parse(file.getPath(), new DimacsParser.ClauseHandler() {
+                @Override
+                public void header(int variables, int clauses) {
+                    result.add(variables + "/" + clauses);
+                }
+
+
+                @Override
+                public void clause(int[] literals, int length) {
+                    result.add(Arrays.toString(Arrays.copyOf(literals, length)));
+                }
+            }, threadPool, 2);
+
+            Assert.assertEquals(Arrays.asList("3/2", "[1, -3]", "[2, 3]"), result);
+            Assert.assertTrue(threadPool.awaitQuiescence(10, TimeUnit.SECONDS));
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testPreprocessor() throws Exception {
+        File file = File.createTempFile("preprocess", ".cnf");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("p cnf 6 6\n1 0\n-1 2 0\n-2 3 4 0\n-2 -3 -4 0\n-3 5 6 0\n-4 -5 6 0\n");
+        }
+
+        // 1 and 2 are units, then 6 is pure and only (3 v 4) & (-3 v -4) are left
+        ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        try {
+            Formula formula = Formula.read(file.getPath(), threadPool, 2);
+            Preprocessor preprocessor = new Preprocessor(formula);
+            Assert.assertTrue(preprocessor.run(threadPool));
+            Assert.assertEquals(2, preprocessor.getUnitCount());
+            Assert.assertArrayEquals(new byte[] {0, 1, 1, 0, 0, 0, 1}, formula.getValues());
+
+            List<String> clauses = new ArrayList<>();
+            for (Clauses chunk : formula.getChunks()) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    clauses.add(Arrays.toString(Literal.toDimacs(chunk.get(i))));
+                }
+            }
+            Collections.sort(clauses);
+            Assert.assertEquals(Arrays.asList("[-3, -4]", "[3, 4]"), clauses);
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testEliminationOrder() throws Exception {
+        // every strategy gives each variable of a random formula its own position (variable 41 is in no clause)
+        Random random = new Random(7);
+        int[][] clauses = new int[120][];
+        int i, v;
+        for (i = 0; i < clauses.length; i++) {
+            clauses[i] = new int[] {(random.nextInt(40) + 1) * (random.nextBoolean() ? 1 : -1),
+                    (random.nextInt(40) + 1) * (random.nextBoolean() ? 1 : -1),
+                    (random.nextInt(40) + 1) * (random.nextBoolean() ? 1 : -1)};
+        }
+        Formula formula = Formula.fromClauses(41, clauses);
+        for (EliminationOrder.Strategy strategy : EliminationOrder.Strategy.values()) {
+            int[] newIndex = EliminationOrder.compute(formula, strategy);
+            boolean[] isTaken = new boolean[42];
+            Assert.assertEquals(42, newIndex.length);
+            for (v = 1; v <= 41; v++) {
+                Assert.assertTrue(strategy.name(), (newIndex[v] >= 1) && (newIndex[v] <= 41) && !isTaken[newIndex[v]]);
+                isTaken[newIndex[v]] = true;
+            }
+        }
+
+        // the edges 1-2 1-3 1-4 2-3 4-5 (ties go to the smaller variable):
+        // min-degree takes 5 (degree 1), 4 (1), then 1 2 3 (2 each), and min-fill takes 2 (no fill) 3 1 4 5
+        formula = Formula.fromClauses(5, new int[][] {{1, 2}, {1, -3}, {-1, 4}, {2, 3}, {-4, -5}});
+        Assert.assertArrayEquals(new int[] {0, 3, 4, 5, 2, 1},
+                EliminationOrder.compute(formula, EliminationOrder.Strategy.MIN_DEGREE));
+        Assert.assertArrayEquals(new int[] {0, 3, 1, 2, 4, 5},
+                EliminationOrder.compute(formula, EliminationOrder.Strategy.MIN_FILL));
+        Assert.assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5},
+                EliminationOrder.compute(formula, EliminationOrder.Strategy.INPUT));
+    }
+
+
+    @Test
+    public void testEliminationOrderModel() throws Exception {
+        // a random formula satisfied by a hidden assignment, solved in every order
+        Random random = new Random(11);
+        boolean[] hidden = new boolean[31];
+        int[][] clauses = new int[110][];
+        int i, j;
+        for (i = 1; i < hidden.length; i++) {
+            hidden[i] = random.nextBoolean();
+        }
+        for (i = 0; i < clauses.length; i++) {
+            clauses[i] = new int[3];
+            for (j = 0; j < 3; j++) {
+                clauses[i][j] = (random.nextInt(30) + 1) * (random.nextBoolean() ? 1 : -1);
+            }
+            j = random.nextInt(3);
+            clauses[i][j] = hidden[Math.abs(clauses[i][j])] ? Math.abs(clauses[i][j]) : -Math.abs(clauses[i][j]);
+        }
+        Assert.assertFalse(Arrays.equals(EliminationOrder.compute(Formula.fromClauses(30, clauses),
+                EliminationOrder.Strategy.INPUT), EliminationOrder.compute(Formula.fromClauses(30, clauses),
+                EliminationOrder.Strategy.MIN_FILL)));
+
+        // the model is mapped back to the variables of the input
+        for (EliminationOrder.Strategy strategy : EliminationOrder.Strategy.values()) {
+            Solver solver = new Solver(30, clauses, org.apache.logging.log4j.Level.OFF);
+            solver.setPreprocessing(false);
+            solver.setOrder(strategy);
+            byte[] model = solver.run().getModel();
+            Assert.assertEquals(strategy.name(), Solver.Status.SATISFIABLE, solver.getStatus());
+            Assert.assertEquals(31, model.length);
+            for (int[] clause : clauses) {
+                boolean isSatisfied = false;
+                for (int literal : clause) {
+                    isSatisfied |= model[Math.abs(literal)] == Integer.signum(literal);
+                }
+                Assert.assertTrue(strategy.name() + " " + Arrays.toString(clause), isSatisfied);
+            }
+        }
+    }
+
+
+    @Test
+    public void testEliminationTree() throws Exception {
+        File file = File.createTempFile("tree", ".cnf");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("p cnf 7 5\n1 3 0\n2 4 0\n3 5 6 0\n4 -5 0\n7 0\n");
+        }
+
+        // 1 -> 3 and 2 -> 4 are two branches that meet at 5, and 7 is a tree of its own
+        ExecutorService threadPool = Executors.newFixedThreadPool(2);
+        try {
+            Formula formula = Formula.read(file.getPath(), threadPool, 2);
+            Assert.assertArrayEquals(new int[] {0, 3, 4, 5, 5, 6, 0, 0}, EliminationOrder.getTree(formula));
+        }
+        finally {
+            threadPool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testBudget() throws Exception {
+        // the first reason to stop is kept
+        Budget budget = new Budget();
+        budget.setResolutionLimit(10);
+        budget.start();
+        Assert.assertFalse(budget.check(5));
+        Assert.assertTrue(budget.check(6));
+        budget.stop(Budget.Reason.CANCELLED);
+        Assert.assertEquals(Budget.Reason.RESOLUTIONS, budget.getReason());
+
+        // resolving on 1 makes (2 v 3 v 4), which is over the width
+        File file = File.createTempFile("budget", ".cnf");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("p cnf 4 3\n1 2 3 0\n-1 2 4 0\n-2 -3 -4 0\n");
+        }
+        Solver solver = new Solver(file.getPath(), org.apache.logging.log4j.Level.OFF);
+        solver.setPreprocessing(false);
+        solver.getBudget().setWidthLimit(2);
+        solver.run();
+        Assert.assertEquals(Solver.Status.UNKNOWN, solver.getStatus());
+        Assert.assertEquals(Budget.Reason.WIDTH, solver.getReason());
+        Assert.assertNull(solver.getModel());
+
+        // the same solver runs again without the limit
+        solver.getBudget().setWidthLimit(0);
+        solver.run();
+        Assert.assertEquals(Solver.Status.SATISFIABLE, solver.getStatus());
+        Assert.assertNull(solver.getReason());
+
+        // a cancel before the run is not cleared when it starts, but only for that run
+        solver.cancel();
+        solver.run();
+        Assert.assertEquals(Solver.Status.UNKNOWN, solver.getStatus());
+        Assert.assertEquals(Budget.Reason.CANCELLED, solver.getReason());
+        solver.run();
+        Assert.assertEquals(Solver.Status.SATISFIABLE, solver.getStatus());
+    }
+
+
+    @Test
+    public void testSharedThreadPool() throws Exception {
+        // (1 v 2) (-1 v 2) (1 v -2) is only satisfied by 1 and 2, adding (-1 v -2) makes it unsatisfiable
+        final int[][] sat = {{1, 2}, {-1, 2}, {1, -2}};
+        final int[][] unsat = {{1, 2}, {-1, 2}, {1, -2}, {-1, -2}};
+        ForkJoinPool threadPool = new ForkJoinPool(2);
+        ExecutorService drivers = Executors.newFixedThreadPool(4);
+        List<Future<SolverResult>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                final Solver solver = new Solver(2, (i % 2 == 0) ? sat : unsat, org.apache.logging.log4j.Level.OFF);
+                solver.setThreadPool(threadPool);
+                results.add(drivers.submit(new Callable<SolverResult>() {
+                    @Override
+                    public SolverResult call() throws Exception {
+                        return solver.run();
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                SolverResult result = results.get(i).get();
+                Assert.assertEquals(2, result.getVariables());
+                if (i % 2 == 0) {
+                    Assert.assertEquals(Solver.Status.SATISFIABLE, result.getStatus());
+                    Assert.assertArrayEquals(new byte[] {0, 1, 1}, result.getModel());
+                }
+                else {
+                    Assert.assertEquals(Solver.Status.UNSATISFIABLE, result.getStatus());
+                    Assert.assertNull(result.getModel());
+                }
+            }
+
+            // the shared pool is not shut down by the solvers
+            Assert.assertFalse(threadPool.isShutdown());
+        }
+        finally {
+            drivers.shutdownNow();
+            threadPool.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testSolverDaemon() throws Exception {
+        Solver settings = new Solver(null, org.apache.logging.log4j.Level.OFF);
+        ForkJoinPool threadPool = new ForkJoinPool(2);
+        settings.setThreadPool(threadPool);
+        final SolverDaemon daemon = new SolverDaemon(0, settings, 2);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    daemon.run();
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        thread.start();
+
+        // stream (1 v 2) (-1 v 2) (1 v -2), which is only satisfied by 1 and 2
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+            socket.setSoTimeout(10000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            Writer writer = new OutputStreamWriter(socket.getOutputStream());
+            writer.write("CNF\nc comment\np cnf 2 3\n1 2 0 -1 2\n0 1 -2 0\nEND\n");
+            writer.flush();
+            Assert.assertEquals("QUEUED 1", reader.readLine());
+            Assert.assertEquals("STARTED 1", reader.readLine());
+            String line = reader.readLine();
+            while (line.startsWith("PROGRESS")) {
+                line = reader.readLine();
+            }
+            Assert.assertTrue(line, line.startsWith("RESULT 1 SATISFIABLE "));
+            Assert.assertEquals("MODEL 1 1 2 0", reader.readLine());
+
+            writer.write("NOPE\nSHUTDOWN\n");
+            writer.flush();
+            Assert.assertEquals("ERROR Unknown command 'NOPE'", reader.readLine());
+            Assert.assertEquals("BYE", reader.readLine());
+        }
+        finally {
+            daemon.close();
+            thread.join(10000);
+            threadPool.shutdownNow();
+        }
+        Assert.assertFalse(thread.isAlive());
+    }
+
+
+    @Test
+    public void testMetrics() throws Exception {
+        // bucket 1 sends (2) (2 v 3) (-2 v 3) to bucket 2, and (1 v -2) (-1 v 2) is always true
+        int[][] clauses = {{1, 2}, {1, -2}, {-1, 2}, {-1, 3}, {2}};
+        Solver solver = new Solver(3, clauses, org.apache.logging.log4j.Level.OFF);
+        solver.setPreprocessing(false);
+        solver.setCollectingMetrics(true);
+        SolverResult result = solver.run();
+        Assert.assertEquals(Solver.Status.SATISFIABLE, result.getStatus());
+
+        BucketMetrics first = result.getMetrics().getBuckets()[0];
+        Assert.assertEquals(2, first.getPosSize());
+        Assert.assertEquals(2, first.getNegSize());
+        Assert.assertEquals(4, first.getPairs());
+        Assert.assertEquals(1, first.getTautologies());
+        Assert.assertEquals(Collections.singletonMap(1, 3L), first.getResolvents());
+
+        // bucket 2 already had (2), and (2) subsumes (2 v 3)
+        BucketMetrics second = result.getMetrics().getBuckets()[1];
+        Assert.assertEquals(1, second.getDuplicates());
+        Assert.assertEquals(1, second.getSubsumed());
+        Assert.assertEquals(1, second.getPairs());
+        Assert.assertEquals(Collections.singletonMap(2, 1L), second.getResolvents());
+
+        StringWriter writer = new StringWriter();
+        result.getMetrics().writeCsv(writer);
+        String[] lines = writer.toString().split("\n");
+        Assert.assertEquals(4, lines.length);
+        Assert.assertTrue(lines[1], lines[1].startsWith("1,2,2,4,1,3,0,0,"));
+        Assert.assertTrue(lines[1], lines[1].endsWith(",2:3"));
+    }
+
+
+    @Test
+    public void testCheckpoint() throws Exception {
+        // bucket 1 makes (2 v 3), then bucket 2 reports its first 2 resolutions and goes over the limit
+        int[][] clauses = {{1, 2}, {-1, 3}, {2, 4}, {-2, 4}, {-2, 5}};
+        File file = File.createTempFile("checkpoint", ".bin");
+        file.deleteOnExit();
+        Solver solver = new Solver(5, clauses, org.apache.logging.log4j.Level.OFF);
+        solver.setPreprocessing(false);
+        solver.setCheckpoint(new Checkpoint(file, 1, 0));
+        solver.getBudget().setResolutionLimit(1);
+        Assert.assertEquals(Solver.Status.UNKNOWN, solver.run().getStatus());
+
+        // bucket 1 is archived, bucket 2 is left whole
+        Checkpoint.Snapshot snapshot = Checkpoint.read(file, 1);
+        Assert.assertEquals(5, snapshot.getVariables());
+        Assert.assertNull(snapshot.getBuckets()[0]);
+        Assert.assertEquals(2, snapshot.getBuckets()[1].getPosSize());
+        Assert.assertEquals(2, snapshot.getBuckets()[1].getNegSize());
+
+        // another solver goes on from there
+        Solver resumed = new Solver(null, org.apache.logging.log4j.Level.OFF);
+        resumed.setResumeFile(file.getPath());
+        SolverResult result = resumed.run();
+        Assert.assertEquals(Solver.Status.SATISFIABLE, result.getStatus());
+        Assert.assertEquals(5, result.getVariables());
+        for (int[] clause : clauses) {
+            boolean isSatisfied = false;
+            for (int literal : clause) {
+                isSatisfied |= result.getModel()[Math.abs(literal)] == Integer.signum(literal);
+            }
+            Assert.assertTrue(Arrays.toString(clause), isSatisfied);
+        }
+
+        // a file that is not a checkpoint is turned down
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write("p cnf 1 1\n1 0\n");
+        }
+        try {
+            Checkpoint.read(file, 1);
+            Assert.fail();
+        }
+        catch (IOException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("not a checkpoint"));
+        }
+    }
 }